@@ -18,7 +18,9 @@ package app.gpx_animator;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.renderer.Renderer;
 import app.gpx_animator.core.renderer.RenderingContext;
+import app.gpx_animator.core.renderer.TileSeeder;
 import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TileCacheSettings;
 import app.gpx_animator.ui.UIMode;
 import app.gpx_animator.ui.cli.CommandLineConfigurationFactory;
 import app.gpx_animator.ui.swing.MainFrame;
@@ -55,7 +57,7 @@ public final class Main {
         final var cf = new CommandLineConfigurationFactory(args);
         final var configuration = cf.getConfiguration().validate();
 
-        new Thread(TileCache::ageCache).start();
+        new Thread(TileCache.getInstance()::ageCache).start();
 
         if (cf.isGui() && !GraphicsEnvironment.isHeadless()) {
             UIMode.setMode(UIMode.EXPERT);
@@ -70,7 +72,7 @@ public final class Main {
             });
         } else {
             UIMode.setMode(UIMode.CLI);
-            new Renderer(configuration).render(new RenderingContext() {
+            final var renderingContext = new RenderingContext() {
                 @Override
                 public void setProgress1(final int pct, final String message) {
                     LOGGER.info("{}% {}", pct, message);
@@ -80,7 +82,32 @@ public final class Main {
                 public boolean isCancelled1() {
                     return false;
                 }
-            });
+            };
+            if (cf.isTileCacheTask()) {
+                runTileCacheTasks(cf, renderingContext);
+            } else {
+                new Renderer(configuration).render(renderingContext);
+            }
+        }
+    }
+
+    /**
+     * Imports, seeds and exports the tile cache in this order, so that a bundle can be completed and exported again in one run.
+     */
+    private static void runTileCacheTasks(final CommandLineConfigurationFactory cf, final RenderingContext renderingContext)
+            throws UserException {
+        final var tileCache = TileCache.getInstance();
+        final var settings = TileCacheSettings.fromPreferences();
+        if (cf.getTileCacheImport() != null) {
+            final var count = tileCache.importTiles(cf.getTileCacheImport().toPath(), settings);
+            LOGGER.info("Imported {} map tiles from {}", count, cf.getTileCacheImport());
+        }
+        if (cf.getSeedMinZoom() != null) {
+            new TileSeeder(tileCache, settings).seed(cf.getConfiguration(), cf.getSeedMinZoom(), cf.getSeedMaxZoom(), renderingContext);
+        }
+        if (cf.getTileCacheExport() != null) {
+            final var count = tileCache.exportTiles(cf.getTileCacheExport().toPath(), settings);
+            LOGGER.info("Exported {} map tiles to {}", count, cf.getTileCacheExport());
         }
     }
 }
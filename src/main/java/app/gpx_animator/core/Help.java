@@ -45,6 +45,8 @@ public final class Help {
         w.writeOptionHelp(Option.BACKGROUND_IMAGE, "background-image", false, cfg.getBackgroundImage()); // NON-NLS
         w.writeOptionHelp(Option.BACKGROUND_MAP_VISIBILITY, "background-map-visibility", false, cfg.getBackgroundMapVisibility()); //NON-NLS
         w.writeOptionHelp(Option.COLOR, "color", true, resourceBundle.getString("help.option.color.default")); //NON-NLS
+        w.writeOptionHelp(Option.ENCODER_QUEUE_SIZE, "frames", false, cfg.getEncoderQueueSize()); //NON-NLS
+        w.writeOptionHelp(Option.EXPORT_TILE_CACHE, "file", false, null); //NON-NLS
         w.writeOptionHelp(Option.FLASHBACK_COLOR, "ARGBcolor", false, "opaque white - #ffffffff"); // TODO cfg.getFlashbackColor()  NON-NLS
         w.writeOptionHelp(Option.FLASHBACK_DURATION, "duration", false, cfg.getFlashbackDuration()); //NON-NLS
         w.writeOptionHelp(Option.FONT, "font", false, new FontXmlAdapter().marshal(cfg.getFont()));
@@ -53,6 +55,7 @@ public final class Help {
         w.writeOptionHelp(Option.GUI, "gui", false, resourceBundle.getString("help.option.gui.default"));
         w.writeOptionHelp(Option.HEIGHT, "height", false, cfg.getHeight()); //NON-NLS
         w.writeOptionHelp(Option.HELP, "help", false, null); //TODO --help-info-vars
+        w.writeOptionHelp(Option.IMPORT_TILE_CACHE, "file", false, null); //NON-NLS
         w.writeOptionHelp(Option.INPUT, "input", true, tc.getInputGpx()); //NON-NLS
         w.writeOptionHelp(Option.TRIM_GPX_START, "trim-gpx-start", true, tc.getTrimGpxStart()); //NON-NLS
         w.writeOptionHelp(Option.TRIM_GPX_END, "trim-gpx-end", true, tc.getTrimGpxEnd()); //NON-NLS
@@ -83,6 +86,8 @@ public final class Help {
         w.writeOptionHelp(Option.PRE_DRAW_TRACK, "predraw-track", false, cfg.isPreDrawTrack()); // NON-NLS
         w.writeOptionHelp(Option.PRE_DRAW_TRACK_COLOR, "predraw-track-color", true, tc.getPreDrawTrackColor()); // NON-NLS
         w.writeOptionHelp(Option.PREVIEW_LENGTH, "preview-length", false, cfg.getPreviewLength()); // NON-NLS
+        w.writeOptionHelp(Option.RENDER_THREADS, "threads", false, cfg.getRenderThreads() > 0 ? cfg.getRenderThreads() : "auto"); //NON-NLS
+        w.writeOptionHelp(Option.SEED_TILE_CACHE, "zoom-range", false, null); //NON-NLS
         w.writeOptionHelp(Option.SKIP_IDLE, "skip-idle", false, cfg.isSkipIdle());
         w.writeOptionHelp(Option.SPEEDUP, "speedup", false, cfg.getSpeedup()); //NON-NLS
         w.writeOptionHelp(Option.TAIL_DURATION, "time", false, cfg.getTailDuration()); //NON-NLS
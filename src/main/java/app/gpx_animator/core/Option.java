@@ -93,6 +93,11 @@ public enum Option {
     PREVIEW_LENGTH("preview-length"),
     PREVIEW("preview"),
     GPS_TIMEOUT("gps-timeout"),
+    RENDER_THREADS("render-threads"),
+    ENCODER_QUEUE_SIZE("encoder-queue-size"),
+    SEED_TILE_CACHE("seed-tile-cache"),
+    EXPORT_TILE_CACHE("export-tile-cache"),
+    IMPORT_TILE_CACHE("import-tile-cache"),
     VERSION("version");
 
     private static final java.util.Map<String, Option> OPTION_MAP = new HashMap<>();
@@ -55,6 +55,8 @@ public final class Configuration {
     public static final long DEFAULT_PHOTO_ANIMATION_DURATION = 700L;
     public static final Position DEFAULT_ATTRIBUTION_POSITION = Position.BOTTOM_LEFT;
     public static final long DEFAULT_GPS_TIMEOUT = 60000L;
+    public static final int DEFAULT_RENDER_THREADS = 0; // automatic, resolved by the renderer on the machine it runs on
+    public static final int DEFAULT_ENCODER_QUEUE_SIZE = 4;
 
     private int margin = DEFAULT_MARGIN;
     private Integer width;
@@ -139,6 +141,8 @@ public final class Configuration {
     @XmlTransient
     private Long previewLength;
     private long gpsTimeout = DEFAULT_GPS_TIMEOUT;
+    private int renderThreads = DEFAULT_RENDER_THREADS;
+    private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
 
     @XmlElementWrapper
     @XmlElement(name = "trackConfiguration") //NON-NLS
@@ -165,7 +169,7 @@ public final class Configuration {
             final Position commentPosition, final int commentMargin,
             final File photoDirectory, final long photoFreezeFrameTime, final Long photoTime, final Long photoAnimationDuration,
             final boolean preview, final Long previewLength,
-            final long gpsTimeout,
+            final long gpsTimeout, final int renderThreads, final int encoderQueueSize,
             final List<TrackConfiguration> trackConfigurationList) {
 
         this.margin = margin;
@@ -223,6 +227,8 @@ public final class Configuration {
         this.preview = preview;
         this.previewLength = previewLength;
         this.gpsTimeout = gpsTimeout;
+        this.renderThreads = renderThreads;
+        this.encoderQueueSize = encoderQueueSize;
     }
 
     public static Builder createBuilder() {
@@ -453,6 +459,14 @@ public final class Configuration {
         return gpsTimeout;
     }
 
+    public int getRenderThreads() {
+        return renderThreads;
+    }
+
+    public int getEncoderQueueSize() {
+        return encoderQueueSize;
+    }
+
     public List<TrackConfiguration> getTrackConfigurationList() {
         return Collections.unmodifiableList(trackConfigurationList);
     }
@@ -540,6 +554,8 @@ public final class Configuration {
         private boolean preview = false;
         private Long previewLength;
         private long gpsTimeout = DEFAULT_GPS_TIMEOUT;
+        private int renderThreads = DEFAULT_RENDER_THREADS;
+        private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
 
 
         public Configuration build() {
@@ -558,7 +574,7 @@ public final class Configuration {
                     commentPosition, commentMargin,
                     photoDirectory, photoFreezeFrameTime, photoTime, photoAnimationDuration,
                     preview, previewLength,
-                    gpsTimeout,
+                    gpsTimeout, renderThreads, encoderQueueSize,
                     Collections.unmodifiableList(trackConfigurationList)
             );
         }
@@ -838,6 +854,16 @@ public final class Configuration {
             this.gpsTimeout = gpsTimeout;
             return this;
         }
+
+        public Builder renderThreads(final int renderThreads) {
+            this.renderThreads = renderThreads;
+            return this;
+        }
+
+        public Builder encoderQueueSize(final int encoderQueueSize) {
+            this.encoderQueueSize = encoderQueueSize;
+            return this;
+        }
     }
 
 }
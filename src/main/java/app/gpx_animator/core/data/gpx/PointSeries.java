@@ -0,0 +1,284 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.data.gpx;
+
+import app.gpx_animator.core.data.entity.TrackPoint;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable series of points sorted by time, stored column by column in primitive arrays. Every time is unique, points sharing
+ * the same time are moved forward by one millisecond each. Lookups by time use a binary search.
+ */
+public final class PointSeries {
+
+    private static final PointSeries EMPTY = new PointSeries(new long[0], new double[0], new double[0],
+            new double[0], new double[0], null, null);
+
+    private final long[] times;
+    private final double[] x;
+    private final double[] y;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] speeds;
+    private final String[] labels;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private PointSeries(@NonNull final long[] times, @NonNull final double[] x, @NonNull final double[] y,
+                        @NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                        @Nullable final double[] speeds, @Nullable final String[] labels) {
+        this.times = times;
+        this.x = x;
+        this.y = y;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.speeds = speeds;
+        this.labels = labels;
+    }
+
+    public static PointSeries empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    public long getTime(final int index) {
+        return times[index];
+    }
+
+    public long getFirstTime() {
+        return times[0];
+    }
+
+    public long getLastTime() {
+        return times[times.length - 1];
+    }
+
+    public double getX(final int index) {
+        return x[index];
+    }
+
+    public double getY(final int index) {
+        return y[index];
+    }
+
+    public double getLatitude(final int index) {
+        return latitudes[index];
+    }
+
+    public double getLongitude(final int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * @return the speed in meters per second as recorded in the GPX file, or {@code null} if it was not recorded
+     */
+    @Nullable
+    public Double getSpeed(final int index) {
+        return speeds == null || Double.isNaN(speeds[index]) ? null : speeds[index];
+    }
+
+    /**
+     * @return the comment of a track point or the name of a waypoint
+     */
+    @Nullable
+    public String getLabel(final int index) {
+        return labels == null ? null : labels[index];
+    }
+
+    /**
+     * @return the index of the last point at or before the given time, or -1 if there is none
+     */
+    public int floorIndex(final long time) {
+        final var index = Arrays.binarySearch(times, time);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return the index of the first point at or after the given time, or -1 if there is none
+     */
+    public int ceilingIndex(final long time) {
+        final var index = Arrays.binarySearch(times, time);
+        if (index >= 0) {
+            return index;
+        }
+        final var insertionPoint = -index - 1;
+        return insertionPoint < times.length ? insertionPoint : -1;
+    }
+
+    /**
+     * @return the points from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive)
+     */
+    public PointSeries slice(final int fromIndex, final int toIndex) {
+        if (fromIndex == 0 && toIndex == times.length) {
+            return this;
+        }
+        if (fromIndex >= toIndex) {
+            return EMPTY;
+        }
+        return new PointSeries(Arrays.copyOfRange(times, fromIndex, toIndex),
+                Arrays.copyOfRange(x, fromIndex, toIndex), Arrays.copyOfRange(y, fromIndex, toIndex),
+                Arrays.copyOfRange(latitudes, fromIndex, toIndex), Arrays.copyOfRange(longitudes, fromIndex, toIndex),
+                speeds == null ? null : Arrays.copyOfRange(speeds, fromIndex, toIndex),
+                labels == null ? null : Arrays.copyOfRange(labels, fromIndex, toIndex));
+    }
+
+    /**
+     * Moves the coordinates into the image space, where the origin is the top left corner.
+     */
+    public PointSeries translate(final double minX, final double maxY, final double scale) {
+        final var translatedX = new double[x.length];
+        final var translatedY = new double[y.length];
+        for (var i = 0; i < times.length; i++) {
+            translatedX[i] = (x[i] - minX) * scale;
+            translatedY[i] = (maxY - y[i]) * scale;
+        }
+        return new PointSeries(times, translatedX, translatedY, latitudes, longitudes, speeds, labels);
+    }
+
+    /**
+     * Creates a line through the points from {@code fromIndex} to {@code toIndex} (both inclusive). Drawing the whole line at once
+     * is much faster than drawing every part on its own and the joins are drawn only once.
+     */
+    public Path2D toPath(final int fromIndex, final int toIndex) {
+        final var path = new Path2D.Double(Path2D.WIND_NON_ZERO, toIndex - fromIndex + 1);
+        path.moveTo(x[fromIndex], y[fromIndex]);
+        for (var i = fromIndex + 1; i <= toIndex; i++) {
+            path.lineTo(x[i], y[i]);
+        }
+        return path;
+    }
+
+    /**
+     * Creates a point object for the plugins. The time of the created track point is the (possibly shifted) time of the series.
+     */
+    public GpxPoint toGpxPoint(final int index) {
+        final var speed = getSpeed(index);
+        final var trackPoint = new TrackPoint(latitudes[index], longitudes[index], times[index], speed, getLabel(index));
+        return new GpxPoint(x[index], y[index], trackPoint, times[index], speed);
+    }
+
+    public static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 256;
+
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] x = new double[INITIAL_CAPACITY];
+        private double[] y = new double[INITIAL_CAPACITY];
+        private double[] latitudes = new double[INITIAL_CAPACITY];
+        private double[] longitudes = new double[INITIAL_CAPACITY];
+        private double[] speeds = new double[INITIAL_CAPACITY];
+        private String[] labels = new String[INITIAL_CAPACITY];
+        private boolean hasSpeeds;
+        private boolean hasLabels;
+        private boolean sorted = true;
+        private int size;
+
+        private Builder() { }
+
+        @SuppressWarnings("checkstyle:ParameterNumber")
+        public Builder add(final long time, final double pointX, final double pointY, final double latitude, final double longitude,
+                           @Nullable final Double speed, @Nullable final String label) {
+            if (size == times.length) {
+                grow();
+            }
+            sorted = sorted && (size == 0 || times[size - 1] <= time);
+            hasSpeeds = hasSpeeds || speed != null;
+            hasLabels = hasLabels || label != null;
+
+            times[size] = time;
+            x[size] = pointX;
+            y[size] = pointY;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            speeds[size] = speed == null ? Double.NaN : speed;
+            labels[size] = label;
+            size++;
+            return this;
+        }
+
+        public PointSeries build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            final var order = sorted ? null : IntStream.range(0, size).boxed()
+                    .sorted((a, b) -> Long.compare(times[a], times[b])) // stable, keeps the order of points with the same time
+                    .mapToInt(Integer::intValue).toArray();
+
+            final var sortedTimes = new long[size];
+            var lastTime = Long.MIN_VALUE;
+            for (var i = 0; i < size; i++) {
+                final var time = times[order == null ? i : order[i]];
+                // prevent overwriting existing (way)points with the same time
+                lastTime = i == 0 ? time : Math.max(time, lastTime + 1);
+                sortedTimes[i] = lastTime;
+            }
+
+            return new PointSeries(sortedTimes, reorder(x, order), reorder(y, order),
+                    reorder(latitudes, order), reorder(longitudes, order),
+                    hasSpeeds ? reorder(speeds, order) : null,
+                    hasLabels ? reorder(labels, order) : null);
+        }
+
+        private double[] reorder(@NonNull final double[] values, @Nullable final int[] order) {
+            if (order == null) {
+                return Arrays.copyOf(values, size);
+            }
+            final var result = new double[size];
+            for (var i = 0; i < size; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        private String[] reorder(@NonNull final String[] values, @Nullable final int[] order) {
+            if (order == null) {
+                return Arrays.copyOf(values, size);
+            }
+            final var result = new String[size];
+            for (var i = 0; i < size; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        private void grow() {
+            final var capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+    }
+}
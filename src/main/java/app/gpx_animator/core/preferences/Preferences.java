@@ -40,6 +40,9 @@ public final class Preferences {
     private static final String RECENT_FILES = "recent_files"; //NON-NLS
     private static final String TILE_CACHE_DIR = "tile_cache_dir"; //NON-NLS
     private static final String TILE_CACHE_TIME_LIMIT = "tile_cache_time_limit"; //NON-NLS
+    private static final String TILE_CACHE_ARCHIVE = "tile_cache_archive"; //NON-NLS
+    private static final String TILE_CACHE_MAX_SIZE = "tile_cache_max_size"; //NON-NLS
+    private static final String TILE_CACHE_RASTER_SIZE = "tile_cache_raster_size"; //NON-NLS
     private static final String TRACK_COLOR_RANDOM = "track_color_random"; //NON-NLS
     private static final String TRACK_COLOR_DEFAULT = "track_color_default"; //NON-NLS
 
@@ -119,6 +122,31 @@ public final class Preferences {
         PREFS.putLong(TILE_CACHE_TIME_LIMIT, tileCacheTimeLimit);
     }
 
+    public static boolean isTileCacheArchive() {
+        return PREFS.getBoolean(TILE_CACHE_ARCHIVE, false);
+    }
+
+    public static void setTileCacheArchive(final boolean tileCacheArchive) {
+        PREFS.putBoolean(TILE_CACHE_ARCHIVE, tileCacheArchive);
+    }
+
+    public static long getTileCacheMaxSize() {
+        return PREFS.getLong(TILE_CACHE_MAX_SIZE,
+                1024L * 1024 * 1024); // 1 GB
+    }
+
+    public static void setTileCacheMaxSize(final long tileCacheMaxSize) {
+        PREFS.putLong(TILE_CACHE_MAX_SIZE, tileCacheMaxSize);
+    }
+
+    public static long getTileCacheRasterSize() {
+        return PREFS.getLong(TILE_CACHE_RASTER_SIZE, 0); // no decoded tiles
+    }
+
+    public static void setTileCacheRasterSize(final long tileCacheRasterSize) {
+        PREFS.putLong(TILE_CACHE_RASTER_SIZE, tileCacheRasterSize);
+    }
+
     public static boolean getTrackColorRandom() {
         return PREFS.getBoolean(TRACK_COLOR_RANDOM, true);
     }
@@ -0,0 +1,112 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import java.util.Arrays;
+
+/**
+ * The time spans in which at least one track is active, sorted and without overlaps. Used to skip the idle time between the spans.
+ * Lookups use a binary search.
+ */
+final class ActiveSpans {
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private ActiveSpans(final long[] starts, final long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return {@code true} if the time is within one of the spans (including the start and end time)
+     */
+    boolean isActive(final long time) {
+        final var index = floorIndex(time);
+        return index >= 0 && time <= ends[index];
+    }
+
+    /**
+     * @return the start time of the first span which starts after the given time, or {@link Long#MAX_VALUE} if there is none
+     */
+    long getNextStart(final long time) {
+        final var index = floorIndex(time) + 1;
+        return index < starts.length ? starts[index] : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the index of the last span which starts at or before the given time, or -1 if there is none
+     */
+    private int floorIndex(final long time) {
+        final var index = Arrays.binarySearch(starts, time);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] starts = new long[INITIAL_CAPACITY];
+        private long[] ends = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private Builder() { }
+
+        Builder add(final long start, final long end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+            return this;
+        }
+
+        /**
+         * Sorts the spans by their start time and merges the overlapping ones.
+         */
+        ActiveSpans build() {
+            final var order = new long[size][];
+            for (var i = 0; i < size; i++) {
+                order[i] = new long[] {starts[i], ends[i]};
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(a[0], b[0]));
+
+            final var mergedStarts = new long[size];
+            final var mergedEnds = new long[size];
+            var count = 0;
+            for (final var span : order) {
+                if (count > 0 && span[0] <= mergedEnds[count - 1]) {
+                    mergedEnds[count - 1] = Math.max(mergedEnds[count - 1], span[1]);
+                } else {
+                    mergedStarts[count] = span[0];
+                    mergedEnds[count] = span[1];
+                    count++;
+                }
+            }
+            return new ActiveSpans(Arrays.copyOf(mergedStarts, count), Arrays.copyOf(mergedEnds, count));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.renderer.cache.CacheStatistics;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.AlphaComposite;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of images which are reused for the frames and the scratch images of the renderer and the plugins, to avoid allocating
+ * (and collecting) large images for every frame. Images are borrowed with {@link #acquire(int, int, int)} and handed back with
+ * {@link #release(BufferedImage)} when they are not used anymore, which may happen on a different thread. An image which is never
+ * released is simply left to the garbage collector.
+ */
+public final class FrameBufferPool {
+
+    private final int maxIdleImages;
+    private final Map<ImageKey, Deque<BufferedImage>> idleImages = new HashMap<>();
+    private final CacheStatistics statistics = new CacheStatistics("Frame buffer pool"); //NON-NLS
+
+    /**
+     * @param maxIdleImages the maximum number of unused images which are kept per image size and type
+     */
+    public FrameBufferPool(final int maxIdleImages) {
+        this.maxIdleImages = maxIdleImages;
+    }
+
+    /**
+     * Borrows an image from the pool. The content of the image is undefined, the caller has to overwrite all pixels.
+     */
+    public synchronized BufferedImage acquire(final int width, final int height, final int imageType) {
+        final var images = idleImages.get(new ImageKey(width, height, imageType));
+        if (images != null && !images.isEmpty()) {
+            statistics.hit();
+            return images.removeLast();
+        }
+        statistics.miss();
+        return new BufferedImage(width, height, imageType);
+    }
+
+    /**
+     * Borrows an image from the pool with all pixels set to zero, like a newly created image.
+     */
+    public BufferedImage acquireCleared(final int width, final int height, final int imageType) {
+        final var image = acquire(width, height, imageType);
+        clear(image);
+        return image;
+    }
+
+    /**
+     * Hands an image back to the pool. The image must not be used by the caller afterwards.
+     */
+    public synchronized void release(@NonNull final BufferedImage image) {
+        if (image.getRaster().getParent() != null) {
+            return; // only whole images are pooled
+        }
+        final var images = idleImages.computeIfAbsent(new ImageKey(image.getWidth(), image.getHeight(), image.getType()),
+                key -> new ArrayDeque<>());
+        if (images.size() < maxIdleImages) {
+            images.addLast(image);
+        } else {
+            statistics.eviction();
+        }
+    }
+
+    /**
+     * Creates a callback which releases the image after it was called by all owners of the image, for example the frame writer
+     * and the renderer keeping the last frame.
+     */
+    public Runnable releaseAfter(@NonNull final BufferedImage image, final int owners) {
+        final var remainingOwners = new AtomicInteger(owners);
+        return () -> {
+            if (remainingOwners.decrementAndGet() == 0) {
+                release(image);
+            }
+        };
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets all pixels of the image (which may be a part of a larger image) to zero.
+     */
+    public static void clear(@NonNull final BufferedImage image) {
+        final var graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+    }
+
+    private record ImageKey(int width, int height, int imageType) { }
+}
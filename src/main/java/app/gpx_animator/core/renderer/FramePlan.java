@@ -0,0 +1,164 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.gpx.PointSeries;
+import app.gpx_animator.core.util.RenderUtil;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The timeline of an animation, computed once before the first frame is rendered. For every frame it knows the time and for every
+ * track segment the index of the current point, the first point of the new part of the track and the first point of the tail.
+ * All lookups are table lookups, any frame can be accessed in any order.
+ */
+final class FramePlan {
+
+    private final long[] times;
+    private final long tailDuration;
+    private final SegmentPlan[][] tracks;
+    private final SegmentPlan waypoints;
+
+    FramePlan(@NonNull final List<List<PointSeries>> trackSegmentsList,
+              @NonNull final PointSeries waypoints,
+              final int frames,
+              final long minTime,
+              final double fps,
+              final double speedup,
+              final long tailDuration) {
+        this.times = new long[frames + 1];
+        for (var frame = 0; frame <= frames; frame++) {
+            times[frame] = RenderUtil.getTime(frame, minTime, fps, speedup);
+        }
+        this.tailDuration = tailDuration;
+
+        this.tracks = new SegmentPlan[trackSegmentsList.size()][];
+        for (var track = 0; track < tracks.length; track++) {
+            final var trackSegments = trackSegmentsList.get(track);
+            tracks[track] = new SegmentPlan[trackSegments.size()];
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                tracks[track][segment] = new SegmentPlan(trackSegments.get(segment), times, true, tailDuration);
+            }
+        }
+        this.waypoints = new SegmentPlan(waypoints, times, false, 0);
+    }
+
+    int getFrames() {
+        return times.length - 1;
+    }
+
+    long getTime(final int frame) {
+        return times[frame];
+    }
+
+    /**
+     * @return the first frame with a time at or after the given time, or the number of frames plus one if there is none
+     */
+    int getFirstFrameAtOrAfter(final long time) {
+        final var index = Arrays.binarySearch(times, time);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    long getTailDuration() {
+        return tailDuration;
+    }
+
+    /**
+     * @return the index of the last point reached in the given frame, or -1 if the segment has not started yet
+     */
+    int getPointIndex(final int track, final int segment, final int frame) {
+        return tracks[track][segment].count(frame) - 1;
+    }
+
+    /**
+     * @return the index of the first point of the part of the segment which is new in the given frame
+     */
+    int getNewPartStartIndex(final int track, final int segment, final int frame) {
+        // the last point of the previous frame or the first point if we are at the beginning
+        return frame == 0 ? 0 : Math.max(0, getPointIndex(track, segment, frame - 1));
+    }
+
+    /**
+     * @return the index of the first point of the tail which ends at the last point reached in the given frame,
+     *         or -1 if the segment has not started yet
+     */
+    int getTailStartIndex(final int track, final int segment, final int frame) {
+        final var pointIndex = getPointIndex(track, segment, frame);
+        return pointIndex == -1 ? -1 : tracks[track][segment].tailStartIndexes[pointIndex];
+    }
+
+    /**
+     * @return the number of waypoints passed before the time of the given frame
+     */
+    int getWaypointCount(final int frame) {
+        return waypoints.count(frame);
+    }
+
+    /**
+     * The number of points reached per frame. It is only stored for the frames in which the segment is drawn, before that the
+     * number is zero and after that it is the size of the segment.
+     */
+    private static final class SegmentPlan {
+
+        private final int size;
+        private final int firstFrame;
+        private final int[] counts;
+        private final int[] tailStartIndexes;
+
+        SegmentPlan(@NonNull final PointSeries points, @NonNull final long[] times, final boolean inclusive, final long tailDuration) {
+            size = points.size();
+
+            var first = times.length;
+            var last = times.length - 1;
+            final var allCounts = new int[times.length];
+            var count = 0;
+            for (var frame = 0; frame < times.length; frame++) {
+                while (count < size && (inclusive ? points.getTime(count) <= times[frame] : points.getTime(count) < times[frame])) {
+                    count++;
+                }
+                allCounts[frame] = count;
+                if (count > 0 && first == times.length) {
+                    first = frame;
+                }
+                if (count == size) {
+                    last = frame;
+                    break;
+                }
+            }
+            firstFrame = first;
+            counts = first > last ? new int[0] : Arrays.copyOfRange(allCounts, first, last + 1);
+
+            tailStartIndexes = new int[inclusive ? size : 0];
+            var tailStart = 0;
+            for (var i = 0; i < tailStartIndexes.length; i++) {
+                while (points.getTime(tailStart) < points.getTime(i) - tailDuration) {
+                    tailStart++;
+                }
+                tailStartIndexes[i] = tailStart;
+            }
+        }
+
+        int count(final int frame) {
+            if (frame < firstFrame) {
+                return 0;
+            }
+            final var index = frame - firstFrame;
+            return index < counts.length ? counts[index] : size;
+        }
+    }
+}
@@ -15,7 +15,14 @@
  */
 package app.gpx_animator.core.renderer;
 
+import app.gpx_animator.core.data.gpx.PointSeries;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+
+/**
+ * @param tracks    the segments of every track, in the order of the track configurations, already translated into image space
+ * @param waypoints the waypoints of all tracks, already translated into image space
+ */
 public record Metadata(@Nullable Integer zoom, double minX, double maxX, double minY, double maxY, long minTime, long maxTime,
-                       double speedup, int frames) { }
+                       double speedup, int frames, List<List<PointSeries>> tracks, PointSeries waypoints) { }
@@ -18,60 +18,69 @@ package app.gpx_animator.core.renderer;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.configuration.TrackConfiguration;
-import app.gpx_animator.core.data.TrackIcon;
 import app.gpx_animator.core.data.entity.MyPoint;
 import app.gpx_animator.core.data.entity.TrackPoint;
 import app.gpx_animator.core.data.entity.TrackSegment;
 import app.gpx_animator.core.data.entity.WayPoint;
 import app.gpx_animator.core.data.gpx.GpxContentHandler;
 import app.gpx_animator.core.data.gpx.GpxParser;
-import app.gpx_animator.core.data.gpx.GpxPoint;
+import app.gpx_animator.core.data.gpx.PointSeries;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.BackgroundCache;
+import app.gpx_animator.core.renderer.cache.LabelSpriteCache;
+import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TrackIconCache;
+import app.gpx_animator.core.renderer.framewriter.AsyncFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FileFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import app.gpx_animator.core.renderer.framewriter.NullFrameWriter;
 import app.gpx_animator.core.renderer.framewriter.VideoFrameWriter;
+import app.gpx_animator.core.renderer.plugins.BackgroundColorPlugin;
+import app.gpx_animator.core.renderer.plugins.BackgroundImagePlugin;
+import app.gpx_animator.core.renderer.plugins.BackgroundMapPlugin;
 import app.gpx_animator.core.renderer.plugins.RendererPlugin;
 import app.gpx_animator.core.util.PluginUtil;
-import app.gpx_animator.core.util.RenderUtil;
 import app.gpx_animator.core.util.Utils;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.imageio.ImageIO;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
-import java.awt.font.TextLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.awt.image.AffineTransformOp;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.io.Serial;
 import java.text.NumberFormat;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
 import java.util.ResourceBundle;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
 import static app.gpx_animator.core.util.Utils.isEqual;
-import static java.util.Objects.requireNonNull;
 
 @SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
 public final class Renderer {
@@ -80,12 +89,23 @@ public final class Renderer {
     private static final Logger LOGGER = LoggerFactory.getLogger(Renderer.class);
 
     private static final double MS = 1000d;
+    private static final long LABEL_SPRITE_CACHE_SIZE = 32L * 1024 * 1024;
+    private static final int MAP_TILE_SIZE = 512;
+    private static final int MAX_PATH_POINTS = 1_000;
+    private static final long PREFETCH_TIME = 2_000;
+    private static final int MAX_AUTO_RENDER_THREADS = 4;
+    private static final Set<Class<? extends RendererPlugin>> CACHED_BACKGROUND_PLUGINS =
+            Set.of(BackgroundColorPlugin.class, BackgroundImagePlugin.class, BackgroundMapPlugin.class);
 
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final Configuration cfg;
+    private final FrameWriter customFrameWriter;
 
-    private final List<List<TreeMap<Long, Point2D>>> timePointMapListList = new ArrayList<>();
+    private final List<List<PointSeries>> trackSegmentsList = new ArrayList<>();
+    private final List<BufferedImage> trackIconImages = new ArrayList<>();
+    private PointSeries waypoints = PointSeries.empty();
+    private int drawnWaypoints;
 
     private long minTime = Long.MAX_VALUE;
     private long maxTime = Long.MIN_VALUE;
@@ -100,9 +120,22 @@ public final class Renderer {
     private double recentMarkersYSum = 0.0;
 
     private double speedup;
+    private int renderThreads;
+    private FramePlan framePlan;
+    private TailRenderer tailRenderer;
+    private FrameBufferPool frameBufferPool;
+    private final LabelSpriteCache labelSpriteCache = new LabelSpriteCache(LABEL_SPRITE_CACHE_SIZE);
 
     public Renderer(@NonNull final Configuration cfg) throws UserException {
+        this(cfg, null);
+    }
+
+    /**
+     * @param customFrameWriter the frame writer to use instead of writing the output file of the configuration
+     */
+    Renderer(@NonNull final Configuration cfg, @Nullable final FrameWriter customFrameWriter) throws UserException {
         this.cfg = cfg.validate();
+        this.customFrameWriter = customFrameWriter;
         this.recentMarkers = new LinkedList<>();
     }
 
@@ -114,24 +147,13 @@ public final class Renderer {
         return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
     }
 
-    private static Color blendTailColor(@NonNull final Color tailColor,
-                                        @NonNull final Color trackColor,
-                                        final float ratio) {
-        var r = ((double) (1 - ratio)) * tailColor.getRed() + (double) ratio * trackColor.getRed();
-        var g = ((double) (1 - ratio)) * tailColor.getGreen() + (double) ratio * trackColor.getGreen();
-        var b = ((double) (1 - ratio)) * tailColor.getBlue() + (double) ratio * trackColor.getBlue();
-        double a = Math.max(tailColor.getAlpha(), trackColor.getAlpha());
-
-        return new Color((int) r, (int) g, (int) b, (int) a);
-    }
-
     @SuppressWarnings({ "checkstyle:InnerAssignment" }) // Checkstyle 8.37 can't handle the enhanced switch properly
     public void render(@NonNull final RenderingContext rc) throws UserException {
         final var renderStartTime = LocalDateTime.now();
 
-        final List<Long[]> spanList = new ArrayList<>();
-        final var wpMap = new TreeMap<Long, Point2D>();
-        parseGPX(spanList, wpMap, rc);
+        final var activeSpansBuilder = ActiveSpans.builder();
+        parseGPX(activeSpansBuilder, rc);
+        final var activeSpans = activeSpansBuilder.build();
 
         final var userSpecifiedWidth = cfg.getWidth() != null;
         final var width = userSpecifiedWidth ? cfg.getWidth() : 800;
@@ -140,9 +162,9 @@ public final class Renderer {
 
         calculateMinMaxValues(userSpecifiedWidth, width, scale);
 
-        timePointMapListList.forEach(timePointMapList -> timePointMapList
-                            .forEach(timePointMap -> translateCoordinatesToZeroZero(scale, timePointMap)));
-        translateCoordinatesToZeroZero(scale, wpMap);
+        trackSegmentsList.forEach(trackSegments -> trackSegments
+                            .replaceAll(trackSegment -> translateCoordinatesToZeroZero(scale, trackSegment)));
+        waypoints = translateCoordinatesToZeroZero(scale, waypoints);
 
         final var frameFilePattern = cfg.getOutput().toString();
         //noinspection MagicCharacter
@@ -164,25 +186,44 @@ public final class Renderer {
 
         LOGGER.info("{} x {}; {} x {}; {}", realWidth, realHeight, viewportWidth, viewportHeight, scale);
 
-        final var frameWriter = cfg.isPreview() ? new NullFrameWriter() : toImages
-                ? new FileFrameWriter(frameFilePattern, ext, cfg.getFps())
-                : new VideoFrameWriter(cfg.getOutput(), cfg.getVideoCodec(), cfg.getFps(), viewportWidth, viewportHeight);
-
-        final var bi = createBufferedImage(realWidth, realHeight, zoom);
+        final var frameWriter = createFrameWriter(frameFilePattern, ext, toImages, viewportWidth, viewportHeight);
 
         final var plugins = PluginUtil.getAvailablePlugins(cfg, frameWriter, rc);
         final var frames = calculateSpeedupAndReturnFrames(plugins);
-        final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup, frames);
+        framePlan = new FramePlan(trackSegmentsList, waypoints, frames, minTime, cfg.getFps(), speedup, cfg.getTailDuration());
+        tailRenderer = new TailRenderer(trackSegmentsList, cfg.getTrackConfigurationList(), framePlan, cfg.getTailColor(),
+                cfg.getTailDuration(), cfg.isTailColorFadeout(), maxTime);
+        final var metadata = new Metadata(zoom, minX, maxX, minY, maxY, minTime, maxTime, speedup, frames, getTracks(), waypoints);
+        loadTrackIcons();
+
+        // without a configured number of threads as many frames are rendered in parallel as there are processors, up to a limit
+        renderThreads = cfg.getRenderThreads() > 0
+                ? cfg.getRenderThreads()
+                : Math.min(Runtime.getRuntime().availableProcessors(), MAX_AUTO_RENDER_THREADS);
+
+        // enough images for all frames in flight, in the encoder queue, the last frame and the still frames
+        frameBufferPool = new FrameBufferPool(renderThreads * 2 + cfg.getEncoderQueueSize() + 2);
 
         for (final var plugin : plugins) {
             plugin.setMetadata(metadata);
+            plugin.setFrameBufferPool(frameBufferPool);
         }
 
-        drawBackground(plugins, bi);
-        preDrawTracks(bi, frames);
-        renderFrames(plugins, bi, realWidth, realHeight, viewportWidth, viewportHeight, frameWriter, frames, spanList, wpMap, rc, renderStartTime);
-
-        frameWriter.close();
+        try (var canvas = createCanvas(plugins, realWidth, realHeight, viewportWidth, viewportHeight, zoom, rc)) {
+            preDrawTracks(canvas, frames);
+            renderFrames(plugins, canvas, viewportWidth, viewportHeight, frameWriter, frames, activeSpans, rc, renderStartTime);
+        } finally {
+            frameWriter.close();
+            LOGGER.info("{}", frameBufferPool.getStatistics());
+            LOGGER.info("{}", TrackIconCache.getStatistics());
+            LOGGER.info("{}", TileCache.getInstance().getStatistics());
+            LOGGER.info("{}", BackgroundCache.getStatistics());
+            LOGGER.info("{}", labelSpriteCache.getStatistics());
+            LOGGER.info("{}", tailRenderer.getStatistics());
+            plugins.stream()
+                    .filter(TextRenderer.class::isInstance)
+                    .forEach(plugin -> LOGGER.info("{}", ((TextRenderer) plugin).getTextCacheStatistics()));
+        }
 
         final var renderFinishTime = LocalDateTime.now();
         final var runtimeSeconds = ChronoUnit.SECONDS.between(renderStartTime, renderFinishTime);
@@ -207,6 +248,26 @@ public final class Renderer {
         }
     }
 
+    private FrameWriter createFrameWriter(@NonNull final String frameFilePattern,
+                                          @Nullable final String ext,
+                                          final boolean toImages,
+                                          final int viewportWidth,
+                                          final int viewportHeight) throws UserException {
+        if (customFrameWriter != null) {
+            return customFrameWriter;
+        }
+        if (cfg.isPreview()) {
+            return new NullFrameWriter();
+        }
+
+        final var frameWriter = toImages
+                ? new FileFrameWriter(frameFilePattern, ext, cfg.getFps())
+                : new VideoFrameWriter(cfg.getOutput(), cfg.getVideoCodec(), cfg.getFps(), viewportWidth, viewportHeight);
+
+        // encode on a separate thread, so that rendering and encoding overlap
+        return cfg.getEncoderQueueSize() > 0 ? new AsyncFrameWriter(frameWriter, cfg.getEncoderQueueSize()) : frameWriter;
+    }
+
     private void calculateMinMaxValues(final boolean userSpecifiedWidth,
                                        final int width,
                                        final double scale) {
@@ -228,77 +289,175 @@ public final class Renderer {
         }
     }
 
-    @SuppressWarnings({ "ParameterNumber", "java:S107", "java:S3776" }) // TODO refactoring in progress
+    @SuppressWarnings({ "ParameterNumber", "java:S107" }) // TODO refactoring in progress
     private void renderFrames(@NonNull final List<RendererPlugin> plugins,
-                              @NonNull final BufferedImage bi,
-                              final int realWidth,
-                              final int realHeight,
+                              @NonNull final TiledCanvas canvas,
                               final int viewportWidth,
                               final int viewportHeight,
                               @NonNull final FrameWriter frameWriter,
                               final int frames,
-                              @NonNull final List<Long[]> spanList,
-                              @NonNull final TreeMap<Long, Point2D> wpMap,
+                              @NonNull final ActiveSpans activeSpans,
                               @NonNull final RenderingContext rc,
                               @NonNull final LocalDateTime renderStartTime) throws UserException {
-        final var remainingTimeCalculator = new RemainingTimeCalculator(renderStartTime, frames);
         final var stopAfterFrame = cfg.getPreviewLength() == null
                 ? cfg.isPreview() ? 1 : Long.MAX_VALUE
                 : cfg.getPreviewLength() * cfg.getFps() / 1_000;
-        BufferedImage lastRenderedFrame = null;
-        var skip = -1f;
-        for (var frame = 1; frame <= frames; frame++) {
-            if (rc.isCancelled1()) {
-                return;
-            }
-
-            if (frame > stopAfterFrame) {
-                return;
-            }
-
-            final Long time = getTime(frame);
-            skip:
-            if (cfg.isSkipIdle()) {
-                for (final var span : spanList) {
-                    if (span[0] <= time && span[1] >= time) {
-                        break skip;
-                    }
+        final var maxFramesInFlight = renderThreads == 1 ? 0 : renderThreads * 2;
+        final var frameSequence = new FrameSequence(plugins, frameWriter, frames, rc,
+                new RemainingTimeCalculator(renderStartTime, frames));
+        final var lastFrame = (int) Math.min(frames, stopAfterFrame);
+        final var viewports = planViewports(canvas, viewportWidth, viewportHeight, lastFrame, activeSpans);
+        final var prefetchFrames = (int) (PREFETCH_TIME * cfg.getFps() / 1_000);
+        var prefetchedFrame = 0;
+        final var executor = renderThreads == 1 ? null : Executors.newFixedThreadPool(renderThreads, new RenderThreadFactory());
+        try {
+            for (var frame = 1; frame <= frames; frame++) {
+                if (rc.isCancelled1()) {
+                    return;
                 }
-                rc.setProgress1((int) (100.0 * frame / frames),
-                        String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
-                skip = 1f;
-                continue;
-            }
 
-            final var pct = (int) (100.0 * frame / frames);
-            rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"),
-                    frame, frames, remainingTimeCalculator.getSecondsLeft(frame)));
+                if (frame > stopAfterFrame) {
+                    frameSequence.writeAll();
+                    return;
+                }
 
-            paint(bi, frame, 0, null, false);
-            final var bi2 = Utils.deepCopy(bi);
-            paint(bi2, frame, cfg.getTailDuration(), cfg.getTailColor(), false);
-            drawWaypoints(bi2, frame, wpMap);
+                final var lastIdleFrame = getLastIdleFrame(frame, frames, activeSpans);
+                if (lastIdleFrame != -1) {
+                    // jump directly to the last frame before the next active span, the idle frames are not written
+                    frame = lastIdleFrame;
+                    frameSequence.add(new PendingFrame(frame, null, null));
+                } else {
+                    // the map is created in the background a little ahead of the viewport
+                    prefetchedFrame = prefetch(canvas, viewports, prefetchedFrame, Math.min(lastFrame, frame + prefetchFrames));
+
+                    // the track is drawn incrementally, so this has to happen in frame order
+                    drawNewTrackParts(canvas, frame);
+                    // like the track, the reached waypoints are drawn on the map once and stay there
+                    drawWaypoints(canvas, frame);
+                    final var marker = findMarker(frame);
+                    final var viewport = viewports[frame];
+
+                    // only the visible part of the map is copied, everything else is drawn on top of the copy
+                    final var image = canvas.copyRegion(viewport,
+                            frameBufferPool.acquire(viewport.width, viewport.height, BufferedImage.TYPE_3BYTE_BGR));
+                    final var origin = viewport.getLocation();
+                    final var currentFrame = frame;
+                    frameSequence.add(new PendingFrame(frame, marker, executor == null
+                            ? CompletableFuture.completedFuture(renderFrame(image, origin, currentFrame))
+                            : executor.submit(() -> renderFrame(image, origin, currentFrame))));
+                }
 
-            final var marker = drawMarker(bi2, frame);
+                while (frameSequence.size() > maxFramesInFlight) {
+                    frameSequence.writeNext();
+                }
+            }
+            frameSequence.writeAll();
+            frameSequence.keepLastFrame();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
 
-            skip = renderFlashback(skip, bi2);
+    /**
+     * @return the last frame of the idle time starting at the given frame, or {@code -1} if the frame is not idle or idle frames
+     * are not skipped
+     */
+    private int getLastIdleFrame(final int frame,
+                                 final int frames,
+                                 @NonNull final ActiveSpans activeSpans) {
+        final var time = getTime(frame);
+        if (cfg.isSkipIdle() && !activeSpans.isActive(time)) {
+            return Math.min(frames, framePlan.getFirstFrameAtOrAfter(activeSpans.getNextStart(time)) - 1);
+        }
+        return -1;
+    }
 
-            // apply viewport over bi2 (which could be the full viewport)
-            final var viewportImage = applyViewport(bi2, marker, realWidth, realHeight, viewportWidth, viewportHeight);
+    /**
+     * Calculates the part of the map shown in every frame in advance, so that the map can be prepared before it is shown. Skipped
+     * idle frames have no viewport. The viewport follows the previous positions on the tracks, so this has to happen in frame order.
+     * A frame without a position keeps the viewport of the previous frame, the frames before the first position show the viewport
+     * of the first position (or the center of the map without any position), so that every frame has the size of the viewport.
+     */
+    private Rectangle[] planViewports(@NonNull final TiledCanvas canvas,
+                                      final int viewportWidth,
+                                      final int viewportHeight,
+                                      final int lastFrame,
+                                      @NonNull final ActiveSpans activeSpans) {
+        final var viewports = new Rectangle[lastFrame + 1];
+        final var framesBeforeFirstPosition = new ArrayList<Integer>();
+        Rectangle firstViewport = null;
+        Rectangle viewport = null;
+        for (var frame = 1; frame <= lastFrame; frame++) {
+            final var lastIdleFrame = getLastIdleFrame(frame, lastFrame, activeSpans);
+            if (lastIdleFrame != -1) {
+                frame = lastIdleFrame;
+                continue;
+            }
 
-            for (final var plugin : plugins) {
-                plugin.renderFrame(frame, marker, viewportImage);
+            final var position = findPosition(frame);
+            if (position != null) {
+                viewport = calculateViewport(position, canvas.getWidth(), canvas.getHeight(), viewportWidth, viewportHeight);
+                if (firstViewport == null) {
+                    firstViewport = viewport;
+                }
+            }
+            if (viewport == null) {
+                framesBeforeFirstPosition.add(frame);
+            } else {
+                viewports[frame] = viewport;
             }
+        }
 
-            frameWriter.addFrame(viewportImage);
+        if (firstViewport == null) {
+            firstViewport = new Rectangle((canvas.getWidth() - viewportWidth) / 2, (canvas.getHeight() - viewportHeight) / 2,
+                    viewportWidth, viewportHeight);
+        }
+        for (final var frame : framesBeforeFirstPosition) {
+            viewports[frame] = firstViewport;
+        }
+        return viewports;
+    }
 
-            if (frame == 1) { // NOPMD - AvoidLiteralsInIfCondition - this number never changes
-                keepFrame(plugins, rc, frameWriter, viewportImage, frame, wpMap, cfg.getKeepFirstFrame());
-            }
+    /**
+     * Prefetches the map for the viewports of the frames after the given prefetched frame up to the given frame.
+     *
+     * @return the last prefetched frame, which is smaller than the given frame if too many map tiles are waiting to be shown
+     */
+    private static int prefetch(@NonNull final TiledCanvas canvas,
+                                @NonNull final Rectangle[] viewports,
+                                final int prefetchedFrame,
+                                final int toFrame) {
+        var frame = prefetchedFrame;
+        while (frame < toFrame && (viewports[frame + 1] == null || canvas.prefetch(viewports[frame + 1]))) {
+            frame++;
+        }
+        return frame;
+    }
 
-            lastRenderedFrame = viewportImage;
+    /**
+     * Draws everything of a frame which does not depend on the previous frames. This method does not change the state of the renderer
+     * and is therefore safe to be called for multiple frames in parallel.
+     */
+    private BufferedImage renderFrame(@NonNull final BufferedImage image,
+                                      @NonNull final Point origin,
+                                      final int frame) throws UserException {
+        if (cfg.getTailDuration() > 0) {
+            tailRenderer.draw(getTranslatedGraphics(image, origin), frame);
         }
-        keepFrame(plugins, rc, frameWriter, lastRenderedFrame, frames, wpMap, cfg.getKeepLastFrame());
+        drawMarker(getTranslatedGraphics(image, origin), frame);
+        return image;
+    }
+
+    /**
+     * @return a graphics context for an image which shows the part of the map starting at the given origin
+     */
+    private static Graphics2D getTranslatedGraphics(@NonNull final BufferedImage image,
+                                                    @NonNull final Point origin) {
+        final var g2 = getGraphics(image);
+        g2.translate(-origin.x, -origin.y);
+        return g2;
     }
 
     private int calculateSpeedupAndReturnFrames(@NonNull final List<RendererPlugin> plugins) throws UserException {
@@ -326,11 +485,66 @@ public final class Renderer {
         }
     }
 
-    private void preDrawTracks(@NonNull final BufferedImage bi,
-                               final int frames) {
-        if (cfg.isPreDrawTrack()) {
-            paint(bi, frames, getTime(frames) - getTime(0), null, true);
+    /**
+     * Draws the whole tracks in the pre-draw color before the first frame, the animated track is drawn on top of them.
+     */
+    private void preDrawTracks(@NonNull final TiledCanvas canvas,
+                               final int frames) throws UserException {
+        if (!cfg.isPreDrawTrack()) {
+            return;
+        }
+
+        final var backTime = getTime(frames) - getTime(0);
+        final var trackConfigurationList = cfg.getTrackConfigurationList();
+
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var trackConfiguration = trackConfigurationList.get(track);
+            final var trackSegments = trackSegmentsList.get(track);
+            final var stroke = new BasicStroke(trackConfiguration.getPreDrawLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                final var trackSegment = trackSegments.get(segment);
+                final var toIndex = framePlan.getPointIndex(track, segment, frames);
+                if (toIndex == -1) {
+                    continue;
+                }
+
+                final var toTime = trackSegment.getTime(toIndex);
+                if (!cfg.isTailColorFadeout() && toTime == maxTime) {
+                    continue;
+                }
+                final var fromIndex = trackSegment.ceilingIndex(toTime - backTime);
+                drawPath(canvas, stroke, trackSegment, fromIndex, toIndex, trackConfiguration.getPreDrawTrackColor());
+            }
+        }
+    }
+
+    /**
+     * Creates the map with the background. A moving map is split into tiles, which are created when they are needed for the first time,
+     * so that the size of the map is not limited by the available memory.
+     */
+    @SuppressWarnings("ParameterNumber")
+    private TiledCanvas createCanvas(@NonNull final List<RendererPlugin> plugins,
+                                     final int realWidth,
+                                     final int realHeight,
+                                     final int viewportWidth,
+                                     final int viewportHeight,
+                                     @Nullable final Integer zoom,
+                                     @NonNull final RenderingContext rc) throws UserException {
+        if (viewportWidth == realWidth && viewportHeight == realHeight) {
+            final var bi = createBufferedImage(realWidth, realHeight, zoom);
+            drawBackground(plugins, bi, zoom, rc);
+            return TiledCanvas.of(bi);
         }
+
+        // enough tiles to cover the viewport twice, so that the tiles of the previous frames are still available
+        final var columns = (viewportWidth + MAP_TILE_SIZE - 1) / MAP_TILE_SIZE + 1;
+        final var rows = (viewportHeight + MAP_TILE_SIZE - 1) / MAP_TILE_SIZE + 1;
+        return new TiledCanvas(realWidth, realHeight, MAP_TILE_SIZE, 2 * columns * rows, (image, region) -> {
+            for (final var plugin : plugins) {
+                plugin.renderBackground(image, region, realWidth, realHeight);
+            }
+        });
     }
 
     private BufferedImage createBufferedImage(final int width,
@@ -344,14 +558,16 @@ public final class Renderer {
         }
     }
 
-    private BufferedImage applyViewport(@NonNull final BufferedImage bi,
-                                        @Nullable final Point2D marker,
+    /**
+     * @return the part of the map which is visible in the frame, following the recent markers
+     */
+    private Rectangle calculateViewport(@NonNull final Point2D marker,
                                         final int realWidth,
                                         final int realHeight,
                                         final int viewportWidth,
                                         final int viewportHeight) {
-        if (marker == null || (viewportHeight == realHeight && viewportWidth == realWidth)) {
-            return bi;
+        if (viewportHeight == realHeight && viewportWidth == realWidth) {
+            return new Rectangle(0, 0, realWidth, realHeight);
         }
 
         // Add most recent markers to a queue (while updating a running average
@@ -387,7 +603,7 @@ public final class Renderer {
         } else if ((y + viewportHeight) > realHeight) {
             y = (double) realHeight - viewportHeight;
         }
-        return bi.getSubimage((int) x, (int) y, viewportWidth, viewportHeight);
+        return new Rectangle((int) x, (int) y, viewportWidth, viewportHeight);
     }
 
     private float renderFlashback(final float skip,
@@ -403,16 +619,45 @@ public final class Renderer {
         return skip;
     }
 
+    /**
+     * Draws the background. The part of the background color, image and map plugins is copied from the background cache if the
+     * same background was drawn before. These plugins have the lowest order, so they are drawn before all other plugins.
+     */
     private void drawBackground(@NonNull final List<RendererPlugin> plugins,
-                                @NonNull final BufferedImage bi)
+                                @NonNull final BufferedImage bi,
+                                @Nullable final Integer zoom,
+                                @NonNull final RenderingContext rc)
             throws UserException {
+        final var backgroundKey = getBackgroundKey(bi, zoom);
+        if (!BackgroundCache.restore(backgroundKey, bi)) {
+            for (final var plugin : plugins) {
+                if (CACHED_BACKGROUND_PLUGINS.contains(plugin.getClass())) {
+                    plugin.renderBackground(bi);
+                }
+            }
+            if (!rc.isCancelled1()) {
+                BackgroundCache.store(backgroundKey, bi);
+            }
+        }
         for (final var plugin : plugins) {
-            plugin.renderBackground(bi);
+            if (!CACHED_BACKGROUND_PLUGINS.contains(plugin.getClass())) {
+                plugin.renderBackground(bi);
+            }
         }
     }
 
-    private void parseGPX(@NonNull final List<Long[]> spanList,
-                          @NonNull final TreeMap<Long, Point2D> wpMap, @NonNull final RenderingContext rc) throws UserException {
+    private BackgroundCache.BackgroundKey getBackgroundKey(@NonNull final BufferedImage bi, @Nullable final Integer zoom) {
+        final var backgroundColor = cfg.getBackgroundColor();
+        final var backgroundImage = cfg.getBackgroundImage();
+        return new BackgroundCache.BackgroundKey(bi.getWidth(), bi.getHeight(),
+                cfg.getTmsUrlTemplate(), cfg.getTmsApiKey(), zoom, minX, maxX, minY, maxY, cfg.getBackgroundMapVisibility(),
+                backgroundColor == null ? 0 : backgroundColor.getRGB(),
+                backgroundImage == null ? null : backgroundImage.getAbsolutePath(),
+                backgroundImage == null ? 0 : backgroundImage.lastModified());
+    }
+
+    private void parseGPX(@NonNull final ActiveSpans.Builder activeSpans, @NonNull final RenderingContext rc) throws UserException {
+        final var waypointsBuilder = PointSeries.builder();
         var trackIndex = -1;
         for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
             trackIndex++;
@@ -422,7 +667,7 @@ public final class Renderer {
             final var gch = new GpxContentHandler();
             GpxParser.parseGpx(inputGpxFile, gch);
 
-            final List<TreeMap<Long, Point2D>> timePointMapList = new ArrayList<>();
+            final List<PointSeries> trackSegmentList = new ArrayList<>();
 
             final var track = gch.getTrack();
             final var trackSegments = track != null ? track.getTrackSegments() : null;
@@ -431,18 +676,35 @@ public final class Renderer {
                 throw new UserException(resourceBundle.getString("renderer.error.notrack").formatted(inputGpxFile));
             }
             for (final var trackSegment : trackSegments) {
-                final var timePointMap = new TreeMap<Long, Point2D>();
-                toTimePointMap(timePointMap, trackIndex, trackSegment.getTrackPoints(), Long.MIN_VALUE);
-                trimGpxData(timePointMap, trackConfiguration);
-                timePointMapList.add(timePointMap);
-                var oldestTimeAsDefaultForWaypoints = timePointMap.keySet().stream().min(Long::compareTo).orElse(Long.MIN_VALUE);
-                toTimePointMap(wpMap, trackIndex, gch.getWayPoints(), oldestTimeAsDefaultForWaypoints);
-                mergeConnectedSpans(spanList, timePointMap);
+                final var trackSegmentBuilder = PointSeries.builder();
+                addPoints(trackSegmentBuilder, trackIndex, trackSegment.getTrackPoints(), Long.MIN_VALUE);
+                final var points = trimGpxData(trackSegmentBuilder.build(), trackConfiguration);
+                trackSegmentList.add(points);
+                addActiveSpan(activeSpans, points);
             }
 
-            Collections.reverse(timePointMapList); // reversing because of last known location drawing
-            timePointMapListList.add(timePointMapList);
+            // the waypoints are added once per track, the oldest point of the first segment is used for waypoints without time
+            final var firstTrackSegment = trackSegmentList.get(0);
+            final var oldestTimeAsDefaultForWaypoints = firstTrackSegment.isEmpty() ? Long.MIN_VALUE : firstTrackSegment.getFirstTime();
+            addPoints(waypointsBuilder, trackIndex, gch.getWayPoints(), oldestTimeAsDefaultForWaypoints);
+
+            Collections.reverse(trackSegmentList); // reversing because of last known location drawing
+            trackSegmentsList.add(trackSegmentList);
         }
+        waypoints = waypointsBuilder.build();
+    }
+
+    /**
+     * @return the segments of all tracks in the order of the GPX files
+     */
+    private List<List<PointSeries>> getTracks() {
+        final var tracks = new ArrayList<List<PointSeries>>(trackSegmentsList.size());
+        for (final var trackSegments : trackSegmentsList) {
+            final var segments = new ArrayList<>(trackSegments);
+            Collections.reverse(segments);
+            tracks.add(Collections.unmodifiableList(segments));
+        }
+        return Collections.unmodifiableList(tracks);
     }
 
     private int calculateRealHeight(final double scale,
@@ -464,47 +726,23 @@ public final class Renderer {
         return realWidth;
     }
 
-    private void translateCoordinatesToZeroZero(final double scale,
-                                                @NonNull final TreeMap<Long, Point2D> timePointMap) {
-        if (!timePointMap.isEmpty()) {
-            maxTime = Math.max(maxTime, timePointMap.lastKey());
-            minTime = Math.min(minTime, timePointMap.firstKey());
-
-            for (final var point : timePointMap.values()) {
-                point.setLocation((point.getX() - minX) * scale, (maxY - point.getY()) * scale);
-            }
-        }
-    }
-
-    private void mergeConnectedSpans(@NonNull final List<Long[]> spanList,
-                                     @NonNull final TreeMap<Long, Point2D> timePointMap) {
-        if (timePointMap.isEmpty()) {
-            return;
+    private PointSeries translateCoordinatesToZeroZero(final double scale,
+                                                       @NonNull final PointSeries points) {
+        if (points.isEmpty()) {
+            return points;
         }
 
-        long t0 = timePointMap.firstKey();
-        var t1 = timePointMap.lastKey() + (cfg.isTailColorFadeout() ? cfg.getTailDuration() : 0);
+        maxTime = Math.max(maxTime, points.getLastTime());
+        minTime = Math.min(minTime, points.getFirstTime());
 
-        for (final var iter = spanList.iterator(); iter.hasNext();) {
-            final var span = iter.next();
-            if (t0 > span[0] && t1 < span[1]) {
-                // swallowed
-                return;
-            }
+        return points.translate(minX, maxY, scale);
+    }
 
-            if (t0 < span[0] && t1 > span[1]) {
-                // swallows
-                iter.remove();
-            } else if (t1 > span[0] && t1 < span[1]) {
-                t1 = span[1];
-                iter.remove();
-            } else if (t0 < span[1] && t0 > span[0]) {
-                t0 = span[0];
-                iter.remove();
-            }
+    private void addActiveSpan(@NonNull final ActiveSpans.Builder activeSpans,
+                               @NonNull final PointSeries points) {
+        if (!points.isEmpty()) {
+            activeSpans.add(points.getFirstTime(), points.getLastTime() + (cfg.isTailColorFadeout() ? cfg.getTailDuration() : 0));
         }
-
-        spanList.add(new Long[]{t0, t1});
     }
 
     private Integer calculateZoomFactor(@NonNull final RenderingContext rc,
@@ -536,32 +774,41 @@ public final class Renderer {
                 : (128.0 * (1 << zoom)) / Math.PI;
     }
 
-    private void trimGpxData(@NonNull final TreeMap<Long, Point2D> timePointMap,
-                             @NonNull final TrackConfiguration trackConfiguration) {
+    private PointSeries trimGpxData(@NonNull final PointSeries points,
+                                    @NonNull final TrackConfiguration trackConfiguration) {
+        var trimmedPoints = points;
 
         final var trimGpxStart = trackConfiguration.getTrimGpxStart();
-        if (trimGpxStart != null && trimGpxStart > 0 && timePointMap.size() > 0) {
-            final Long skipToTime = timePointMap.firstKey() + trimGpxStart;
-            timePointMap.entrySet().removeIf(e -> e.getKey() < skipToTime);
+        if (trimGpxStart != null && trimGpxStart > 0 && !trimmedPoints.isEmpty()) {
+            final var skipToIndex = trimmedPoints.ceilingIndex(trimmedPoints.getFirstTime() + trimGpxStart);
+            trimmedPoints = skipToIndex == -1 ? PointSeries.empty() : trimmedPoints.slice(skipToIndex, trimmedPoints.size());
         }
 
         final var trimGpxEnd = trackConfiguration.getTrimGpxEnd();
-        if (trimGpxEnd != null && trimGpxEnd > 0 && timePointMap.size() > 0) {
-            final Long skipAfterTime = timePointMap.lastKey() - trimGpxEnd;
-            timePointMap.entrySet().removeIf(e -> e.getKey() > skipAfterTime);
+        if (trimGpxEnd != null && trimGpxEnd > 0 && !trimmedPoints.isEmpty()) {
+            final var skipAfterIndex = trimmedPoints.floorIndex(trimmedPoints.getLastTime() - trimGpxEnd);
+            trimmedPoints = trimmedPoints.slice(0, skipAfterIndex + 1);
         }
+
+        return trimmedPoints;
     }
 
     private void keepFrame(@NonNull final List<RendererPlugin> plugins,
                            @NonNull final RenderingContext rc,
                            @NonNull final FrameWriter frameWriter,
-                           @Nullable final BufferedImage bi,
+                           @Nullable final BufferedImage lastFrame,
                            final int frames,
-                           @NonNull final TreeMap<Long, Point2D> wpMap,
                            @Nullable final Long keepFrame) throws UserException {
-        if (bi != null && keepFrame != null && keepFrame > 0) {
-            drawWaypoints(bi, frames, wpMap);
-            final var marker = drawMarker(bi, frames);
+        if (lastFrame != null && keepFrame != null && keepFrame > 0) {
+            // the frame was already handed over to the frame writer and must not be modified anymore
+            final var bi = Utils.copyRegion(lastFrame, new Rectangle(lastFrame.getWidth(), lastFrame.getHeight()),
+                    frameBufferPool.acquire(lastFrame.getWidth(), lastFrame.getHeight(), lastFrame.getType()));
+            final var g2 = getGraphics(bi);
+            for (var waypoint = drawnWaypoints; waypoint < getReachedWaypoints(frames); waypoint++) {
+                drawWaypoint(g2, waypoint);
+            }
+            drawMarker(g2, frames);
+            final var marker = findMarker(frames);
 
             for (final var plugin : plugins) {
                 plugin.renderFrame(frames, marker, bi);
@@ -569,10 +816,15 @@ public final class Renderer {
 
             final var fps = Math.round(cfg.getFps());
             final var stillFrames = keepFrame / 1_000 * fps;
+            if (stillFrames <= 0) {
+                frameBufferPool.release(bi);
+                return;
+            }
+            final var release = frameBufferPool.releaseAfter(bi, (int) Math.min(stillFrames, Integer.MAX_VALUE));
             for (long stillFrame = 0; stillFrame < stillFrames; stillFrame++) {
                 final var pct = (int) (100.0 * stillFrame / stillFrames);
                 rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.keepframe"), stillFrame, stillFrames));
-                frameWriter.addFrame(bi);
+                frameWriter.addFrame(bi, release);
                 if (rc.isCancelled1()) {
                     return;
                 }
@@ -580,42 +832,65 @@ public final class Renderer {
         }
     }
 
-    private void drawWaypoints(@NonNull final BufferedImage bi,
-                               final int frame,
-                               @NonNull final TreeMap<Long, Point2D> wpMap) {
-        final var waypointSize = cfg.getWaypointSize();
-        if (waypointSize == null || waypointSize == 0.0 || wpMap.isEmpty()) {
-            return;
+    /**
+     * Draws the waypoints reached before the time of the given frame which were not drawn yet. Must be called in frame order.
+     */
+    private void drawWaypoints(@NonNull final TiledCanvas canvas,
+                               final int frame) throws UserException {
+        final var fromIndex = drawnWaypoints;
+        final var toIndex = getReachedWaypoints(frame);
+        drawnWaypoints = Math.max(fromIndex, toIndex);
+        for (var i = fromIndex; i < toIndex; i++) {
+            final var waypoint = i;
+            canvas.draw(getWaypointBounds(waypoint), g2 -> drawWaypoint(g2, waypoint));
         }
+    }
 
-        final var g2 = getGraphics(bi);
-
-        final var t2 = getTime(frame);
+    /**
+     * @return the number of waypoints to be drawn in the given frame
+     */
+    private int getReachedWaypoints(final int frame) {
+        final var waypointSize = cfg.getWaypointSize();
+        if (waypointSize == null || waypointSize == 0.0 || waypoints.isEmpty()) {
+            return 0;
+        }
+        return framePlan.getWaypointCount(frame);
+    }
 
+    private void drawWaypoint(@NonNull final Graphics2D g2,
+                              final int waypoint) {
+        final var x = waypoints.getX(waypoint);
+        final var y = waypoints.getY(waypoint);
+        g2.setColor(Color.white);
+        final var marker = createMarker(cfg.getWaypointSize(), x, y);
+        g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.fill(marker);
+        g2.setColor(Color.black);
+        g2.draw(marker);
 
-        if (t2 >= wpMap.firstKey()) {
-            for (final var p : wpMap.subMap(wpMap.firstKey(), t2).values()) {
-                g2.setColor(Color.white);
-                final var marker = createMarker(waypointSize, p);
-                g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                g2.fill(marker);
-                g2.setColor(Color.black);
-                g2.draw(marker);
+        printText(g2, waypoints.getLabel(waypoint), (float) x + 8f, (float) y + 4f, cfg.getWaypointFont());
+    }
 
-                printText(g2, ((NamedPoint) p).getName(), (float) p.getX() + 8f, (float) p.getY() + 4f, cfg.getWaypointFont());
-            }
-        }
+    private Rectangle2D getWaypointBounds(final int waypoint) {
+        final var x = waypoints.getX(waypoint);
+        final var y = waypoints.getY(waypoint);
+        final var bounds = createMarker(cfg.getWaypointSize() + 2, x, y).getBounds2D();
+        final var label = waypoints.getLabel(waypoint);
+        final var labelBounds = label == null || label.isEmpty() ? null
+                : labelSpriteCache.getBounds(label, (float) x + 8f, (float) y + 4f, cfg.getWaypointFont(), Color.white, Color.black);
+        return labelBounds == null ? bounds : bounds.createUnion(labelBounds);
     }
 
     private Ellipse2D.Double createMarker(@NonNull final Double size,
-                                          @NonNull final Point2D point) {
-        return new Ellipse2D.Double(point.getX() - size / 2.0, point.getY() - size / 2.0, size, size);
+                                          final double x,
+                                          final double y) {
+        return new Ellipse2D.Double(x - size / 2.0, y - size / 2.0, size, size);
     }
 
-    private void toTimePointMap(@NonNull final TreeMap<Long, Point2D> timePointMap,
-                                final int trackIndex,
-                                @NonNull final List<? extends MyPoint> gpxPoints,
-                                final long defaultTimeIfMissing) throws UserException {
+    private void addPoints(@NonNull final PointSeries.Builder builder,
+                           final int trackIndex,
+                           @NonNull final List<? extends MyPoint> gpxPoints,
+                           final long defaultTimeIfMissing) throws UserException {
         long forcedTime = 0;
 
         final var trackConfiguration = cfg.getTrackConfigurationList().get(trackIndex);
@@ -673,69 +948,104 @@ public final class Renderer {
                 time += trackConfiguration.getTimeOffset();
             }
 
-            final Point2D point;
             if (gpxPoint instanceof WayPoint wayPoint) {
-                final var namedPoint = new NamedPoint();
-                namedPoint.setLocation(x, y);
-                namedPoint.setName(wayPoint.getName());
-                point = namedPoint;
+                builder.add(time, x, y, wayPoint.getLatitude(), wayPoint.getLongitude(), null, wayPoint.getName());
             } else if (gpxPoint instanceof TrackPoint trackPoint) {
-                point = new GpxPoint(x, y, trackPoint, time, trackPoint.getSpeed());
-            } else {
-                point = null;
+                builder.add(time, x, y, trackPoint.getLatitude(), trackPoint.getLongitude(), trackPoint.getSpeed(), trackPoint.getComment());
             }
+        }
+    }
+
+    /**
+     * @return the position of the marker of the last track which has already started, or {@code null} if no marker is drawn
+     */
+    @Nullable
+    private Point2D findMarker(final int frame) {
+        if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
+            return null;
+        }
+        return findPosition(frame);
+    }
 
-            if (point != null) {
-                // hack to prevent overwriting existing (way)point with same time
-                var freeTime = time;
-                while (timePointMap.containsKey(freeTime)) {
-                    freeTime++;
+    /**
+     * @return the position on the last track which has a point in the frame, also if no marker is drawn, or {@code null} if no
+     * track has a point in the frame
+     */
+    @Nullable
+    private Point2D findPosition(final int frame) {
+        Point2D point = null;
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var trackSegments = trackSegmentsList.get(track);
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                final var pointIndex = framePlan.getPointIndex(track, segment, frame);
+                if (pointIndex != -1) {
+                    point = trackSegments.get(segment).toGpxPoint(pointIndex);
+                    break;
                 }
-                timePointMap.put(freeTime, point);
             }
         }
+        return point;
     }
 
-    private Point2D drawMarker(@NonNull final BufferedImage bi,
-                               final int frame) throws UserException {
+    //
+    // The icon of every track is read once before the first frame, so that
+    // the icon files are not checked again for every frame. A track without
+    // an icon has no image and is drawn with a simple circle.
+    //
+    private void loadTrackIcons() throws UserException {
+        trackIconImages.clear();
         if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
-            return null;
+            return;
         }
 
-        Point2D point = null;
+        for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
+            final var trackIcon = trackConfiguration.getTrackIcon();
+            final var trackIconFile = trackConfiguration.getInputIcon();
+            final var mirrored = trackConfiguration.isTrackIconMirrored();
+            if (trackIconFile != null && trackIconFile.exists() && trackIconFile.canRead()) {
+                try {
+                    trackIconImages.add(TrackIconCache.getIcon(trackIconFile, mirrored));
+                } catch (final IOException e) {
+                    throw new UserException(resourceBundle.getString("renderer.error.iconfile").formatted(trackIconFile), e);
+                }
+            } else if (trackIcon != null && !trackIcon.getKey().isEmpty()) {
+                try {
+                    trackIconImages.add(TrackIconCache.getIcon(trackIcon, mirrored));
+                } catch (final IOException e) {
+                    throw new UserException(resourceBundle.getString("renderer.error.icon"), e);
+                }
+            } else {
+                trackIconImages.add(null);
+            }
+        }
+    }
+
+    private void drawMarker(@NonNull final Graphics2D g2,
+                            final int frame) throws UserException {
+        if (cfg.getMarkerSize() == null || cfg.getMarkerSize() == 0.0) {
+            return;
+        }
 
-        final var g2 = getGraphics(bi);
         final var t2 = getTime(frame);
         final var trackConfigurationList = cfg.getTrackConfigurationList();
 
-        var i = 0;
         outer:
-        for (final var timePointMapList : timePointMapListList) {
-            final var trackConfiguration = trackConfigurationList.get(i++);
-            for (final var timePointMap : timePointMapList) {
-                final var ceilingEntry = timePointMap.ceilingEntry(t2);
-                final var floorEntry = timePointMap.floorEntry(t2);
-                if (floorEntry == null) {
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var trackConfiguration = trackConfigurationList.get(track);
+            final var trackSegments = trackSegmentsList.get(track);
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                final var trackSegment = trackSegments.get(segment);
+                final var pointIndex = framePlan.getPointIndex(track, segment, frame);
+                if (pointIndex == -1) {
                     continue;
                 }
 
-                point = floorEntry.getValue();
-                g2.setColor(ceilingEntry == null ? Color.white : trackConfiguration.getColor());
-
-                final var trackIcon = trackConfiguration.getTrackIcon();
-                final var trackIconFile = trackConfiguration.getInputIcon();
-                if (trackIconFile != null && trackIconFile.exists() && trackIconFile.canRead()) {
-                    try {
-                        drawIconFileOnGraphics2D(point, g2, trackIconFile, trackConfiguration.isTrackIconMirrored());
-                    } catch (final IOException e) {
-                        throw new UserException(resourceBundle.getString("renderer.error.iconfile").formatted(trackIconFile), e);
-                    }
-                } else if (trackIcon != null && !trackIcon.getKey().isEmpty()) {
-                    try {
-                        drawIconOnGraphics2D(point, g2, trackIcon, trackConfiguration.isTrackIconMirrored());
-                    } catch (final IOException e) {
-                        throw new UserException(resourceBundle.getString("renderer.error.icon"), e);
-                    }
+                final var point = trackSegment.toGpxPoint(pointIndex);
+                g2.setColor(t2 > trackSegment.getLastTime() ? Color.white : trackConfiguration.getColor());
+
+                final var trackIconImage = trackIconImages.get(track);
+                if (trackIconImage != null) {
+                    drawImageOnGraphics2D(point, g2, trackIconImage);
                 } else {
                     drawSimpleCircleOnGraphics2D(point, g2);
                 }
@@ -748,7 +1058,6 @@ public final class Renderer {
                 continue outer; // NOPMD -- Continue the outer loop, not the inner one
             }
         }
-        return point;
     }
 
     private void drawSimpleCircleOnGraphics2D(@NonNull final Point2D point,
@@ -756,129 +1065,64 @@ public final class Renderer {
 
         final double markerSize = cfg.getMarkerSize();
 
-        final var marker = createMarker(markerSize, point);
+        final var marker = createMarker(markerSize, point.getX(), point.getY());
         g2.setStroke(new BasicStroke(1f));
         g2.fill(marker);
         g2.setColor(Color.black);
         g2.draw(marker);
     }
 
-    private void drawIconOnGraphics2D(@NonNull final Point2D point,
-                                      @NonNull final Graphics2D g2,
-                                      @NonNull final TrackIcon trackIcon,
-                                      final boolean mirrorTrackIcon)
-            throws IOException {
-        final var trackIconImage = ImageIO.read(requireNonNull(getClass().getResource(trackIcon.getFilename())));
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
-    }
-
-    private void drawIconFileOnGraphics2D(@NonNull final Point2D point,
-                                          @NonNull final Graphics2D g2,
-                                          @NonNull final File trackIconFile,
-                                          final boolean mirrorTrackIcon)
-            throws IOException {
-        final var trackIconImage = ImageIO.read(trackIconFile);
-        drawImageOnGraphics2D(point, g2, trackIconImage, mirrorTrackIcon);
-    }
-
     private void drawImageOnGraphics2D(@NonNull final Point2D point,
                                        @NonNull final Graphics2D g2,
-                                       @NonNull final BufferedImage trackIconImage,
-                                       final boolean mirrorTrackIcon)
-            throws IOException {
-        var image = trackIconImage;
+                                       @NonNull final BufferedImage trackIconImage) {
         final var at = new AffineTransform();
         at.translate((int) point.getX() + 8f, (int) point.getY() + 4f);
-        try {
-            at.translate(-trackIconImage.getWidth() / 2d, -trackIconImage.getHeight() / 2d);
-            if (mirrorTrackIcon) {
-                final var tx = AffineTransform.getScaleInstance(-1, 1);
-                tx.translate(-trackIconImage.getWidth(null), 0);
-                final var op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-                image = op.filter(trackIconImage, null);
-            }
-        } catch (final Exception e) {
-            throw new IOException(e.getMessage());
-        }
-        g2.drawImage(image, at, null);
+        at.translate(-trackIconImage.getWidth() / 2d, -trackIconImage.getHeight() / 2d);
+        g2.drawImage(trackIconImage, at, null);
     }
 
-    private void paint(@NonNull final BufferedImage bi,
-                       final int frame,
-                       final long backTime,
-                       @Nullable final Color overrideColor,
-                       final boolean isPreDrawTrack) {
-        final var g2 = getGraphics(bi);
-
-        final var time = getTime(frame);
-
+    /**
+     * Draws the part of each track which was added since the previous frame, the track drawn before stays on the map.
+     */
+    private void drawNewTrackParts(@NonNull final TiledCanvas canvas,
+                                   final int frame) throws UserException {
         final var trackConfigurationList = cfg.getTrackConfigurationList();
 
-        var i = 0;
-        for (final var timePointMapList : timePointMapListList) {
-            final var trackConfiguration = trackConfigurationList.get(i++);
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var trackConfiguration = trackConfigurationList.get(track);
+            final var trackSegments = trackSegmentsList.get(track);
+            final var stroke = new BasicStroke(trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
 
-            for (final var timePointMap : timePointMapList) {
-                final var lineWidth = isPreDrawTrack ? trackConfiguration.getPreDrawLineWidth() : trackConfiguration.getLineWidth();
-                g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-
-                final var toTime = timePointMap.floorKey(time);
-
-                if (toTime == null) {
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                final var toIndex = framePlan.getPointIndex(track, segment, frame);
+                if (toIndex == -1) {
                     continue;
                 }
 
-                Point2D prevPoint = null;
-
-                if (backTime == 0) {
-                    final var prevTime = getTime(frame - 1);
-                    var fromTime = timePointMap.floorKey(prevTime);
-                    if (fromTime == null) {
-                        // try ceiling because we may be at beginning
-                        fromTime = timePointMap.ceilingKey(prevTime);
-                    }
-                    if (fromTime == null) {
-                        continue;
-                    }
-
-                    g2.setPaint(trackConfiguration.getColor());
-                    for (final var entry : timePointMap.subMap(fromTime, true, toTime, true).entrySet()) {
-                        if (prevPoint != null) {
-                            g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
-                        }
-                        prevPoint = entry.getValue();
-                    }
-                } else {
-                    if (!cfg.isTailColorFadeout() && toTime == maxTime) {
-                        continue;
-                    }
-                    for (final var entry : timePointMap.subMap(toTime - backTime, true, toTime, true).entrySet()) {
-                        if (prevPoint != null) {
-                            var drawSegment = false;
-                            if (isPreDrawTrack) {
-                                g2.setColor(trackConfiguration.getPreDrawTrackColor());
-                                drawSegment = true;
-                            } else {
-                                final var ratio = (backTime - time + entry.getKey()) * 1f / backTime;
-                                if (overrideColor != null && ratio > 0) {
-                                    g2.setPaint(blendTailColor(trackConfiguration.getColor(), overrideColor, ratio));
-                                    drawSegment = true;
-                                }
-                            }
-
-                            if (drawSegment) {
-                                g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
-                            }
-                        }
-                        prevPoint = entry.getValue();
-                    }
-                }
+                final var fromIndex = framePlan.getNewPartStartIndex(track, segment, frame);
+                drawPath(canvas, stroke, trackSegments.get(segment), fromIndex, toIndex, trackConfiguration.getColor());
             }
         }
     }
 
+    private static void drawPath(@NonNull final TiledCanvas canvas,
+                                 @NonNull final Stroke stroke,
+                                 @NonNull final PointSeries trackSegment,
+                                 final int fromIndex,
+                                 final int toIndex,
+                                 @NonNull final Color color) throws UserException {
+        // on a tiled map long lines are drawn in parts, so that only the tiles along the line are touched
+        final var maxPoints = canvas.isTiled() ? MAX_PATH_POINTS : Integer.MAX_VALUE;
+        var from = fromIndex;
+        while (from < toIndex) {
+            final var to = toIndex - from > maxPoints ? from + maxPoints : toIndex;
+            canvas.draw(trackSegment.toPath(from, to), stroke, color);
+            from = to;
+        }
+    }
+
     private long getTime(final int frame) {
-        return RenderUtil.getTime(frame, minTime, cfg.getFps(), speedup);
+        return framePlan.getTime(frame);
     }
 
     private void printText(@NonNull final Graphics2D g2,
@@ -886,64 +1130,137 @@ public final class Renderer {
                            final float x,
                            final float y,
                            @NonNull final Font font) {
-        final var frc = g2.getFontRenderContext();
-        g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        final var height = g2.getFontMetrics(font).getHeight();
-        final var lines = text == null ? new String[0] : text.split("\n");
-
-        var yy = y - (lines.length - 1) * height;
-        for (final var line : lines) {
-            if (!line.isEmpty()) {
-                final var tl = new TextLayout(line, font, frc);
-                final var sha = tl.getOutline(AffineTransform.getTranslateInstance(x, yy));
-                g2.setColor(Color.white);
-                g2.fill(sha);
-                g2.draw(sha);
-
-                g2.setFont(font);
-                g2.setColor(Color.black);
-                g2.drawString(line, x, yy);
-            }
-            yy += height;
+        if (text != null && !text.isEmpty()) {
+            labelSpriteCache.drawLabel(g2, text, x, y, font, Color.white, Color.black);
         }
     }
 
-    private static final class NamedPoint extends Point2D.Double {
-        @Serial
-        private static final long serialVersionUID = 4011941819652468006L;
+    /**
+     * A frame which was handed over for rendering. The result is {@code null} if the frame is idle and will be skipped.
+     */
+    private record PendingFrame(int frame, @Nullable Point2D marker, @Nullable Future<BufferedImage> result) { }
+
+    /**
+     * Hands over the rendered frames to the plugins and the frame writer, strictly in frame order. Everything which depends on the
+     * previous frames (flashback, plugins) happens here, on the thread which is running the renderer.
+     */
+    private final class FrameSequence {
+
+        private final Deque<PendingFrame> pendingFrames = new ArrayDeque<>();
+
+        private final List<RendererPlugin> plugins;
+        private final FrameWriter frameWriter;
+        private final int frames;
+        private final RenderingContext rc;
+        private final RemainingTimeCalculator remainingTimeCalculator;
+
+        private BufferedImage lastRenderedFrame;
+        private Runnable releaseLastRenderedFrame;
+        private float skip = -1f;
+
+        FrameSequence(@NonNull final List<RendererPlugin> plugins,
+                      @NonNull final FrameWriter frameWriter,
+                      final int frames,
+                      @NonNull final RenderingContext rc,
+                      @NonNull final RemainingTimeCalculator remainingTimeCalculator) {
+            this.plugins = plugins;
+            this.frameWriter = frameWriter;
+            this.frames = frames;
+            this.rc = rc;
+            this.remainingTimeCalculator = remainingTimeCalculator;
+        }
 
-        private String name;
+        void add(@NonNull final PendingFrame pendingFrame) {
+            pendingFrames.addLast(pendingFrame);
+        }
 
-        public String getName() {
-            return name;
+        int size() {
+            return pendingFrames.size();
         }
 
-        public void setName(final String name) {
-            this.name = name;
+        void writeAll() throws UserException {
+            while (!pendingFrames.isEmpty()) {
+                writeNext();
+            }
         }
 
-        @Override
-        @SuppressFBWarnings("NP_METHOD_PARAMETER_TIGHTENS_ANNOTATION")
-        public boolean equals(@Nullable final Object o) {
-            if (this == o) {
-                return true;
+        void writeNext() throws UserException {
+            final var pendingFrame = pendingFrames.removeFirst();
+            final var frame = pendingFrame.frame();
+            final var result = pendingFrame.result();
+
+            if (result == null) {
+                rc.setProgress1((int) (100.0 * frame / frames),
+                        String.format(resourceBundle.getString("renderer.progress.unusedframes"), frame, frames));
+                skip = 1f;
+                return;
+            }
+
+            final var viewportImage = await(result);
+
+            final var pct = (int) (100.0 * frame / frames);
+            rc.setProgress1(pct, String.format(resourceBundle.getString("renderer.progress.frame"),
+                    frame, frames, remainingTimeCalculator.getSecondsLeft(frame)));
+
+            final var marker = pendingFrame.marker();
+
+            skip = renderFlashback(skip, viewportImage);
+
+            for (final var plugin : plugins) {
+                plugin.renderFrame(frame, marker, viewportImage);
+            }
+
+            // the image goes back to the pool when it was written and is not the last frame anymore
+            final var release = frameBufferPool.releaseAfter(viewportImage, 2);
+            frameWriter.addFrame(viewportImage, release);
+
+            if (frame == 1) { // NOPMD - AvoidLiteralsInIfCondition - this number never changes
+                keepFrame(plugins, rc, frameWriter, viewportImage, frame, cfg.getKeepFirstFrame());
             }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
+
+            if (releaseLastRenderedFrame != null) {
+                releaseLastRenderedFrame.run();
             }
-            if (!super.equals(o)) {
-                return false;
+            lastRenderedFrame = viewportImage;
+            releaseLastRenderedFrame = release;
+        }
+
+        void keepLastFrame() throws UserException {
+            keepFrame(plugins, rc, frameWriter, lastRenderedFrame, frames, cfg.getKeepLastFrame());
+            if (releaseLastRenderedFrame != null) {
+                releaseLastRenderedFrame.run();
             }
+        }
 
-            final var that = (NamedPoint) o;
-            return Objects.equals(name, that.name);
+        private BufferedImage await(@NonNull final Future<BufferedImage> result) throws UserException {
+            try {
+                return result.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException(e.getMessage(), e);
+            } catch (final ExecutionException e) {
+                final var cause = e.getCause();
+                if (cause instanceof UserException userException) {
+                    throw userException;
+                } else if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                } else if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new UserException(cause.getMessage(), cause);
+            }
         }
+    }
+
+    private static final class RenderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
 
         @Override
-        public int hashCode() {
-            int result = super.hashCode();
-            result = 31 * result + (name != null ? name.hashCode() : 0);
-            return result;
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final var thread = new Thread(runnable, "renderer-" + threadCount.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
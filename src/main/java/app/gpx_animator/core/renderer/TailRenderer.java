@@ -0,0 +1,175 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.data.gpx.PointSeries;
+import app.gpx_animator.core.renderer.cache.CacheStatistics;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws the tails of the tracks with a color gradient from the tail color to the track color. The time is split into slots of a
+ * fixed length, a tail covers {@link #COLOR_STEPS} slots. The points of a slot never change, so the outline of a slot is stroked
+ * only once and then filled with the color of its age, which is taken from a precomputed gradient. The work per frame depends on
+ * the number of slots and not on the number of points in the tail. This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TailRenderer {
+
+    static final int COLOR_STEPS = 64;
+    private static final int CACHED_FRAMES = 4;
+
+    private final List<List<PointSeries>> trackSegmentsList;
+    private final FramePlan framePlan;
+    private final long tailDuration;
+    private final long slotDuration;
+    private final boolean fadeout;
+    private final long maxTime;
+    private final Stroke[] strokes;
+    private final Color[][] gradients;
+    private final int maxCachedSlots;
+    private final Map<SlotKey, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final CacheStatistics statistics = new CacheStatistics("Tail slot cache"); //NON-NLS
+
+    /**
+     * @param fadeout   {@code false} if the tail disappears when the end of the track is reached
+     * @param maxTime   the time of the last point of all tracks
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    TailRenderer(@NonNull final List<List<PointSeries>> trackSegmentsList,
+                 @NonNull final List<TrackConfiguration> trackConfigurationList,
+                 @NonNull final FramePlan framePlan,
+                 @Nullable final Color tailColor,
+                 final long tailDuration,
+                 final boolean fadeout,
+                 final long maxTime) {
+        this.trackSegmentsList = trackSegmentsList;
+        this.framePlan = framePlan;
+        this.tailDuration = tailDuration;
+        this.slotDuration = Math.max(1, (tailDuration + COLOR_STEPS - 1) / COLOR_STEPS);
+        this.fadeout = fadeout;
+        this.maxTime = maxTime;
+
+        strokes = new Stroke[trackSegmentsList.size()];
+        gradients = new Color[trackSegmentsList.size()][];
+        var segmentCount = 0;
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var trackConfiguration = trackConfigurationList.get(track);
+            strokes[track] = new BasicStroke(trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            gradients[track] = tailColor == null ? null : createGradient(trackConfiguration.getColor(), tailColor);
+            segmentCount += trackSegmentsList.get(track).size();
+        }
+        maxCachedSlots = Math.max(1, segmentCount) * (COLOR_STEPS + 2) * CACHED_FRAMES;
+    }
+
+    /**
+     * @return the colors from the track color (index 0) to the tail color (index {@link #COLOR_STEPS})
+     */
+    private static Color[] createGradient(@NonNull final Color trackColor, @NonNull final Color tailColor) {
+        final var gradient = new Color[COLOR_STEPS + 1];
+        final var alpha = Math.max(trackColor.getAlpha(), tailColor.getAlpha());
+        for (var step = 0; step <= COLOR_STEPS; step++) {
+            final var ratio = (double) step / COLOR_STEPS;
+            gradient[step] = new Color(
+                    (int) ((1 - ratio) * trackColor.getRed() + ratio * tailColor.getRed()),
+                    (int) ((1 - ratio) * trackColor.getGreen() + ratio * tailColor.getGreen()),
+                    (int) ((1 - ratio) * trackColor.getBlue() + ratio * tailColor.getBlue()),
+                    alpha);
+        }
+        return gradient;
+    }
+
+    CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    void draw(@NonNull final Graphics2D g2, final int frame) {
+        final var time = framePlan.getTime(frame);
+        for (var track = 0; track < trackSegmentsList.size(); track++) {
+            final var gradient = gradients[track];
+            if (gradient == null) {
+                continue;
+            }
+            final var trackSegments = trackSegmentsList.get(track);
+            for (var segment = 0; segment < trackSegments.size(); segment++) {
+                final var points = trackSegments.get(segment);
+                final var toIndex = framePlan.getPointIndex(track, segment, frame);
+                if (toIndex == -1 || !fadeout && points.getTime(toIndex) == maxTime) {
+                    continue;
+                }
+
+                // a part of the tail is visible if the time of its end point is within the tail duration
+                final var firstVisibleIndex = points.ceilingIndex(time - tailDuration + 1);
+                if (firstVisibleIndex == -1) {
+                    continue;
+                }
+                var index = Math.max(firstVisibleIndex, framePlan.getTailStartIndex(track, segment, frame) + 1);
+                while (index <= toIndex) {
+                    final var slot = Math.floorDiv(points.getTime(index), slotDuration);
+                    final var lastIndex = Math.min(points.floorIndex((slot + 1) * slotDuration - 1), toIndex);
+
+                    final var ratio = (double) (tailDuration - time + points.getTime(lastIndex)) / tailDuration;
+                    g2.setPaint(gradient[(int) Math.max(0, Math.min(COLOR_STEPS, Math.round(ratio * COLOR_STEPS)))]);
+                    g2.fill(getOutline(track, segment, slot, index, lastIndex));
+                    index = lastIndex + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the stroked line from the point before {@code fromIndex} to {@code toIndex}
+     */
+    private Shape getOutline(final int track, final int segment, final long slot, final int fromIndex, final int toIndex) {
+        final var key = new SlotKey(track, segment, slot);
+        synchronized (slots) {
+            final var cached = slots.get(key);
+            if (cached != null && cached.fromIndex() == fromIndex && cached.toIndex() == toIndex) {
+                statistics.hit();
+                return cached.outline();
+            }
+        }
+
+        statistics.miss();
+        final var points = trackSegmentsList.get(track).get(segment);
+        final var outline = strokes[track].createStrokedShape(points.toPath(fromIndex - 1, toIndex));
+
+        synchronized (slots) {
+            slots.put(key, new Slot(fromIndex, toIndex, outline));
+            final var iterator = slots.values().iterator();
+            while (slots.size() > maxCachedSlots) {
+                iterator.next();
+                iterator.remove();
+                statistics.eviction();
+            }
+        }
+        return outline;
+    }
+
+    private record SlotKey(int track, int segment, long slot) { }
+
+    private record Slot(int fromIndex, int toIndex, @NonNull Shape outline) { }
+}
@@ -16,6 +16,7 @@
 package app.gpx_animator.core.renderer;
 
 import app.gpx_animator.core.data.Position;
+import app.gpx_animator.core.renderer.cache.CacheStatistics;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 import java.awt.BasicStroke;
@@ -28,25 +29,39 @@ import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static app.gpx_animator.core.renderer.TextRenderer.TextAlignment.forPosition;
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
 
+/**
+ * Renders texts with a halo onto the video frames. The rendered texts are cached, so a text which does not change from frame to frame
+ * (like the attribution) is only drawn once. The least recently used texts are removed when the cache is full.
+ */
 public abstract class TextRenderer extends ImageRenderer {
 
     private static final int IMAGE_TYPE = BufferedImage.TYPE_4BYTE_ABGR;
     private static final int ANTI_ALIAS_COMPENSATION = 10;
     private static final float STRIKE_WIDTH = 3f;
     private static final Stroke STROKE = new BasicStroke(STRIKE_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final long MAX_CACHED_BYTES = 8L * 1024 * 1024;
 
     private final Font font;
     private final FontMetrics fontMetrics;
+    private final Map<TextKey, BufferedImage> textImages = new LinkedHashMap<>(16, 0.75f, true);
+    private final CacheStatistics textCacheStatistics = new CacheStatistics("Text cache of " + getClass().getSimpleName()); //NON-NLS
+    private long cachedBytes;
 
     protected TextRenderer(@NonNull final Font font) {
         this.font = font;
         this.fontMetrics = getFontMetrics();
     }
 
+    public CacheStatistics getTextCacheStatistics() {
+        return textCacheStatistics;
+    }
+
     private FontMetrics getFontMetrics() {
         final var image = new BufferedImage(100, 100, IMAGE_TYPE);
         final var graphics = (Graphics2D) image.getGraphics();
@@ -78,10 +93,38 @@ public abstract class TextRenderer extends ImageRenderer {
      * @param targetImage the target image representing the video frame
      */
     public void renderText(@NonNull final String text, @NonNull final Position position, final int margin, @NonNull final BufferedImage targetImage) {
-        final var trimmedText = text.trim();
+        final var key = new TextKey(text.trim(), forPosition(position));
+        var image = textImages.get(key);
+        if (image == null) {
+            textCacheStatistics.miss();
+            image = createTextImage(key.text(), key.alignment());
+            cacheTextImage(key, image);
+        } else {
+            textCacheStatistics.hit();
+        }
+
+        renderImage(image, position, margin, targetImage);
+    }
+
+    private void cacheTextImage(@NonNull final TextKey key, @NonNull final BufferedImage image) {
+        textImages.put(key, image);
+        cachedBytes += getBytes(image);
+
+        final var iterator = textImages.values().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES && textImages.size() > 1) {
+            cachedBytes -= getBytes(iterator.next());
+            iterator.remove();
+            textCacheStatistics.eviction();
+        }
+    }
+
+    private static long getBytes(@NonNull final BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private BufferedImage createTextImage(@NonNull final String trimmedText, @NonNull final TextAlignment alignment) {
         final var width = calculateTextWidth(trimmedText) + ANTI_ALIAS_COMPENSATION;
         final var height = calculateTextHeight(trimmedText);
-        final var alignment = forPosition(position);
 
         final var image = new BufferedImage(width, height, IMAGE_TYPE);
         final var graphics = getGraphics(image);
@@ -111,8 +154,9 @@ public abstract class TextRenderer extends ImageRenderer {
             graphics.setColor(Color.black);
             graphics.drawString(trimmedLine, xPosition, yPosition);
         }
+        graphics.dispose();
 
-        renderImage(image, position, margin, targetImage);
+        return image;
     }
 
     private int calculateHorizontalPosition(@NonNull final TextAlignment alignment, @NonNull final String line, final int width, final int lineNum) {
@@ -127,6 +171,8 @@ public abstract class TextRenderer extends ImageRenderer {
         return (-fontMetrics.getHeight() + fontMetrics.getAscent()) + (lineNum * lineHeight);
     }
 
+    private record TextKey(@NonNull String text, @NonNull TextAlignment alignment) { }
+
     public enum TextAlignment {
 
         LEFT, CENTER, RIGHT;
@@ -0,0 +1,213 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.configuration.Configuration;
+import app.gpx_animator.core.data.entity.TrackPoint;
+import app.gpx_animator.core.data.entity.TrackSegment;
+import app.gpx_animator.core.data.gpx.GpxContentHandler;
+import app.gpx_animator.core.data.gpx.GpxParser;
+import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TileCacheSettings;
+import app.gpx_animator.core.renderer.cache.TileFetcher;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Downloads the map tiles of an area for a range of zoom levels into the tile cache, so that the area can be rendered later without
+ * access to the map server. The area is given by the latitude and longitude bounds of the configuration or, where they are not
+ * given, by the GPX files, extended by the margin of the configuration. Tiles which are cached already are not downloaded again, so
+ * an interrupted seeding is resumed by starting it again.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TileSeeder {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileSeeder.class);
+
+    private static final int MAX_PENDING_TILES = 64;
+    private static final int MAX_ZOOM = 30; // the tile numbers have to fit into an int
+    private static final double MAX_LATITUDE = 85.0511;
+
+    private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
+
+    private final TileCache tileCache;
+    private final TileCacheSettings settings;
+
+    private long seededTiles;
+    private long cachedTiles;
+    private long failedTiles;
+
+    public TileSeeder(@NonNull final TileCache tileCache, @NonNull final TileCacheSettings settings) {
+        this.tileCache = tileCache;
+        this.settings = settings;
+    }
+
+    /**
+     * Seeds the map tiles of the configured area for all zoom levels from the minimum to the maximum zoom.
+     *
+     * @throws UserException if the area or map is not configured, or if some tiles could not be downloaded
+     */
+    public void seed(@NonNull final Configuration cfg, final int minZoom, final int maxZoom, @NonNull final RenderingContext context)
+            throws UserException {
+        if (minZoom < 0 || minZoom > maxZoom || maxZoom > MAX_ZOOM) {
+            throw new UserException(resourceBundle.getString("tilecache.seed.error.zoom").formatted(minZoom, maxZoom));
+        }
+        if (cfg.getTmsUrlTemplate() == null || cfg.getTmsUrlTemplate().isBlank()) {
+            throw new UserException(resourceBundle.getString("tilecache.seed.error.map"));
+        }
+
+        final var bounds = getBounds(cfg);
+        var total = 0L;
+        for (var zoom = minZoom; zoom <= maxZoom; zoom++) {
+            total += getTileRange(bounds, zoom, cfg.getMargin()).count();
+        }
+        LOGGER.info("Seeding {} map tiles for zoom {} to {}", total, minZoom, maxZoom);
+
+        // a limited number of tiles is requested at the same time, so that large areas don't fill the memory with requests
+        final Queue<CompletableFuture<Boolean>> pendingTiles = new ArrayDeque<>(MAX_PENDING_TILES);
+        var done = 0L;
+        try {
+            for (var zoom = minZoom; zoom <= maxZoom; zoom++) {
+                final var range = getTileRange(bounds, zoom, cfg.getMargin());
+                for (var y = range.minY(); y <= range.maxY(); y++) {
+                    for (var x = range.minX(); x <= range.maxX(); x++) {
+                        if (context.isCancelled1()) {
+                            return;
+                        }
+                        if (pendingTiles.size() == MAX_PENDING_TILES) {
+                            awaitTile(pendingTiles.remove());
+                            done++;
+                            context.setProgress1((int) (100.0 * done / total),
+                                    String.format(resourceBundle.getString("tilecache.seed.progress"), done, total));
+                        }
+                        final var url = TileFetcher.getTileUrl(cfg.getTmsUrlTemplate(), cfg.getTmsApiKey(), zoom, x, y);
+                        pendingTiles.add(tileCache.seedTile(url, cfg.getTmsUserAgent(), settings));
+                    }
+                }
+            }
+        } finally {
+            while (!pendingTiles.isEmpty()) {
+                awaitTile(pendingTiles.remove());
+                done++;
+            }
+        }
+        context.setProgress1(100, String.format(resourceBundle.getString("tilecache.seed.progress"), done, total));
+
+        LOGGER.info("Seeded {} map tiles, {} map tiles were cached already", seededTiles, cachedTiles);
+        if (failedTiles > 0) {
+            throw new UserException(resourceBundle.getString("tilecache.seed.error.failed").formatted(failedTiles, total));
+        }
+    }
+
+    private void awaitTile(@NonNull final CompletableFuture<Boolean> tile) {
+        try {
+            if (tile.join()) {
+                seededTiles++;
+            } else {
+                cachedTiles++;
+            }
+        } catch (final CompletionException e) {
+            // the other tiles are still seeded, the missing tiles are downloaded when the seeding is started again
+            LOGGER.warn("Can't seed map tile: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            failedTiles++;
+        }
+    }
+
+    /**
+     * @return the bounds of the configuration, where they are not configured the bounds of all track points of the GPX files
+     */
+    private Bounds getBounds(@NonNull final Configuration cfg) throws UserException {
+        var minLat = Double.POSITIVE_INFINITY;
+        var maxLat = Double.NEGATIVE_INFINITY;
+        var minLon = Double.POSITIVE_INFINITY;
+        var maxLon = Double.NEGATIVE_INFINITY;
+        if (cfg.getMinLat() == null || cfg.getMinLon() == null) {
+            for (final var trackConfiguration : cfg.getTrackConfigurationList()) {
+                final var gch = new GpxContentHandler();
+                GpxParser.parseGpx(trackConfiguration.getInputGpx(), gch);
+                final var track = gch.getTrack();
+                if (track == null) {
+                    continue;
+                }
+                for (final TrackSegment trackSegment : track.getTrackSegments()) {
+                    for (final TrackPoint trackPoint : trackSegment.getTrackPoints()) {
+                        minLat = Math.min(minLat, trackPoint.getLatitude());
+                        maxLat = Math.max(maxLat, trackPoint.getLatitude());
+                        minLon = Math.min(minLon, trackPoint.getLongitude());
+                        maxLon = Math.max(maxLon, trackPoint.getLongitude());
+                    }
+                }
+            }
+        }
+        if (cfg.getMinLat() != null) {
+            minLat = cfg.getMinLat();
+            maxLat = cfg.getMaxLat();
+        }
+        if (cfg.getMinLon() != null) {
+            minLon = cfg.getMinLon();
+            maxLon = cfg.getMaxLon();
+        }
+        if (minLat > maxLat || minLon > maxLon) {
+            throw new UserException(resourceBundle.getString("tilecache.seed.error.bounds"));
+        }
+        return new Bounds(minLat, maxLat, minLon, maxLon);
+    }
+
+    /**
+     * @return the tiles of the zoom level which cover the bounds, extended by the margin in pixels
+     */
+    static TileRange getTileRange(@NonNull final Bounds bounds, final int zoom, final int margin) {
+        final var tiles = 1 << zoom;
+        final var marginTiles = margin / 256.0;
+        return new TileRange(
+                clamp((int) Math.floor(lonToTileX(zoom, bounds.minLon()) - marginTiles), tiles),
+                clamp((int) Math.floor(lonToTileX(zoom, bounds.maxLon()) + marginTiles), tiles),
+                clamp((int) Math.floor(latToTileY(zoom, bounds.maxLat()) - marginTiles), tiles),
+                clamp((int) Math.floor(latToTileY(zoom, bounds.minLat()) + marginTiles), tiles));
+    }
+
+    private static int clamp(final int tile, final int tiles) {
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    private static double lonToTileX(final int zoom, final double lon) {
+        return (lon + 180.0) / 360.0 * (1 << zoom);
+    }
+
+    private static double latToTileY(final int zoom, final double lat) {
+        final var clampedLat = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat)));
+        return (1 - Math.log(Math.tan(clampedLat) + 1 / Math.cos(clampedLat)) / Math.PI) / 2 * (1 << zoom);
+    }
+
+    record Bounds(double minLat, double maxLat, double minLon, double maxLon) { }
+
+    record TileRange(int minX, int maxX, int minY, int maxY) {
+        long count() {
+            return (long) (maxX - minX + 1) * (maxY - minY + 1);
+        }
+    }
+}
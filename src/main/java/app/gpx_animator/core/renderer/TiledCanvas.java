@@ -0,0 +1,426 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.cache.CacheStatistics;
+import app.gpx_animator.core.util.Utils;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * The map with the background and the track drawn so far. A big map (moving map) is split into tiles, which are created when they
+ * are shown for the first time or prefetched shortly before. Drawings on tiles which were not created yet are remembered and drawn
+ * when the tile is created, so the background is only created for the tiles which are shown. Only a limited number of tiles is
+ * kept in memory, the least recently used tiles are written to a temporary file and read again when they are needed. The memory
+ * used depends on the size of the viewport and not on the size of the map. A small map is kept in a single image. The tiles are
+ * created on a background thread, all other methods of this class must be called from the same thread.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class TiledCanvas implements AutoCloseable {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TiledCanvas.class);
+
+    private static final int IMAGE_TYPE = BufferedImage.TYPE_3BYTE_BGR;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    /**
+     * Renders the background of a part of the map.
+     */
+    @FunctionalInterface
+    interface BackgroundRenderer {
+
+        /**
+         * @param image  the image to draw the background on, it has the size of the region
+         * @param region the part of the map which is shown by the image
+         */
+        void render(@NonNull BufferedImage image, @NonNull Rectangle region) throws UserException;
+    }
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int maxTilesInMemory;
+    private final BackgroundRenderer backgroundRenderer;
+
+    private final Map<Integer, BufferedImage> tilesInMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> modifiedTiles = new HashSet<>();
+    private final Map<Integer, Long> spilledTiles = new HashMap<>();
+    private final Map<Integer, Future<BufferedImage>> pendingTiles = new HashMap<>();
+    private final Map<Integer, List<Consumer<Graphics2D>>> deferredDrawings = new HashMap<>();
+    private final CacheStatistics statistics = new CacheStatistics("Map tiles in memory"); //NON-NLS
+
+    private ExecutorService tileExecutor;
+    private int createdTiles;
+    private Path spillFile;
+    private FileChannel spillChannel;
+
+    /**
+     * Creates a map which is split into tiles.
+     *
+     * @param maxTilesInMemory the maximum number of tiles kept in memory, must be enough for the largest region used at once
+     */
+    TiledCanvas(final int width, final int height, final int tileSize, final int maxTilesInMemory,
+                @NonNull final BackgroundRenderer backgroundRenderer) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.maxTilesInMemory = maxTilesInMemory;
+        this.backgroundRenderer = backgroundRenderer;
+    }
+
+    /**
+     * Creates a map which is kept in the given image, which already shows the background.
+     */
+    static TiledCanvas of(@NonNull final BufferedImage image) {
+        final var canvas = new TiledCanvas(image.getWidth(), image.getHeight(), Math.max(image.getWidth(), image.getHeight()), 1,
+                (tile, region) -> { });
+        canvas.tilesInMemory.put(0, image);
+        return canvas;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean isTiled() {
+        return columns > 1 || height > tileSize;
+    }
+
+    CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Draws a line on all tiles it touches.
+     */
+    void draw(@NonNull final Shape shape, @NonNull final Stroke stroke, @NonNull final Paint paint) throws UserException {
+        if (!isTiled()) {
+            final var g2 = getTileGraphics(0);
+            g2.setStroke(stroke);
+            g2.setPaint(paint);
+            g2.draw(shape);
+            g2.dispose();
+            return;
+        }
+
+        // the line is drawn on every tile it touches, so the pixels are the same as if it was drawn on a single image
+        final var outline = stroke.createStrokedShape(shape);
+        final var bounds = outline.getBounds2D();
+        bounds.setRect(bounds.getX() - 1, bounds.getY() - 1, bounds.getWidth() + 2, bounds.getHeight() + 2);
+        for (final var tile : getTiles(bounds)) {
+            if (outline.intersects(getTileBounds(tile, 1))) {
+                draw(tile, g2 -> {
+                    g2.setStroke(stroke);
+                    g2.setPaint(paint);
+                    g2.draw(shape);
+                });
+            }
+        }
+    }
+
+    /**
+     * Lets the painter draw on all tiles which intersect the given bounds. The graphics context uses the coordinates of the map. The
+     * painter may be called later on the thread creating the tiles, so it must only use data which is not changed anymore.
+     */
+    void draw(@NonNull final Rectangle2D bounds, @NonNull final Consumer<Graphics2D> painter) throws UserException {
+        for (final var tile : getTiles(bounds)) {
+            draw(tile, painter);
+        }
+    }
+
+    /**
+     * Copies a part of the map into an image of the size of the region.
+     */
+    BufferedImage copyRegion(@NonNull final Rectangle region, @NonNull final BufferedImage target) throws UserException {
+        if (!isTiled()) {
+            return Utils.copyRegion(getTile(0), region, target);
+        }
+        for (final var tile : getTiles(region)) {
+            final var part = getTileBounds(tile, 0).intersection(region);
+            final var tileImage = getTile(tile);
+            final var tileBounds = getTileBounds(tile, 0);
+            Utils.copyRegion(tileImage, new Rectangle(part.x - tileBounds.x, part.y - tileBounds.y, part.width, part.height),
+                    target.getSubimage(part.x - region.x, part.y - region.y, part.width, part.height));
+        }
+        return target;
+    }
+
+    /**
+     * Starts creating the tiles of the given region in the background, so that they are ready when they are shown.
+     *
+     * @return {@code false} if too many tiles are waiting to be shown already and the region was not prefetched
+     */
+    boolean prefetch(@NonNull final Rectangle region) {
+        for (final var tile : getTiles(region)) {
+            if (!isCreated(tile)) {
+                if (pendingTiles.size() >= maxTilesInMemory) {
+                    return false;
+                }
+                pendingTiles.put(tile, createTile(tile));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (tileExecutor != null) {
+            tileExecutor.shutdownNow();
+            tileExecutor = null;
+        }
+        pendingTiles.clear();
+        deferredDrawings.clear();
+        tilesInMemory.clear();
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (final IOException e) {
+                LOGGER.warn("Can't delete temporary map file {}", spillFile, e);
+            }
+            spillChannel = null;
+        }
+        if (isTiled()) {
+            LOGGER.info("{}, {} of {} tiles created, {} tiles written to disk",
+                    statistics, createdTiles, columns * ((height + tileSize - 1) / tileSize), spilledTiles.size());
+        }
+    }
+
+    /**
+     * @return the tiles which intersect the given bounds
+     */
+    private int[] getTiles(@NonNull final Rectangle2D bounds) {
+        final var firstColumn = Math.max(0, (int) Math.floor(bounds.getMinX() / tileSize));
+        final var lastColumn = Math.min(columns - 1, (int) Math.ceil(bounds.getMaxX() / tileSize) - 1);
+        final var firstRow = Math.max(0, (int) Math.floor(bounds.getMinY() / tileSize));
+        final var lastRow = Math.min((height - 1) / tileSize, (int) Math.ceil(bounds.getMaxY() / tileSize) - 1);
+        if (firstColumn > lastColumn || firstRow > lastRow) {
+            return new int[0];
+        }
+
+        final var tiles = new int[(lastColumn - firstColumn + 1) * (lastRow - firstRow + 1)];
+        var i = 0;
+        for (var row = firstRow; row <= lastRow; row++) {
+            for (var column = firstColumn; column <= lastColumn; column++) {
+                tiles[i++] = row * columns + column;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * @return the part of the map covered by the tile, extended by the given margin
+     */
+    private Rectangle getTileBounds(final int tile, final int margin) {
+        final var x = tile % columns * tileSize;
+        final var y = tile / columns * tileSize;
+        return new Rectangle(x - margin, y - margin,
+                Math.min(tileSize, width - x) + 2 * margin, Math.min(tileSize, height - y) + 2 * margin);
+    }
+
+    /**
+     * Draws on the tile, or remembers the drawing until the tile is created.
+     */
+    private void draw(final int tile, @NonNull final Consumer<Graphics2D> painter) throws UserException {
+        if (isCreated(tile)) {
+            final var g2 = getTileGraphics(tile);
+            painter.accept(g2);
+            g2.dispose();
+        } else {
+            deferredDrawings.computeIfAbsent(tile, key -> new ArrayList<>()).add(painter);
+        }
+    }
+
+    private boolean isCreated(final int tile) {
+        return tilesInMemory.containsKey(tile) || pendingTiles.containsKey(tile) || spilledTiles.containsKey(tile);
+    }
+
+    private Graphics2D getTileGraphics(final int tile) throws UserException {
+        final var g2 = getGraphics(getTile(tile));
+        final var bounds = getTileBounds(tile, 0);
+        g2.translate(-bounds.x, -bounds.y);
+        modifiedTiles.add(tile);
+        return g2;
+    }
+
+    private BufferedImage getTile(final int tile) throws UserException {
+        var image = tilesInMemory.get(tile);
+        if (image != null) {
+            statistics.hit();
+            return image;
+        }
+
+        statistics.miss();
+        final var spillOffset = spilledTiles.get(tile);
+        if (spillOffset == null) {
+            final var pendingTile = pendingTiles.remove(tile);
+            image = await(pendingTile != null ? pendingTile : createTile(tile));
+            modifiedTiles.add(tile);
+        } else {
+            final var bounds = getTileBounds(tile, 0);
+            image = new BufferedImage(bounds.width, bounds.height, IMAGE_TYPE);
+            readTile(image, spillOffset);
+        }
+
+        tilesInMemory.put(tile, image);
+        evictTiles();
+        return image;
+    }
+
+    /**
+     * Creates the background of the tile and draws the deferred drawings on it. All tiles are created on the same thread, so the
+     * background renderer does not need to be thread safe.
+     */
+    private Future<BufferedImage> createTile(final int tile) {
+        if (tileExecutor == null) {
+            tileExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                final var thread = new Thread(runnable, "map-tiles"); //NON-NLS
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        createdTiles++;
+        final var bounds = getTileBounds(tile, 0);
+        final var drawings = deferredDrawings.remove(tile);
+        return tileExecutor.submit(() -> {
+            final var image = new BufferedImage(bounds.width, bounds.height, IMAGE_TYPE);
+            backgroundRenderer.render(image, bounds);
+            if (drawings != null) {
+                final var g2 = getGraphics(image);
+                g2.translate(-bounds.x, -bounds.y);
+                for (final var drawing : drawings) {
+                    drawing.accept(g2);
+                }
+                g2.dispose();
+            }
+            return image;
+        });
+    }
+
+    private static BufferedImage await(@NonNull final Future<BufferedImage> tile) throws UserException {
+        try {
+            return tile.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof UserException userException) {
+                throw userException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new UserException(cause.getMessage(), cause);
+        }
+    }
+
+    private void evictTiles() throws UserException {
+        final var iterator = tilesInMemory.entrySet().iterator();
+        while (tilesInMemory.size() > maxTilesInMemory && iterator.hasNext()) {
+            final var entry = iterator.next();
+            final var tile = entry.getKey();
+            if (modifiedTiles.remove(tile)) {
+                writeTile(tile, entry.getValue());
+            }
+            iterator.remove();
+            statistics.eviction();
+        }
+    }
+
+    private void writeTile(final int tile, @NonNull final BufferedImage image) throws UserException {
+        try {
+            if (spillChannel == null) {
+                spillFile = Files.createTempFile("gpx-animator-map", ".tmp"); //NON-NLS
+                spillFile.toFile().deleteOnExit();
+                spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            var offset = spilledTiles.get(tile);
+            if (offset == null) {
+                offset = (long) spilledTiles.size() * tileSize * tileSize * BYTES_PER_PIXEL;
+                spilledTiles.put(tile, offset);
+            }
+            final var buffer = ByteBuffer.wrap(getData(image));
+            var position = offset;
+            while (buffer.hasRemaining()) {
+                position += spillChannel.write(buffer, position);
+            }
+        } catch (final IOException e) {
+            throw new UserException("Can't write map tile to temporary file: ".concat(e.getMessage()), e);
+        }
+    }
+
+    private void readTile(@NonNull final BufferedImage image, final long offset) throws UserException {
+        try {
+            final var buffer = ByteBuffer.wrap(getData(image));
+            var position = offset;
+            while (buffer.hasRemaining()) {
+                final var read = spillChannel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of temporary map file");
+                }
+                position += read;
+            }
+        } catch (final IOException e) {
+            throw new UserException("Can't read map tile from temporary file: ".concat(e.getMessage()), e);
+        }
+    }
+
+    private static byte[] getData(@NonNull final BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores all tiles in a single archive file, so that the tile cache directory holds only a few files, no matter how many tiles
+ * are cached. The archive consists of an append-only data file with the tiles and an append-only index file. The index is read
+ * into memory when the archive is opened, so looking for a tile and aging the cache never list the cache directory. The tiles
+ * are read from memory mapped segments of the data file.
+ *
+ * <p>Replaced and removed tiles stay in the data file until more than half of it is unused or the archive is bigger than the
+ * maximum size of the tile cache, then the archive is compacted by copying the used tiles to a new data file, which is copied
+ * back over the start of the data file. The data file is never replaced, because a file which is still mapped can't be
+ * replaced or truncated on all platforms, its unused end is removed when this is possible, at the latest when the archive is
+ * opened again. The archive is locked while it is open, another
+ * process which uses the same cache directory works without a tile cache.</p>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class ArchiveTileStore implements TileStore {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveTileStore.class);
+
+    private static final String DATA_FILE = "tiles.gpxac"; //NON-NLS
+    private static final String INDEX_FILE = "tiles.gpxac.index"; //NON-NLS
+    private static final String LOCK_FILE = "tiles.gpxac.lock"; //NON-NLS
+    private static final String COMPACT_EXTENSION = ".compact"; //NON-NLS
+    private static final String COMPACTED_EXTENSION = ".compacted"; //NON-NLS
+
+    private static final int SEGMENT_SIZE = 1 << 28; // 256 MB
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = KEY_LENGTH + Short.BYTES;
+    private static final int INDEX_ENTRY_LENGTH = KEY_LENGTH + Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int REMOVED = -1;
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private long dataSize;
+    private long indexSize;
+    private long usedSize;
+
+    private ArchiveTileStore(@NonNull final Path directory, @NonNull final FileChannel lockChannel, @NonNull final FileLock lock)
+            throws IOException {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+        openChannels();
+        finishCompaction();
+        readIndex();
+        truncateUnusedData();
+    }
+
+    /**
+     * Opens the archive in the directory, an empty archive is created if the directory does not contain one.
+     *
+     * @throws IOException if the archive can't be read or is used by another process
+     */
+    static ArchiveTileStore open(@NonNull final Path directory) throws IOException {
+        final var lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            final var lock = lockChannel.tryLock();
+            if (lock == null) {
+                throw new IOException("The tile archive is used by another process: ".concat(directory.toString()));
+            }
+            return new ArchiveTileStore(directory, lockChannel, lock);
+        } catch (final OverlappingFileLockException e) {
+            lockChannel.close();
+            throw new IOException("The tile archive is already open: ".concat(directory.toString()), e);
+        } catch (final IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    static boolean exists(@NonNull final Path directory) {
+        return Files.isRegularFile(directory.resolve(INDEX_FILE));
+    }
+
+    static boolean isArchiveFile(@NonNull final String filename) {
+        return filename.startsWith(DATA_FILE);
+    }
+
+    @Override
+    @Nullable
+    public synchronized TileData read(@NonNull final String key, final long timeLimit) throws IOException {
+        final var entry = entries.get(key);
+        if (entry == null || System.currentTimeMillis() - entry.storedAt() > timeLimit) {
+            return null;
+        }
+
+        final var record = getRecord(entry);
+        final var storedKey = new byte[KEY_LENGTH];
+        record.get(storedKey);
+        if (!Arrays.equals(storedKey, HexFormat.of().parseHex(key))) {
+            // the index does not match the data file, e.g. after the application was killed while the archive was compacted
+            throw new IOException("Tile archive is damaged at offset " + entry.offset());
+        }
+        final var header = new byte[Short.toUnsignedInt(record.getShort())];
+        record.get(header);
+        final var data = new byte[record.remaining()];
+        record.get(data);
+        return TileData.fromHeader(data, new String(header, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized long write(@NonNull final String key, @NonNull final TileData tileData) throws IOException {
+        final var header = tileData.getHeader().getBytes(StandardCharsets.UTF_8);
+        final var length = HEADER_LENGTH + header.length + tileData.data().length;
+        if (length > SEGMENT_SIZE || header.length > 0xFFFF) { // NOPMD -- Ignore magic number literal
+            throw new IOException("Tile is too big for the tile archive: ".concat(key));
+        }
+
+        final var record = ByteBuffer.allocate(length)
+                .put(HexFormat.of().parseHex(key))
+                .putShort((short) header.length)
+                .put(header)
+                .put(tileData.data())
+                .flip();
+        final var offset = appendRecord(dataChannel, dataSize, record);
+        dataSize = offset + length;
+        appendIndexEntry(key, new Entry(offset, length, System.currentTimeMillis()));
+        return length + INDEX_ENTRY_LENGTH;
+    }
+
+    @Override
+    @Nullable
+    public synchronized StoredTile getStoredTile(@NonNull final String key) {
+        final var entry = entries.get(key);
+        return entry != null ? new StoredTile(key, entry.length() + INDEX_ENTRY_LENGTH, entry.storedAt()) : null;
+    }
+
+    @Override
+    public synchronized void refresh(@NonNull final String key) throws IOException {
+        final var entry = entries.get(key);
+        if (entry != null) {
+            appendIndexEntry(key, new Entry(entry.offset(), entry.length(), System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public synchronized void remove(@NonNull final String key) throws IOException {
+        if (entries.containsKey(key)) {
+            appendIndexEntry(key, new Entry(0, REMOVED, 0));
+        }
+    }
+
+    @Override
+    public synchronized void age(final long timeLimit) throws IOException {
+        final var now = System.currentTimeMillis();
+        final var agedKeys = entries.entrySet().stream()
+                .filter(entry -> now - entry.getValue().storedAt() > timeLimit)
+                .map(Map.Entry::getKey)
+                .toList();
+
+        if (agedKeys.size() == entries.size()) {
+            truncate();
+        } else {
+            for (final var key : agedKeys) {
+                appendIndexEntry(key, new Entry(0, REMOVED, 0));
+            }
+            compact(Long.MAX_VALUE);
+        }
+    }
+
+    //
+    // The size of a stored tile includes its entry in the index file, so that
+    // the sizes of the tiles add up to the size of the compacted archive.
+    //
+    @Override
+    public synchronized List<StoredTile> list() {
+        return entries.entrySet().stream()
+                .map(entry -> new StoredTile(entry.getKey(), entry.getValue().length() + INDEX_ENTRY_LENGTH, entry.getValue().storedAt()))
+                .toList();
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return dataSize + indexSize;
+    }
+
+    @Override
+    public synchronized long getOverheadSize() {
+        return dataSize + indexSize - usedSize - (long) entries.size() * INDEX_ENTRY_LENGTH;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segments.clear();
+        dataChannel.close();
+        indexChannel.close();
+        lock.release();
+        lockChannel.close();
+    }
+
+    private void openChannels() throws IOException {
+        dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    //
+    // The index is a list of entries with the key, the position and the
+    // length of a tile in the data file and the time it was stored. Later
+    // entries replace earlier entries with the same key, an entry with a
+    // negative length removes the tile. Incomplete entries at the end,
+    // written when the application was killed, are ignored and overwritten.
+    // The data file may be longer than the used tiles, the tiles are written
+    // after the last used tile.
+    //
+    private void readIndex() throws IOException {
+        final var count = (int) (indexChannel.size() / INDEX_ENTRY_LENGTH);
+        final var index = ByteBuffer.allocate(count * INDEX_ENTRY_LENGTH);
+        while (index.hasRemaining() && indexChannel.read(index, index.position()) >= 0) {
+            // read until the buffer is full
+        }
+        index.flip();
+
+        final var fileSize = dataChannel.size();
+        final var key = new byte[KEY_LENGTH];
+        for (var i = 0; i < count; i++) {
+            index.get(key);
+            final var entry = new Entry(index.getLong(), index.getInt(), index.getLong());
+            if (entry.length() == REMOVED || entry.offset() + entry.length() <= fileSize) {
+                putEntry(HexFormat.of().formatHex(key), entry);
+            }
+        }
+        indexSize = (long) count * INDEX_ENTRY_LENGTH;
+        dataSize = entries.values().stream().mapToLong(entry -> entry.offset() + entry.length()).max().orElse(0);
+    }
+
+    private void appendIndexEntry(@NonNull final String key, @NonNull final Entry entry) throws IOException {
+        final var indexEntry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH)
+                .put(HexFormat.of().parseHex(key))
+                .putLong(entry.offset())
+                .putInt(entry.length())
+                .putLong(entry.storedAt())
+                .flip();
+        writeFully(indexChannel, indexSize, indexEntry);
+        indexSize += INDEX_ENTRY_LENGTH;
+        putEntry(key, entry);
+    }
+
+    private void putEntry(@NonNull final String key, @NonNull final Entry entry) {
+        final var replaced = entry.length() == REMOVED ? entries.remove(key) : entries.put(key, entry);
+        usedSize += (entry.length() == REMOVED ? 0 : entry.length()) - (replaced != null ? replaced.length() : 0);
+    }
+
+    /**
+     * Appends a record to a data file. A record never spans two segments, so that it can be read from a single mapped segment.
+     *
+     * @return the position of the record in the data file
+     */
+    private static long appendRecord(@NonNull final FileChannel channel, final long size, @NonNull final ByteBuffer record)
+            throws IOException {
+        var offset = size;
+        if (offset % SEGMENT_SIZE + record.remaining() > SEGMENT_SIZE) {
+            offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+        }
+        writeFully(channel, offset, record);
+        return offset;
+    }
+
+    private static void writeFully(@NonNull final FileChannel channel, final long position, @NonNull final ByteBuffer buffer)
+            throws IOException {
+        var written = 0L;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+    }
+
+    private ByteBuffer getRecord(@NonNull final Entry entry) throws IOException {
+        final var segment = (int) (entry.offset() / SEGMENT_SIZE);
+        final var position = (int) (entry.offset() % SEGMENT_SIZE);
+        while (segments.size() <= segment) {
+            segments.add(null);
+        }
+
+        // the last segment grows with the data file, it is mapped again when a tile was written after it was mapped
+        var buffer = segments.get(segment);
+        if (buffer == null || buffer.capacity() < position + entry.length()) {
+            final var start = (long) segment * SEGMENT_SIZE;
+            buffer = dataChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, dataSize - start));
+            segments.set(segment, buffer);
+        }
+        return buffer.slice(position, entry.length());
+    }
+
+    private ByteBuffer readRecord(@NonNull final Entry entry) throws IOException {
+        final var record = ByteBuffer.allocate(entry.length());
+        while (record.hasRemaining() && dataChannel.read(record, entry.offset() + record.position()) >= 0) {
+            // read until the buffer is full
+        }
+        return record.flip();
+    }
+
+    private void truncate() throws IOException {
+        // the mapped segments must not be used after the data file was truncated
+        segments.clear();
+        indexChannel.truncate(0);
+        entries.clear();
+        dataSize = 0;
+        indexSize = 0;
+        usedSize = 0;
+        truncateUnusedData();
+    }
+
+    //
+    // A data file which is mapped, e.g. by segments which were not released
+    // yet, can't be truncated on all platforms. The unused end stays in the
+    // data file then until the archive is opened again.
+    //
+    private void truncateUnusedData() {
+        try {
+            if (dataChannel.size() > dataSize) {
+                dataChannel.truncate(dataSize);
+            }
+        } catch (final IOException e) {
+            LOGGER.debug("The unused end of the tile archive is removed when it is opened again", e);
+        }
+    }
+
+    //
+    // The used tiles are copied with channel reads to new data and index
+    // files. When they are complete, the index file is marked as compacted
+    // and the compaction is finished by copying the new data file over the
+    // old one. The tiles keep their order, so tiles which were stored
+    // together are still read together.
+    //
+    @Override
+    public synchronized void compact(final long maxSize) throws IOException {
+        if (usedSize >= dataSize / 2 && getSize() <= maxSize) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            truncate();
+            return;
+        }
+
+        final var oldSize = getSize();
+        final var compactDataFile = directory.resolve(DATA_FILE.concat(COMPACT_EXTENSION));
+        final var compactIndexFile = directory.resolve(INDEX_FILE.concat(COMPACT_EXTENSION));
+        var compactDataSize = 0L;
+
+        try (var compactData = FileChannel.open(compactDataFile,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             var compactIndex = FileChannel.open(compactIndexFile,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final var sortedEntries = entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().offset()))
+                    .toList();
+            final var indexEntry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH);
+            var compactIndexSize = 0L;
+            for (final var sortedEntry : sortedEntries) {
+                final var entry = sortedEntry.getValue();
+                final var offset = appendRecord(compactData, compactDataSize, readRecord(entry));
+                compactDataSize = offset + entry.length();
+
+                indexEntry.clear()
+                        .put(HexFormat.of().parseHex(sortedEntry.getKey()))
+                        .putLong(offset)
+                        .putInt(entry.length())
+                        .putLong(entry.storedAt())
+                        .flip();
+                writeFully(compactIndex, compactIndexSize, indexEntry);
+                compactIndexSize += INDEX_ENTRY_LENGTH;
+            }
+            compactData.force(true);
+            compactIndex.force(true);
+        }
+
+        Files.move(compactIndexFile, directory.resolve(INDEX_FILE.concat(COMPACTED_EXTENSION)), StandardCopyOption.ATOMIC_MOVE);
+
+        // the mapped segments must not be used after the data file was overwritten
+        segments.clear();
+        finishCompaction();
+        entries.clear();
+        usedSize = 0;
+        readIndex();
+        truncateUnusedData();
+        LOGGER.info("Compacted tile archive from {} to {} bytes", oldSize, getSize());
+    }
+
+    //
+    // A compaction which was interrupted after the index file was marked as
+    // compacted is finished when the archive is opened again, the compacted
+    // data file is still complete until the compacted index file was moved.
+    // Files of a compaction which was interrupted before are deleted.
+    //
+    private void finishCompaction() throws IOException {
+        final var compactDataFile = directory.resolve(DATA_FILE.concat(COMPACT_EXTENSION));
+        final var compactedIndexFile = directory.resolve(INDEX_FILE.concat(COMPACTED_EXTENSION));
+        if (Files.exists(compactedIndexFile)) {
+            try (var compactData = FileChannel.open(compactDataFile, StandardOpenOption.READ)) {
+                final var size = compactData.size();
+                var copied = 0L;
+                while (copied < size) {
+                    copied += dataChannel.transferFrom(compactData, copied, size - copied);
+                }
+            }
+            dataChannel.force(true);
+
+            indexChannel.close();
+            Files.move(compactedIndexFile, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        Files.deleteIfExists(compactDataFile);
+        Files.deleteIfExists(directory.resolve(INDEX_FILE.concat(COMPACT_EXTENSION)));
+    }
+
+    private record Entry(long offset, int length, long storedAt) { }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently rendered backgrounds (background color, background image and map), so that rendering the same route
+ * again, e.g. after changing the fonts or colors of the track, only copies the background instead of drawing all map tiles
+ * again. The cache is shared by all renderings of the application, the least recently used backgrounds are removed when the
+ * cache is full. This class is thread safe.
+ */
+public final class BackgroundCache {
+
+    private static final long MAX_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+    private static final CacheStatistics STATISTICS = new CacheStatistics("Background cache"); //NON-NLS
+
+    private static final Map<BackgroundKey, Raster> BACKGROUNDS = new LinkedHashMap<>(4, 0.75f, true);
+
+    private static long bytes;
+
+    private BackgroundCache() throws InstantiationException {
+        throw new InstantiationException("BackgroundCache is a utility class which can't be instantiated!");
+    }
+
+    /**
+     * Copies the cached background into the image.
+     *
+     * @return whether the background was cached, otherwise the image is not modified
+     */
+    public static boolean restore(@NonNull final BackgroundKey key, @NonNull final BufferedImage image) {
+        final Raster background;
+        synchronized (BACKGROUNDS) {
+            background = BACKGROUNDS.get(key);
+        }
+        if (background == null || background.getWidth() != image.getWidth() || background.getHeight() != image.getHeight()
+                || background.getNumBands() != image.getRaster().getNumBands()) {
+            STATISTICS.miss();
+            return false;
+        }
+
+        STATISTICS.hit();
+        image.getRaster().setRect(background);
+        return true;
+    }
+
+    /**
+     * Keeps a copy of the background, if it is not bigger than the cache.
+     */
+    public static void store(@NonNull final BackgroundKey key, @NonNull final BufferedImage image) {
+        final var size = getSize(image);
+        if (size > MAX_BYTES) {
+            return;
+        }
+
+        final var background = image.copyData(null);
+        synchronized (BACKGROUNDS) {
+            final var replaced = BACKGROUNDS.put(key, background);
+            bytes += size - (replaced != null ? getSize(replaced) : 0);
+            final var iterator = BACKGROUNDS.values().iterator();
+            while (bytes > MAX_BYTES && iterator.hasNext()) {
+                bytes -= getSize(iterator.next());
+                iterator.remove();
+                STATISTICS.eviction();
+            }
+        }
+    }
+
+    public static CacheStatistics getStatistics() {
+        return STATISTICS;
+    }
+
+    private static long getSize(@NonNull final BufferedImage image) {
+        return getSize(image.getRaster());
+    }
+
+    private static long getSize(@NonNull final Raster raster) {
+        return (long) raster.getWidth() * raster.getHeight() * raster.getNumBands();
+    }
+
+    /**
+     * Every setting the background depends on. The background image file is identified by its path and modification time, so
+     * that a modified image is drawn again.
+     */
+    public record BackgroundKey(int width, int height,
+                                @Nullable String tmsUrlTemplate, @Nullable String tmsApiKey, @Nullable Integer zoom,
+                                double minX, double maxX, double minY, double maxY, float backgroundMapVisibility,
+                                int backgroundColor, @Nullable String backgroundImage, long backgroundImageModified) { }
+}
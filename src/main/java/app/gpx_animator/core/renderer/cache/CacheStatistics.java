@@ -0,0 +1,74 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe hit, miss and eviction counters of a cache or a pool.
+ */
+public final class CacheStatistics {
+
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CacheStatistics(@NonNull final String name) {
+        this.name = name;
+    }
+
+    public void hit() {
+        hits.increment();
+    }
+
+    public void miss() {
+        misses.increment();
+    }
+
+    public void eviction() {
+        evictions.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the share of the requests which were served by the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        final var hitCount = getHits();
+        final var requests = hitCount + getMisses();
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "%s: %d hits, %d misses (%.1f%% hit rate), %d evictions" //NON-NLS
+                .formatted(name, getHits(), getMisses(), getHitRate() * 100, getEvictions());
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores every tile in its own file of the tile cache directory.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class DirectoryTileStore implements TileStore {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryTileStore.class);
+
+    private static final String DELETE_ERROR = "Can't delete tile cache file: {}";
+
+    private static final String CACHED_FILE_EXTENSION = ".gpxac.tile"; //NON-NLS
+    private static final String LEGACY_FILE_EXTENSION = ".gpxac.png"; //NON-NLS
+    private static final int HASH_NAME_LENGTH = 64;
+
+    private final Path directory;
+
+    DirectoryTileStore(@NonNull final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    @Nullable
+    public TileData read(@NonNull final String key, final long timeLimit) throws IOException {
+        final var cacheFile = getCacheFile(key);
+        if (!cacheFile.isFile() || System.currentTimeMillis() - cacheFile.lastModified() > timeLimit) {
+            return null;
+        }
+        return readCacheFile(cacheFile);
+    }
+
+    @Override
+    public long write(@NonNull final String key, @NonNull final TileData tileData) throws IOException {
+        final var cacheFile = getCacheFile(key);
+        writeCacheFile(cacheFile, tileData);
+        return cacheFile.length();
+    }
+
+    @Override
+    @Nullable
+    public StoredTile getStoredTile(@NonNull final String key) {
+        final var cacheFile = getCacheFile(key);
+        return cacheFile.isFile() ? new StoredTile(key, cacheFile.length(), cacheFile.lastModified()) : null;
+    }
+
+    @Override
+    public void refresh(@NonNull final String key) throws IOException {
+        final var cacheFile = getCacheFile(key);
+        if (cacheFile.isFile() && !cacheFile.setLastModified(System.currentTimeMillis())) {
+            throw new IOException("Can't refresh tile cache file: ".concat(cacheFile.toString()));
+        }
+    }
+
+    @Override
+    public void remove(@NonNull final String key) throws IOException {
+        Files.deleteIfExists(getCacheFile(key).toPath());
+    }
+
+    //
+    // Remove all old cached map tiles
+    //
+    // It is possible that the user has pointed our cache to a directory
+    // that holds other files. We will make a sanity check on files before
+    // we delete them.
+    //
+    // The sanity checks are very basic:
+    //  1. Is the length of the name what we expect?
+    //  2. Is the file extension (string suffix) correct?
+    // Files written by older versions (PNG files) are removed the same way.
+    //
+    // If either check fails, log a warning rather than delete the file.
+    //
+    @Override
+    public void age(final long timeLimit) {
+        final var files = directory.toFile().listFiles();
+        if (files != null) {
+            for (var cacheEntry : files) {
+                final var cacheFilename = cacheEntry.getName();
+                if (isCacheFile(cacheFilename)) {
+                    ageCacheFile(cacheEntry, timeLimit);
+                } else if (!ArchiveTileStore.isArchiveFile(cacheFilename) && !IndexedTileStore.isIndexFile(cacheFilename)) {
+                    LOGGER.error("Error: Unknown file in tile cache: {}", cacheFilename);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getSize() {
+        final var files = directory.toFile().listFiles();
+        var size = 0L;
+        if (files != null) {
+            for (var cacheEntry : files) {
+                final var cacheFilename = cacheEntry.getName();
+                if (isCacheFile(cacheFilename)) {
+                    size += cacheEntry.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void compact(final long maxSize) {
+        // the disk space of a tile is reclaimed when its file is deleted
+    }
+
+    @Override
+    public long getOverheadSize() {
+        return 0;
+    }
+
+    //
+    // Files written by older versions (PNG files) can't be read, they are
+    // deleted instead of being listed.
+    //
+    @Override
+    public List<StoredTile> list() throws IOException {
+        final var storedTiles = new ArrayList<StoredTile>();
+        final var files = directory.toFile().listFiles();
+        if (files != null) {
+            for (var cacheEntry : files) {
+                final var cacheFilename = cacheEntry.getName();
+                if (isCacheFile(cacheFilename) && cacheFilename.endsWith(LEGACY_FILE_EXTENSION)) {
+                    Files.deleteIfExists(cacheEntry.toPath());
+                } else if (isCacheFile(cacheFilename)) {
+                    storedTiles.add(new StoredTile(cacheFilename.substring(0, HASH_NAME_LENGTH), cacheEntry.length(), cacheEntry.lastModified()));
+                }
+            }
+        }
+        return storedTiles;
+    }
+
+    @Override
+    public void close() {
+        // nothing to close, the files are opened only while they are read or written
+    }
+
+    private File getCacheFile(@NonNull final String key) {
+        return directory.resolve(key.concat(CACHED_FILE_EXTENSION)).toFile();
+    }
+
+    //
+    // A cache file contains the content type and the validators sent by the
+    // map server in the first line, followed by the tile exactly as it was
+    // downloaded.
+    //
+    private static TileData readCacheFile(final File cacheFile) throws IOException {
+        final var content = Files.readAllBytes(cacheFile.toPath());
+        var headerLength = 0;
+        while (headerLength < content.length && content[headerLength] != '\n') {
+            headerLength++;
+        }
+        if (headerLength == content.length) {
+            throw new IOException("Missing header in tile cache file");
+        }
+        final var header = new String(content, 0, headerLength, StandardCharsets.UTF_8);
+        final var data = Arrays.copyOfRange(content, headerLength + 1, content.length);
+        return TileData.fromHeader(data, header);
+    }
+
+    private static void writeCacheFile(final File cacheFile, final TileData tileData) throws IOException {
+        final var header = tileData.getHeader().concat("\n").getBytes(StandardCharsets.UTF_8);
+
+        // the file is written under a temporary name first, so that other threads never read a partially written tile
+        final var tempFile = Files.createTempFile(cacheFile.toPath().getParent(), cacheFile.getName(), ".tmp"); //NON-NLS
+        try {
+            try (var out = Files.newOutputStream(tempFile)) {
+                out.write(header);
+                out.write(tileData.data());
+            }
+            Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static boolean isCacheFile(final String filename) {
+        return filename.length() == HASH_NAME_LENGTH + CACHED_FILE_EXTENSION.length() && filename.endsWith(CACHED_FILE_EXTENSION)
+                || filename.length() == HASH_NAME_LENGTH + LEGACY_FILE_EXTENSION.length() && filename.endsWith(LEGACY_FILE_EXTENSION);
+    }
+
+    //
+    // Check age on a file and remove it if it is too old.
+    //
+    private static void ageCacheFile(final File cacheFile, final long timeLimit) {
+        final var msBetweenDates = System.currentTimeMillis() - cacheFile.lastModified();
+        if (msBetweenDates > timeLimit) {
+            try {
+                Files.deleteIfExists(cacheFile.toPath());
+            } catch (final IOException e) {
+                LOGGER.error(DELETE_ERROR, cacheFile, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the size and the last use of every tile of a tile store in an index, so that the size of the store is known and the
+ * least recently used tiles can be removed when the store gets bigger than its maximum size, without listing the tiles of the
+ * store. The index is built from the tiles of the store only when it does not exist yet.
+ *
+ * <p>The index is a journal in the cache directory, every change is appended to it. When the journal consists mostly of
+ * outdated records, it is rewritten with a single record per tile, in the order of their last use.</p>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class IndexedTileStore implements TileStore {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedTileStore.class);
+
+    private static final String INDEX_EXTENSION = ".access"; //NON-NLS
+    private static final String REWRITE_EXTENSION = ".rewrite"; //NON-NLS
+
+    private static final int KEY_LENGTH = 32;
+    private static final int RECORD_LENGTH = 1 + KEY_LENGTH + Long.BYTES + Long.BYTES;
+    private static final int MIN_RECORDS_TO_REWRITE = 1_000;
+    private static final int TRIM_PERCENT = 90;
+
+    private static final byte PUT = 1;
+    private static final byte ACCESS = 2;
+    private static final byte REMOVE = 3;
+
+    private final TileStore store;
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+
+    private FileChannel journal;
+    private long records;
+    private long size;
+
+    private IndexedTileStore(@NonNull final TileStore store, @NonNull final Path indexFile) {
+        this.store = store;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Opens the index of a tile store, the index is built from the tiles of the store if it does not exist.
+     *
+     * @param indexName the name of the index file in the cache directory, without extension
+     */
+    static IndexedTileStore open(@NonNull final TileStore store, @NonNull final Path directory, @NonNull final String indexName)
+            throws IOException {
+        final var indexedStore = new IndexedTileStore(store, directory.resolve(indexName.concat(INDEX_EXTENSION)));
+        if (Files.isRegularFile(indexedStore.indexFile)) {
+            try {
+                indexedStore.readJournal();
+                return indexedStore;
+            } catch (final IOException e) {
+                LOGGER.warn("Can't read the index of the tile cache, it is created again", e);
+                indexedStore.entries.clear();
+                indexedStore.records = 0;
+                indexedStore.size = 0;
+            }
+        }
+        indexedStore.buildIndex();
+        return indexedStore;
+    }
+
+    static boolean isIndexFile(@NonNull final String filename) {
+        return filename.endsWith(INDEX_EXTENSION) || filename.endsWith(INDEX_EXTENSION.concat(REWRITE_EXTENSION));
+    }
+
+    //
+    // A tile which is not in the index, e.g. because it was written by
+    // another process, is added to the index when it is read, with the time
+    // it was stored in the underlying store. A tile which
+    // is older than the time limit stays in the index, only a tile which is
+    // missing in the store is removed from it.
+    //
+    @Override
+    @Nullable
+    public TileData read(@NonNull final String key, final long timeLimit) throws IOException {
+        final var tileData = store.read(key, Long.MAX_VALUE);
+        synchronized (this) {
+            if (tileData == null) {
+                if (entries.containsKey(key)) {
+                    appendRecord(REMOVE, key, 0, 0);
+                }
+                return null;
+            }
+            if (entries.containsKey(key)) {
+                appendRecord(ACCESS, key, 0, 0);
+            } else {
+                final var storedTile = store.getStoredTile(key);
+                if (storedTile != null) {
+                    appendRecord(PUT, key, storedTile.size(), storedTile.storedAt());
+                } else {
+                    appendRecord(PUT, key, tileData.data().length, System.currentTimeMillis());
+                }
+            }
+            return isFresh(key, timeLimit) ? tileData : null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public synchronized StoredTile getStoredTile(@NonNull final String key) {
+        final var entry = entries.get(key);
+        return entry != null ? new StoredTile(key, entry.size(), entry.storedAt()) : null;
+    }
+
+    /**
+     * @return whether the tile is in the index and was stored within the time limit, the tile itself is not read
+     */
+    public synchronized boolean isFresh(@NonNull final String key, final long timeLimit) {
+        final var entry = entries.get(key);
+        return entry != null && System.currentTimeMillis() - entry.storedAt() <= timeLimit;
+    }
+
+    /**
+     * Makes the tile the most recently used tile without reading it, e.g. when the decoded tile was used instead.
+     */
+    public synchronized void touch(@NonNull final String key) throws IOException {
+        if (entries.containsKey(key)) {
+            appendRecord(ACCESS, key, 0, 0);
+        }
+    }
+
+    @Override
+    public long write(@NonNull final String key, @NonNull final TileData tileData) throws IOException {
+        final var storedSize = store.write(key, tileData);
+        synchronized (this) {
+            appendRecord(PUT, key, storedSize, System.currentTimeMillis());
+        }
+        return storedSize;
+    }
+
+    @Override
+    public synchronized void refresh(@NonNull final String key) throws IOException {
+        store.refresh(key);
+        final var entry = entries.get(key);
+        if (entry != null) {
+            appendRecord(PUT, key, entry.size(), System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public synchronized void remove(@NonNull final String key) throws IOException {
+        store.remove(key);
+        if (entries.containsKey(key)) {
+            appendRecord(REMOVE, key, 0, 0);
+        }
+    }
+
+    /**
+     * Removes the least recently used tiles if the size of the store on disk, including the index and the space of removed tiles
+     * which was not reclaimed yet, is bigger than the maximum size. The tiles and their index are trimmed to 90 percent of the
+     * maximum size, so that the store is not compacted again for every new tile.
+     */
+    public synchronized void trim(final long maxSize) throws IOException {
+        if (getSize() <= maxSize) {
+            return;
+        }
+
+        final var trimmedSize = maxSize / 100 * TRIM_PERCENT;
+        final var leastRecentlyUsed = new ArrayList<String>();
+        var remainingSize = size + (long) entries.size() * RECORD_LENGTH;
+        for (final var entry : entries.entrySet()) {
+            if (remainingSize <= trimmedSize) {
+                break;
+            }
+            leastRecentlyUsed.add(entry.getKey());
+            remainingSize -= entry.getValue().size() + RECORD_LENGTH;
+        }
+        for (final var key : leastRecentlyUsed) {
+            remove(key);
+        }
+        rewriteJournal();
+        store.compact(maxSize - records * RECORD_LENGTH);
+        LOGGER.debug("Removed {} least recently used tiles from the tile cache", leastRecentlyUsed.size());
+    }
+
+    @Override
+    public synchronized void age(final long timeLimit) throws IOException {
+        if (timeLimit < 0) {
+            store.age(timeLimit);
+            entries.clear();
+            journal.truncate(0);
+            records = 0;
+            size = 0;
+            return;
+        }
+
+        final var now = System.currentTimeMillis();
+        final var agedKeys = entries.entrySet().stream()
+                .filter(entry -> now - entry.getValue().storedAt() > timeLimit)
+                .map(Map.Entry::getKey)
+                .toList();
+        for (final var key : agedKeys) {
+            remove(key);
+        }
+        store.compact(Long.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized void compact(final long maxSize) throws IOException {
+        store.compact(maxSize - records * RECORD_LENGTH);
+    }
+
+    @Override
+    public synchronized List<StoredTile> list() {
+        return entries.entrySet().stream()
+                .map(entry -> new StoredTile(entry.getKey(), entry.getValue().size(), entry.getValue().storedAt()))
+                .toList();
+    }
+
+    /**
+     * @return the size of the tiles, of their index and of removed tiles which were not reclaimed yet, which is known without
+     * reading the store
+     */
+    @Override
+    public synchronized long getSize() {
+        return size + getOverheadSize();
+    }
+
+    @Override
+    public synchronized long getOverheadSize() {
+        return records * RECORD_LENGTH + store.getOverheadSize();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            journal.close();
+        } finally {
+            store.close();
+        }
+    }
+
+    private void readJournal() throws IOException {
+        try (var channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final var length = channel.size() / RECORD_LENGTH * RECORD_LENGTH;
+            final var buffer = ByteBuffer.allocate(RECORD_LENGTH * 1024);
+            final var key = new byte[KEY_LENGTH];
+            var position = 0L;
+            while (position < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                    // read until the buffer is full
+                }
+                buffer.flip();
+                if (buffer.remaining() < RECORD_LENGTH) {
+                    break;
+                }
+                while (buffer.remaining() >= RECORD_LENGTH) {
+                    final var type = buffer.get();
+                    if (type < PUT || type > REMOVE) {
+                        throw new IOException("Damaged tile cache index: ".concat(indexFile.toString()));
+                    }
+                    buffer.get(key);
+                    applyRecord(type, HexFormat.of().formatHex(key), buffer.getLong(), buffer.getLong());
+                    records++;
+                }
+                position += buffer.limit();
+            }
+
+            // an incomplete record at the end, written when the application was killed, is removed
+            channel.truncate(records * RECORD_LENGTH);
+        }
+        journal = FileChannel.open(indexFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void buildIndex() throws IOException {
+        final var storedTiles = new ArrayList<>(store.list());
+        storedTiles.sort(Comparator.comparingLong(StoredTile::storedAt));
+        for (final var storedTile : storedTiles) {
+            applyRecord(PUT, storedTile.key(), storedTile.size(), storedTile.storedAt());
+        }
+        rewriteJournal();
+        LOGGER.info("Created the index of {} cached tiles", entries.size());
+    }
+
+    private void appendRecord(final byte type, @NonNull final String key, final long tileSize, final long storedAt) throws IOException {
+        record.clear()
+                .put(type)
+                .put(HexFormat.of().parseHex(key))
+                .putLong(tileSize)
+                .putLong(storedAt)
+                .flip();
+        while (record.hasRemaining()) {
+            journal.write(record);
+        }
+        records++;
+        applyRecord(type, key, tileSize, storedAt);
+
+        if (records > MIN_RECORDS_TO_REWRITE && records > 2L * entries.size()) {
+            rewriteJournal();
+        }
+    }
+
+    private void applyRecord(final byte type, @NonNull final String key, final long tileSize, final long storedAt) {
+        switch (type) {
+            case PUT -> {
+                // the tile is removed first, so that it is the most recently used tile afterwards
+                final var replaced = entries.remove(key);
+                entries.put(key, new Entry(tileSize, storedAt));
+                size += tileSize - (replaced != null ? replaced.size() : 0);
+            }
+            case ACCESS -> entries.get(key); // makes the tile the most recently used tile
+            case REMOVE -> {
+                final var removed = entries.remove(key);
+                size -= removed != null ? removed.size() : 0;
+            }
+            default -> throw new IllegalStateException("Unknown record in tile cache index: " + type);
+        }
+    }
+
+    //
+    // The new journal is written under a temporary name first, so that the
+    // old journal is still complete if the application is killed meanwhile.
+    //
+    private void rewriteJournal() throws IOException {
+        final var rewriteFile = indexFile.resolveSibling(indexFile.getFileName().toString().concat(REWRITE_EXTENSION));
+        try (var rewrite = FileChannel.open(rewriteFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final var buffer = ByteBuffer.allocate(RECORD_LENGTH * 1024);
+            for (final var entry : entries.entrySet()) {
+                if (buffer.remaining() < RECORD_LENGTH) {
+                    writeFully(rewrite, buffer.flip());
+                    buffer.clear();
+                }
+                buffer.put(PUT)
+                        .put(HexFormat.of().parseHex(entry.getKey()))
+                        .putLong(entry.getValue().size())
+                        .putLong(entry.getValue().storedAt());
+            }
+            writeFully(rewrite, buffer.flip());
+        }
+
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(rewriteFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(indexFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = entries.size();
+    }
+
+    private static void writeFully(@NonNull final FileChannel channel, @NonNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private record Entry(long size, long storedAt) { }
+}
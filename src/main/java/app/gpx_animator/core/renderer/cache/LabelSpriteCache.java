@@ -0,0 +1,188 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+
+/**
+ * Keeps pre-rendered labels (text with a halo) as images, so drawing a label which was already drawn before is a single
+ * {@code drawImage} instead of outlining and stroking the glyphs again. Label positions are rounded to a quarter of a pixel, a
+ * label is rendered once for every quarter pixel position it is drawn at. The least recently used labels are removed when the
+ * cache is full. This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class LabelSpriteCache {
+
+    private static final int PHASES = 4;
+    private static final float HALO_WIDTH = 3f;
+    private static final Stroke HALO_STROKE = new BasicStroke(HALO_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    private static final int PADDING = (int) Math.ceil(HALO_WIDTH) + 2;
+
+    private final long maxBytes;
+    private final Map<SpriteKey, Sprite> sprites = new LinkedHashMap<>(16, 0.75f, true);
+    private final CacheStatistics statistics = new CacheStatistics("Label sprite cache"); //NON-NLS
+    private long bytes;
+
+    /**
+     * @param maxBytes the maximum memory used by the cached labels
+     */
+    public LabelSpriteCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Draws a label, the position is the start of the baseline of the last line. Multiple lines are drawn upwards.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public void drawLabel(@NonNull final Graphics2D g2, @NonNull final String text, final float x, final float y,
+                          @NonNull final Font font, @NonNull final Color haloColor, @NonNull final Color textColor) {
+        final var quantizedX = Math.round(x * PHASES);
+        final var quantizedY = Math.round(y * PHASES);
+        final var key = new SpriteKey(text, font, haloColor.getRGB(), textColor.getRGB(),
+                Math.floorMod(quantizedX, PHASES), Math.floorMod(quantizedY, PHASES));
+
+        final var sprite = getSprite(key);
+        if (sprite != null) {
+            g2.drawImage(sprite.image(),
+                    Math.floorDiv(quantizedX, PHASES) - sprite.originX(),
+                    Math.floorDiv(quantizedY, PHASES) - sprite.originY(), null);
+        }
+    }
+
+    /**
+     * @return the area covered by a label including its halo, or {@code null} if the label is empty
+     */
+    @Nullable
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public Rectangle getBounds(@NonNull final String text, final float x, final float y,
+                               @NonNull final Font font, @NonNull final Color haloColor, @NonNull final Color textColor) {
+        final var quantizedX = Math.round(x * PHASES);
+        final var quantizedY = Math.round(y * PHASES);
+        final var key = new SpriteKey(text, font, haloColor.getRGB(), textColor.getRGB(),
+                Math.floorMod(quantizedX, PHASES), Math.floorMod(quantizedY, PHASES));
+
+        final var sprite = getSprite(key);
+        return sprite == null ? null : new Rectangle(
+                Math.floorDiv(quantizedX, PHASES) - sprite.originX(), Math.floorDiv(quantizedY, PHASES) - sprite.originY(),
+                sprite.image().getWidth(), sprite.image().getHeight());
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Nullable
+    private Sprite getSprite(@NonNull final SpriteKey key) {
+        synchronized (sprites) {
+            final var sprite = sprites.get(key);
+            if (sprite != null) {
+                statistics.hit();
+                return sprite;
+            }
+        }
+
+        statistics.miss();
+        final var sprite = createSprite(key);
+        if (sprite == null) {
+            return null;
+        }
+
+        synchronized (sprites) {
+            if (sprites.put(key, sprite) == null) {
+                bytes += sprite.bytes();
+            }
+            final var iterator = sprites.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().bytes();
+                iterator.remove();
+                statistics.eviction();
+            }
+        }
+        return sprite;
+    }
+
+    @Nullable
+    private static Sprite createSprite(@NonNull final SpriteKey key) {
+        final var measureGraphics = getGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB_PRE));
+        final var frc = measureGraphics.getFontRenderContext();
+        final var lineHeight = measureGraphics.getFontMetrics(key.font()).getHeight();
+        measureGraphics.dispose();
+
+        final var lines = key.text().split("\n");
+        final var firstLineY = -(lines.length - 1) * lineHeight;
+
+        Rectangle2D bounds = null;
+        var yy = firstLineY;
+        for (final var line : lines) {
+            if (!line.isEmpty()) {
+                final var outline = new TextLayout(line, key.font(), frc).getOutline(AffineTransform.getTranslateInstance(0, yy));
+                bounds = bounds == null ? outline.getBounds2D() : bounds.createUnion(outline.getBounds2D());
+            }
+            yy += lineHeight;
+        }
+        if (bounds == null) {
+            return null;
+        }
+
+        final var originX = (int) Math.ceil(-bounds.getMinX()) + PADDING;
+        final var originY = (int) Math.ceil(-bounds.getMinY()) + PADDING;
+        final var width = originX + (int) Math.ceil(bounds.getMaxX()) + PADDING + 1;
+        final var height = originY + (int) Math.ceil(bounds.getMaxY()) + PADDING + 1;
+        final var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        final var g2 = getGraphics(image);
+        g2.setStroke(HALO_STROKE);
+        g2.setFont(key.font());
+        final var x = originX + (float) key.phaseX() / PHASES;
+        var y = originY + (float) key.phaseY() / PHASES + firstLineY;
+        for (final var line : lines) {
+            if (!line.isEmpty()) {
+                final var outline = new TextLayout(line, key.font(), g2.getFontRenderContext())
+                        .getOutline(AffineTransform.getTranslateInstance(x, y));
+                g2.setColor(new Color(key.haloColor(), true));
+                g2.fill(outline);
+                g2.draw(outline);
+
+                g2.setColor(new Color(key.textColor(), true));
+                g2.drawString(line, x, y);
+            }
+            y += lineHeight;
+        }
+        g2.dispose();
+
+        return new Sprite(image, originX, originY, (long) width * height * Integer.BYTES);
+    }
+
+    private record SpriteKey(@NonNull String text, @NonNull Font font, int haloColor, int textColor, int phaseX, int phaseY) { }
+
+    private record Sprite(@NonNull BufferedImage image, int originX, int originY, long bytes) { }
+}
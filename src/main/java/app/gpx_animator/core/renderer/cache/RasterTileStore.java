@@ -0,0 +1,264 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps decoded map tiles in a file of fixed size slots, each holding the RGB pixels of one tile, so that a cached tile is
+ * read by copying its pixels from the memory mapped file without decoding it. Only tiles of 256 x 256 pixels are stored, when
+ * all slots are used the least recently used tile is replaced. This class is thread safe.
+ *
+ * <p>A slot starts with a header of the key, the time the tile was stored and whether the slot is used, followed by the
+ * pixels in little endian byte order. The used slots are found by reading the headers when the file is opened.</p>
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+final class RasterTileStore implements Closeable {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(RasterTileStore.class);
+
+    private static final String RASTER_FILE = "tiles.gpxac.raster"; //NON-NLS
+
+    private static final int TILE_SIZE = 256;
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = 64;
+    private static final int STORED_AT_OFFSET = KEY_LENGTH;
+    private static final int USED_OFFSET = KEY_LENGTH + Long.BYTES;
+    private static final int SLOT_LENGTH = HEADER_LENGTH + TILE_SIZE * TILE_SIZE * Integer.BYTES;
+    private static final int SLOTS_PER_SEGMENT = 1024;
+
+    private final FileChannel channel;
+    private final long maxSize;
+    private final MappedByteBuffer[] segments;
+    private final Map<String, Slot> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private RasterTileStore(@NonNull final FileChannel channel, final long maxSize, final int slotCount) throws IOException {
+        this.channel = channel;
+        this.maxSize = maxSize;
+        segments = new MappedByteBuffer[(slotCount + SLOTS_PER_SEGMENT - 1) / SLOTS_PER_SEGMENT];
+        for (var i = 0; i < segments.length; i++) {
+            final var start = (long) i * SLOTS_PER_SEGMENT * SLOT_LENGTH;
+            final var length = (long) Math.min(SLOTS_PER_SEGMENT, slotCount - i * SLOTS_PER_SEGMENT) * SLOT_LENGTH;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        readHeaders(slotCount);
+    }
+
+    /**
+     * Opens the file of decoded tiles in the directory, a file with a different size is created again.
+     *
+     * @param maxSize the size of the file in bytes, which determines the number of tiles it holds
+     * @return the store, or {@code null} if the size is too small for a single tile
+     */
+    @Nullable
+    static RasterTileStore open(@NonNull final Path directory, final long maxSize) throws IOException {
+        final var slotCount = (int) Math.min(Integer.MAX_VALUE, maxSize / SLOT_LENGTH);
+        if (slotCount == 0) {
+            delete(directory);
+            return null;
+        }
+
+        final var channel = FileChannel.open(directory.resolve(RASTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final var size = (long) slotCount * SLOT_LENGTH;
+            if (channel.size() != size) {
+                // the slots of a file with a different size are not used, so that no old tiles are found in new slots
+                channel.truncate(0);
+                writeFully(channel, ByteBuffer.allocate(1), size - 1);
+            }
+            return new RasterTileStore(channel, maxSize, slotCount);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static void delete(@NonNull final Path directory) throws IOException {
+        Files.deleteIfExists(directory.resolve(RASTER_FILE));
+    }
+
+    static long getSize(@NonNull final Path directory) {
+        return directory.resolve(RASTER_FILE).toFile().length();
+    }
+
+    /**
+     * @return the size the store was opened with
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the tile as image of type {@link BufferedImage#TYPE_INT_RGB}, or {@code null} if the tile is not stored or was
+     * stored longer ago than the time limit
+     */
+    @Nullable
+    public synchronized BufferedImage read(@NonNull final String key, final long timeLimit) {
+        final var slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - slot.storedAt() > timeLimit) {
+            freeSlot(key);
+            return null;
+        }
+
+        final var image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        final var pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        getPixels(slot.index()).get(pixels);
+        return image;
+    }
+
+    /**
+     * Stores the pixels of a tile, tiles which are not 256 x 256 pixels are not stored. The pixels are stored as they are shown
+     * on a black background, the transparency of the tile is not kept.
+     */
+    public synchronized void write(@NonNull final String key, @NonNull final BufferedImage tile) {
+        if (tile.getWidth() != TILE_SIZE || tile.getHeight() != TILE_SIZE) {
+            return;
+        }
+
+        final var existingSlot = slots.remove(key);
+        final int index;
+        if (existingSlot != null) {
+            index = existingSlot.index();
+        } else if (!freeSlots.isEmpty()) {
+            index = freeSlots.pop();
+        } else {
+            final var leastRecentlyUsed = slots.keySet().iterator().next();
+            index = slots.remove(leastRecentlyUsed).index();
+        }
+
+        // the slot is marked as used only after the pixels were written
+        final var header = getHeader(index);
+        header.put(USED_OFFSET, (byte) 0);
+        getPixels(index).put(getRgbPixels(tile));
+        final var storedAt = System.currentTimeMillis();
+        header.put(0, HexFormat.of().parseHex(key)).putLong(STORED_AT_OFFSET, storedAt).put(USED_OFFSET, (byte) 1);
+        slots.put(key, new Slot(index, storedAt));
+    }
+
+    /**
+     * Frees the slots of all tiles which were stored longer ago than the time limit, a negative time limit frees all slots.
+     */
+    public synchronized void age(final long timeLimit) {
+        final var now = System.currentTimeMillis();
+        final var agedKeys = slots.entrySet().stream()
+                .filter(entry -> now - entry.getValue().storedAt() > timeLimit)
+                .map(Map.Entry::getKey)
+                .toList();
+        agedKeys.forEach(this::freeSlot);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        Arrays.fill(segments, null);
+        channel.close();
+    }
+
+    private void readHeaders(final int slotCount) {
+        final var usedSlots = new ArrayList<Map.Entry<String, Slot>>();
+        final var key = new byte[KEY_LENGTH];
+        for (var index = 0; index < slotCount; index++) {
+            final var header = getHeader(index);
+            if (header.get(USED_OFFSET) == 1) {
+                header.get(0, key);
+                usedSlots.add(Map.entry(HexFormat.of().formatHex(key), new Slot(index, header.getLong(STORED_AT_OFFSET))));
+            } else {
+                freeSlots.add(index);
+            }
+        }
+
+        // the tiles which were stored first are replaced first
+        usedSlots.sort(Comparator.comparingLong(entry -> entry.getValue().storedAt()));
+        usedSlots.forEach(entry -> slots.put(entry.getKey(), entry.getValue()));
+        LOGGER.debug("{} of {} slots for decoded tiles are used", slots.size(), slotCount);
+    }
+
+    private void freeSlot(@NonNull final String key) {
+        final var slot = slots.remove(key);
+        if (slot != null) {
+            getHeader(slot.index()).put(USED_OFFSET, (byte) 0);
+            freeSlots.push(slot.index());
+        }
+    }
+
+    private ByteBuffer getHeader(final int index) {
+        final var segment = segments[index / SLOTS_PER_SEGMENT];
+        return segment.slice(index % SLOTS_PER_SEGMENT * SLOT_LENGTH, HEADER_LENGTH);
+    }
+
+    private IntBuffer getPixels(final int index) {
+        final var segment = segments[index / SLOTS_PER_SEGMENT];
+        return segment.slice(index % SLOTS_PER_SEGMENT * SLOT_LENGTH + HEADER_LENGTH, SLOT_LENGTH - HEADER_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+    }
+
+    //
+    // The tile is drawn on a black image like a tile which is drawn on the
+    // background map, so that a tile read from this store looks the same.
+    //
+    private static int[] getRgbPixels(@NonNull final BufferedImage tile) {
+        var rgbTile = tile;
+        if (tile.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgbTile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            final var graphics = rgbTile.createGraphics();
+            graphics.drawImage(tile, 0, 0, null);
+            graphics.dispose();
+        }
+        return (int[]) rgbTile.getRaster().getDataElements(0, 0, TILE_SIZE, TILE_SIZE, null);
+    }
+
+    private static void writeFully(@NonNull final FileChannel channel, @NonNull final ByteBuffer buffer, final long position)
+            throws IOException {
+        var written = 0L;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+    }
+
+    private record Slot(int index, long storedAt) { }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A portable copy of the tile cache in a single ZIP file, which can be imported into the tile cache of another computer. Every tile
+ * is an entry named after the key of the tile, the content type and validators sent by the map server are the comment of the
+ * entry. The tiles are stored without compression, because map tiles are compressed already.
+ */
+final class TileBundle {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileBundle.class);
+
+    private static final String ENTRY_PREFIX = "tiles/"; //NON-NLS
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}"); //NON-NLS
+
+    private TileBundle() throws InstantiationException {
+        throw new InstantiationException("TileBundle is a utility class and can't be instantiated!");
+    }
+
+    /**
+     * Writes all tiles of the stores, which were stored within the time limit, to the bundle file. A tile which is stored in more
+     * than one store is written once, as it was stored last.
+     *
+     * @return the number of tiles in the bundle
+     */
+    static int write(@NonNull final Path bundleFile, @NonNull final List<? extends TileStore> stores, final long timeLimit)
+            throws IOException {
+        final var directory = bundleFile.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, bundleFile.getFileName().toString(), ".tmp"); //NON-NLS
+        var count = 0;
+        try {
+            try (var zip = new ZipOutputStream(Files.newOutputStream(tempFile))) {
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                for (final var bundledTile : getNewestTiles(stores, timeLimit)) {
+                    final var storedTile = bundledTile.storedTile();
+                    final var tileData = bundledTile.store().read(storedTile.key(), Long.MAX_VALUE);
+                    if (tileData == null) {
+                        continue;
+                    }
+                    final var entry = new ZipEntry(ENTRY_PREFIX.concat(storedTile.key()));
+                    entry.setTime(storedTile.storedAt());
+                    entry.setComment(tileData.getHeader());
+                    zip.putNextEntry(entry);
+                    zip.write(tileData.data());
+                    zip.closeEntry();
+                    count++;
+                }
+            }
+            Files.move(tempFile, bundleFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return count;
+    }
+
+    //
+    // A tile can be stored in the tile directory and in the tile archive, e.g.
+    // after the archive was switched on and off again. A ZIP file can't have
+    // two entries with the same name, so only the newest copy is written.
+    //
+    private static Collection<BundledTile> getNewestTiles(@NonNull final List<? extends TileStore> stores, final long timeLimit)
+            throws IOException {
+        final var now = System.currentTimeMillis();
+        final var newestTiles = new LinkedHashMap<String, BundledTile>();
+        for (final var store : stores) {
+            for (final var storedTile : store.list()) {
+                if (now - storedTile.storedAt() > timeLimit) {
+                    // aged tiles would be imported as new tiles, they are revalidated by the exporting cache instead
+                    continue;
+                }
+                newestTiles.merge(storedTile.key(), new BundledTile(store, storedTile),
+                        (tile, otherTile) -> otherTile.storedTile().storedAt() > tile.storedTile().storedAt() ? otherTile : tile);
+            }
+        }
+        return newestTiles.values();
+    }
+
+    /**
+     * Writes all tiles of the bundle file into the store, tiles which are already stored are replaced.
+     *
+     * @return the number of imported tiles
+     */
+    static int read(@NonNull final Path bundleFile, @NonNull final TileStore store) throws IOException {
+        var count = 0;
+        try (var zip = new ZipFile(bundleFile.toFile())) {
+            final var entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final var entry = entries.nextElement();
+                final var name = entry.getName();
+                final var key = name.startsWith(ENTRY_PREFIX) ? name.substring(ENTRY_PREFIX.length()) : "";
+                if (entry.isDirectory() || !KEY_PATTERN.matcher(key).matches()) {
+                    // the key is used as file name, so only names of the expected format are accepted
+                    LOGGER.warn("Ignoring unknown entry '{}' in tile bundle {}", name, bundleFile);
+                    continue;
+                }
+                try (var in = zip.getInputStream(entry)) {
+                    store.write(key, TileData.fromHeader(in.readAllBytes(), entry.getComment()));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private record BundledTile(@NonNull TileStore store, @NonNull TileStore.StoredTile storedTile) { }
+}
@@ -15,178 +15,522 @@
  */
 package app.gpx_animator.core.renderer.cache;
 
-import app.gpx_animator.core.Constants;
 import app.gpx_animator.core.UserException;
-import app.gpx_animator.core.preferences.Preferences;
-
-import java.nio.file.Files;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import org.jetbrains.annotations.NonNls;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+/**
+ * Loads map tiles from a cache in memory, from the cache directory or, if they are not cached, from the map server. The decoded
+ * tiles which were used recently are kept in memory, the least recently used tiles are removed when the memory cache is full. The
+ * tiles in the memory cache are shared and must not be modified. The cache directory holds a file per tile or, if the tile
+ * archive is used, a single archive file with all tiles. Cached tiles which are older than the time limit are revalidated with
+ * the map server, so that they are only downloaded again if they were modified. This class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
 public final class TileCache {
 
     @NonNls
     private static final Logger LOGGER = LoggerFactory.getLogger(TileCache.class);
 
-    private static final String DELETE_ERROR = "Can't delete tile cache file: {}";
+    private static final String DIRECTORY_INDEX_NAME = "tiles"; //NON-NLS
+    private static final String ARCHIVE_INDEX_NAME = "tiles.gpxac"; //NON-NLS
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int MAX_CONNECTIONS_PER_HOST = 2;
+    private static final long MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+    private static final String CACHE_DISABLED_ERROR = "the tile cache directory '%s' can't be used"; //NON-NLS
+
+    private static final TileCache INSTANCE = new TileCache(new TileFetcher(MAX_CONNECTIONS, MAX_CONNECTIONS_PER_HOST), MAX_MEMORY_BYTES);
 
-    private TileCache() throws InstantiationException {
-        throw new InstantiationException("TileCache is a utility class which can't be instantiated!");
+    private final TileFetcher fetcher;
+    private final long maxMemoryBytes;
+    private final Map<String, MemoryTile> tilesInMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<StoreKey, IndexedTileStore> stores = new HashMap<>();
+    private final Map<RasterKey, RasterTileStore> rasterStores = new HashMap<>();
+    private final CacheStatistics statistics = new CacheStatistics("Tile cache in memory"); //NON-NLS
+    private long memoryBytes;
+
+    /**
+     * @param maxMemoryBytes the maximum memory used by the decoded tiles kept in memory
+     */
+    public TileCache(@NonNull final TileFetcher fetcher, final long maxMemoryBytes) {
+        this.fetcher = fetcher;
+        this.maxMemoryBytes = maxMemoryBytes;
     }
 
-    private static final String CACHED_FILE_TYPE = "png"; //NON-NLS
-    private static final String CACHED_FILE_EXTENSION = ".gpxac.".concat(CACHED_FILE_TYPE); //NON-NLS
-    private static MessageDigest messageDigest = null;
+    /**
+     * @return the tile cache shared by all renderings of the application
+     */
+    public static TileCache getInstance() {
+        return INSTANCE;
+    }
 
-    //
-    // Remove all old cached map tiles
-    //
-    // It is possible that the user has pointed our cache to a directory
-    // that holds other files. We will make a sanity check on files before
-    // we delete them.
-    //
-    // The sanity checks are very basic:
-    //  1. Is the length of the name what we expect?
-    //  2. Is the file extension (string suffix) correct?
-    //
-    // If either check fails, log a warning rather than delete the file.
-    //
-    public static void ageCache() {
-        ageCache(Preferences.getTileCacheTimeLimit());
+    public CacheStatistics getStatistics() {
+        return statistics;
     }
 
-    private static void ageCache(final long tileCacheTimeLimit) {
-        final var tileCacheDir = Preferences.getTileCacheDir();
-        if (cachingEnabled(tileCacheDir)) {
-            // Remove any cached tiles that are too old
-            final var cacheDir = new File(tileCacheDir);
-            final var files = cacheDir.listFiles();
-            if (files != null) {
-                for (var cacheEntry : files) {
-                    final var cacheFilename = cacheEntry.getName();
-                    if ((cacheFilename.length() == 74) && (cacheFilename.endsWith(CACHED_FILE_EXTENSION))) {
-                        ageCacheFile(cacheEntry, tileCacheTimeLimit);
-                    } else {
-                        LOGGER.error("Error: Unknown file in tile cache: {}", cacheFilename);
-                    }
-                }
+    /**
+     * Removes the least recently used tiles from the tile cache directory if the cached tiles are bigger than the maximum size.
+     * Tiles which are older than the time limit are kept, they are revalidated with the map server when they are used again.
+     */
+    public void ageCache() {
+        final var settings = TileCacheSettings.fromPreferences();
+        for (final var store : getStores(settings)) {
+            try {
+                store.trim(settings.maxSize());
+            } catch (final IOException e) {
+                LOGGER.error("Error aging the tile cache", e);
             }
         }
+
+        final var rasterStore = getRasterStore(settings);
+        if (rasterStore != null) {
+            rasterStore.age(settings.timeLimit());
+        } else if (cachingEnabled(settings.directory())) {
+            deleteRasterStore(settings.directory());
+        }
     }
 
-    public static void clear() {
-        ageCache(-1);
+    public void clear() {
+        synchronized (tilesInMemory) {
+            tilesInMemory.clear();
+            memoryBytes = 0;
+        }
+        final var settings = TileCacheSettings.fromPreferences();
+        for (final var store : getStores(settings)) {
+            try {
+                store.age(-1);
+            } catch (final IOException e) {
+                LOGGER.error("Error clearing the tile cache", e);
+            }
+        }
+
+        final var rasterStore = getRasterStore(settings);
+        if (rasterStore != null) {
+            rasterStore.age(-1);
+        } else if (cachingEnabled(settings.directory())) {
+            deleteRasterStore(settings.directory());
+        }
     }
 
-    public static long getSize() {
-        final var tileCacheDir = Preferences.getTileCacheDir();
-        final var cacheDir = new File(tileCacheDir);
-        final var files = cacheDir.listFiles();
+    /**
+     * @return the size of the cached tiles in the tile cache directory, which is known without reading the directory
+     */
+    public long getSize() {
+        final var settings = TileCacheSettings.fromPreferences();
         var size = 0L;
-        if (files != null) {
-            for (var cacheEntry : files) {
-                final var cacheFilename = cacheEntry.getName();
-                if ((cacheFilename.length() == 74) && (cacheFilename.endsWith(CACHED_FILE_EXTENSION))) {
-                    size += cacheEntry.length();
+        for (final var store : getStores(settings)) {
+            size += store.getSize();
+        }
+        if (cachingEnabled(settings.directory())) {
+            size += RasterTileStore.getSize(Path.of(settings.directory()));
+        }
+        return size;
+    }
+
+    /**
+     * Starts loading a map tile from the cache or, if it is not cached, downloading it. Tiles are downloaded concurrently, so all
+     * tiles of a map should be requested before waiting for the first one with {@link #await(CompletableFuture)}.
+     */
+    public CompletableFuture<BufferedImage> getTile(final String url, final String userAgent, final TileCacheSettings settings)
+            throws UserException {
+        final var tileInMemory = getTileFromMemory(url, settings.timeLimit());
+        if (tileInMemory != null) {
+            return CompletableFuture.completedFuture(tileInMemory);
+        }
+
+        final var store = getStore(settings.directory(), settings.archive());
+        if (store == null) {
+            return fetcher.fetch(url, userAgent).thenApply(fetchedTile -> putTileInMemory(url, decodeDownloadedTile(url, fetchedTile.tileData())));
+        }
+
+        // If the decoded map tile is in cache, then return it without decoding it again.
+        final var key = hashName(url);
+        final var rasterStore = getRasterStore(settings);
+        if (rasterStore != null) {
+            final var rasterTile = rasterStore.read(key, settings.timeLimit());
+            if (rasterTile != null) {
+                // the cached tile was used, so that it is not removed first when the cache is trimmed
+                try {
+                    store.touch(key);
+                } catch (final IOException e) {
+                    LOGGER.error("Can't record the use of cached tile {}", url, e);
                 }
+                return CompletableFuture.completedFuture(putTileInMemory(url, rasterTile));
             }
         }
-        return size;
+
+        // If map tile is in cache and not older than the time limit, then return it.
+        TileData cachedTile = null;
+        try {
+            cachedTile = store.read(key, Long.MAX_VALUE);
+            if (cachedTile != null && store.isFresh(key, settings.timeLimit())) {
+                final var mapTile = decodeTile(url, cachedTile);
+                if (rasterStore != null) {
+                    rasterStore.write(key, mapTile);
+                }
+                return CompletableFuture.completedFuture(putTileInMemory(url, mapTile));
+            }
+        } catch (final IOException | UserException e) {
+            // Treat as non-fatal, we will notify the user then attempt to
+            // remove the tile we could not read.
+
+            LOGGER.error("Error: Failed to read cached tile {}", url, e);
+            cachedTile = null;
+            try {
+                store.remove(key);
+            } catch (final IOException ex) {
+                LOGGER.error("Can't remove cached tile {}", url, ex);
+            }
+        }
+
+        //
+        // Map tile doesn't exist, is too old or we could not read it, so we need
+        // to download the image tile from the server and then write it into our
+        // cache. A cached tile is downloaded only if it was modified. If the map
+        // server can't be reached, the cached tile is used although it is too
+        // old, its stored time is kept so that it is revalidated next time.
+        //
+        final var revalidatedTile = getRevalidatedTile(cachedTile);
+        final var staleTile = cachedTile;
+        return fetcher.fetch(url, userAgent, revalidatedTile).thenApply(fetchedTile -> {
+            // the tile is decoded before it is written, so that invalid tiles are not cached
+            final var mapTile = decodeDownloadedTile(url, fetchedTile.tileData());
+            try {
+                storeFetchedTile(store, key, fetchedTile, revalidatedTile, settings);
+            } catch (final IOException e) {
+                // Treat as non-fatal. This should revert the behavior to the same
+                // as running without a cache.
+                LOGGER.error("Error writing cached tile {}", url, e);
+            }
+            if (rasterStore != null) {
+                rasterStore.write(key, mapTile);
+            }
+            return putTileInMemory(url, mapTile);
+        }).exceptionally(e -> decodeStaleTile(url, staleTile, e));
     }
 
-    public static BufferedImage getTile(final String url, final String userAgent, final String tileCacheDir, final Long tileCacheTimeLimit)
-        throws UserException {
+    /**
+     * Starts downloading a map tile into the tile cache directory, if it is not cached yet or older than the time limit. The
+     * downloaded tile is checked to be an image, but it is not kept in memory.
+     *
+     * @return whether the tile was downloaded, {@code false} if it was cached already or the map server confirmed that the cached
+     * tile was not modified
+     */
+    public CompletableFuture<Boolean> seedTile(final String url, final String userAgent, final TileCacheSettings settings)
+            throws UserException {
+        final var store = getStore(settings.directory(), settings.archive());
+        if (store == null) {
+            throw new UserException(String.format(CACHE_DISABLED_ERROR, settings.directory()));
+        }
 
-        BufferedImage image;
+        final var key = hashName(url);
+        if (store.isFresh(key, settings.timeLimit())) {
+            return CompletableFuture.completedFuture(false);
+        }
+        TileData cachedTile = null;
+        try {
+            cachedTile = store.read(key, Long.MAX_VALUE);
+        } catch (final IOException e) {
+            LOGGER.error("Error: Failed to read cached tile {}", url, e);
+        }
 
-        if (cachingEnabled(tileCacheDir)) {
+        // a seeded tile which can't be revalidated is kept until the map server can be reached again
+        final var revalidatedTile = getRevalidatedTile(cachedTile);
+        final var staleTile = cachedTile;
+        return fetcher.fetch(url, userAgent, revalidatedTile).thenApply(fetchedTile -> {
+            final var downloaded = !fetchedTile.notModified();
+            if (downloaded) {
+                decodeDownloadedTile(url, fetchedTile.tileData());
+            }
             try {
-                image = cachedGetTile(url, userAgent, tileCacheDir, tileCacheTimeLimit);
-            } catch (final UserException e) {
-                image = unCachedGetTile(url, userAgent);
+                storeFetchedTile(store, key, fetchedTile, revalidatedTile, settings);
+            } catch (final IOException e) {
+                throw new CompletionException(new UserException(String.format("error writing cached tile %s: %s", url, e.getMessage()), e));
             }
-        } else {
-            image = unCachedGetTile(url, userAgent);
+            return downloaded;
+        }).exceptionally(e -> {
+            decodeStaleTile(url, staleTile, e);
+            return false;
+        });
+    }
+
+    /**
+     * Writes the cached tiles to a bundle file, which can be imported into the tile cache of another computer with
+     * {@link #importTiles(Path, TileCacheSettings)}.
+     *
+     * @return the number of tiles in the bundle
+     */
+    public int exportTiles(final Path bundleFile, final TileCacheSettings settings) throws UserException {
+        final var stores = getStores(settings);
+        if (stores.isEmpty()) {
+            throw new UserException(String.format(CACHE_DISABLED_ERROR, settings.directory()));
+        }
+        try {
+            return TileBundle.write(bundleFile, stores, settings.timeLimit());
+        } catch (final IOException e) {
+            throw new UserException(String.format("error writing tile bundle %s: %s", bundleFile, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Imports the tiles of a bundle file, which was written with {@link #exportTiles(Path, TileCacheSettings)}, into the tile cache
+     * directory. The imported tiles are stored again, so their age starts with the import.
+     *
+     * @return the number of imported tiles
+     */
+    public int importTiles(final Path bundleFile, final TileCacheSettings settings) throws UserException {
+        final var store = getStore(settings.directory(), settings.archive());
+        if (store == null) {
+            throw new UserException(String.format(CACHE_DISABLED_ERROR, settings.directory()));
+        }
+        try {
+            final var count = TileBundle.read(bundleFile, store);
+            store.trim(settings.maxSize());
+            return count;
+        } catch (final IOException e) {
+            throw new UserException(String.format("error reading tile bundle %s: %s", bundleFile, e.getMessage()), e);
         }
-        return image;
     }
 
-    private static BufferedImage unCachedGetTile(final String url, final String userAgent) throws UserException {
-        BufferedImage mapTile;
+    /**
+     * Waits for a tile requested with {@link #getTile(String, String, TileCacheSettings)}.
+     */
+    public static BufferedImage await(final CompletableFuture<BufferedImage> tile) throws UserException {
+        try {
+            return tile.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof UserException userException) {
+                throw userException;
+            }
+            throw e;
+        }
+    }
 
-        if (!userAgent.isBlank()) {
-            System.setProperty("http.agent", userAgent);
+    /**
+     * @return the cached tile if the map server can tell whether it was modified, otherwise {@code null} to download it again
+     */
+    @Nullable
+    private static TileData getRevalidatedTile(@Nullable final TileData cachedTile) {
+        return cachedTile != null && cachedTile.isRevalidatable() ? cachedTile : null;
+    }
+
+    //
+    // A tile which was not modified is only written again if the map server
+    // sent new validators for it, otherwise only its stored time is refreshed.
+    //
+    private static void storeFetchedTile(@NonNull final IndexedTileStore store, @NonNull final String key,
+                                         @NonNull final TileFetcher.FetchedTile fetchedTile, @Nullable final TileData revalidatedTile,
+                                         @NonNull final TileCacheSettings settings) throws IOException {
+        final var tileData = fetchedTile.tileData();
+        if (!fetchedTile.notModified()) {
+            store.write(key, tileData);
+            store.trim(settings.maxSize());
+        } else if (revalidatedTile != null && Objects.equals(tileData.etag(), revalidatedTile.etag())
+                && Objects.equals(tileData.lastModified(), revalidatedTile.lastModified())) {
+            store.refresh(key);
         } else {
-            System.setProperty("http.agent", Constants.USER_AGENT);
+            store.write(key, tileData);
+        }
+    }
+
+    @Nullable
+    private BufferedImage getTileFromMemory(@NonNull final String url, final long tileCacheTimeLimit) {
+        synchronized (tilesInMemory) {
+            final var tile = tilesInMemory.get(url);
+            if (tile != null && System.currentTimeMillis() - tile.loadTime() <= tileCacheTimeLimit) {
+                statistics.hit();
+                return tile.image();
+            }
+            if (tile != null) {
+                // the tile is too old, it is loaded again from the cache directory or the map server
+                tilesInMemory.remove(url);
+                memoryBytes -= tile.bytes();
+            }
         }
+        statistics.miss();
+        return null;
+    }
+
+    private BufferedImage putTileInMemory(@NonNull final String url, @NonNull final BufferedImage image) {
+        final var tile = new MemoryTile(image, System.currentTimeMillis(), (long) image.getWidth() * image.getHeight() * Integer.BYTES);
+        synchronized (tilesInMemory) {
+            final var replaced = tilesInMemory.put(url, tile);
+            memoryBytes += tile.bytes() - (replaced != null ? replaced.bytes() : 0);
+            final var iterator = tilesInMemory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+                memoryBytes -= iterator.next().bytes();
+                iterator.remove();
+                statistics.eviction();
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decodeTile(final String url, final TileData tileData) throws UserException {
         try {
-            mapTile = ImageIO.read(URI.create(url).toURL());
+            final var mapTile = ImageIO.read(new ByteArrayInputStream(tileData.data()));
+            if (mapTile == null) {
+                throw new UserException(String.format("could not decode tile %s (%s)", url, tileData.contentType()));
+            }
+            return mapTile;
         } catch (final IOException e) {
-            throw new UserException(String.format("error getting tile %s: %s", url, e.getCause()), e);
+            throw new UserException(String.format("error decoding tile %s: %s", url, e.getMessage()), e);
         }
-        if (mapTile == null) {
-            throw new UserException("could not get tile ".concat(url));
+    }
+
+    /**
+     * @return the cached tile, which is used because it could not be downloaded or revalidated
+     * @throws CompletionException with the cause of the failure if there is no usable cached tile
+     */
+    private static BufferedImage decodeStaleTile(final String url, @Nullable final TileData staleTile, final Throwable failure) {
+        final var exception = failure instanceof CompletionException completionException ? completionException : new CompletionException(failure);
+        if (staleTile == null) {
+            throw exception;
         }
+        try {
+            final var mapTile = decodeTile(url, staleTile);
+            LOGGER.warn("Using the cached tile {}, which is older than the time limit: {}", url, exception.getCause().getMessage());
+            return mapTile;
+        } catch (final UserException e) {
+            exception.addSuppressed(e);
+            throw exception;
+        }
+    }
 
-        return mapTile;
+    private static BufferedImage decodeDownloadedTile(final String url, final TileData tileData) {
+        try {
+            return decodeTile(url, tileData);
+        } catch (final UserException e) {
+            throw new CompletionException(e);
+        }
     }
 
-    private static BufferedImage cachedGetTile(final String url, final String userAgent, final String tileCacheDir,
-        final Long tileCacheTimeLimit) throws UserException {
-        BufferedImage mapTile = null;
-        final var filename = hashName(url).concat(CACHED_FILE_EXTENSION);
-        final var path = tileCacheDir.concat(File.separator).concat(filename);
-        final var cacheFile = new File(path);
+    /**
+     * @return the stores of the tile cache directory, the store of the format which is not used is included if it contains tiles
+     */
+    private List<IndexedTileStore> getStores(final TileCacheSettings settings) {
+        final var stores = new ArrayList<IndexedTileStore>();
+        final var directoryStore = getStore(settings.directory(), false);
+        if (directoryStore != null) {
+            stores.add(directoryStore);
+        }
+        if (settings.archive() || directoryStore != null && ArchiveTileStore.exists(Path.of(settings.directory()))) {
+            final var archiveStore = getStore(settings.directory(), true);
+            if (archiveStore != null) {
+                stores.add(archiveStore);
+            }
+        }
+        return stores;
+    }
 
-        // Age out old tile file in cache directory.
-        ageCacheFile(cacheFile, tileCacheTimeLimit);
+    //
+    // The stores are opened when they are used for the first time and stay
+    // open, an archive which can't be opened is not tried again.
+    //
+    @Nullable
+    private IndexedTileStore getStore(final String tileCacheDir, final boolean tileCacheArchive) {
+        if (!cachingEnabled(tileCacheDir)) {
+            return null;
+        }
 
-        // If map tile is in cache, then return it.
-        if (cacheFile.isFile()) {
+        final var storeKey = new StoreKey(tileCacheDir, tileCacheArchive);
+        synchronized (stores) {
+            if (!stores.containsKey(storeKey)) {
+                stores.put(storeKey, openStore(Path.of(tileCacheDir), tileCacheArchive));
+            }
+            return stores.get(storeKey);
+        }
+    }
+
+    @Nullable
+    private static IndexedTileStore openStore(final Path cacheDir, final boolean tileCacheArchive) {
+        try {
+            final var store = tileCacheArchive ? ArchiveTileStore.open(cacheDir) : new DirectoryTileStore(cacheDir);
             try {
-                mapTile = ImageIO.read(cacheFile);
+                return IndexedTileStore.open(store, cacheDir, tileCacheArchive ? ARCHIVE_INDEX_NAME : DIRECTORY_INDEX_NAME);
             } catch (final IOException e) {
-                // Treat as non-fatal, we will notify the user then attempt to
-                // remove the file we could not read.
+                store.close();
+                throw e;
+            }
+        } catch (final IOException e) {
+            LOGGER.error("Can't open tile cache in '{}'. Fallback to not caching the tiles!", cacheDir, e);
+            return null;
+        }
+    }
+
+    //
+    // The store of decoded tiles is opened again when its size was changed,
+    // a store which can't be opened is not tried again.
+    //
+    @Nullable
+    private RasterTileStore getRasterStore(final TileCacheSettings settings) {
+        if (settings.rasterSize() <= 0 || !cachingEnabled(settings.directory())) {
+            return null;
+        }
 
-                LOGGER.error("Error: Failed to read cached tile {} ({})", url, path, e);
+        final var rasterKey = new RasterKey(settings.directory(), settings.rasterSize());
+        synchronized (rasterStores) {
+            if (!rasterStores.containsKey(rasterKey)) {
+                closeRasterStores(settings.directory());
                 try {
-                    Files.deleteIfExists(cacheFile.toPath());
-                } catch (final IOException ex) {
-                    LOGGER.error(DELETE_ERROR, cacheFile, ex);
+                    rasterStores.put(rasterKey, RasterTileStore.open(Path.of(settings.directory()), settings.rasterSize()));
+                } catch (final IOException e) {
+                    LOGGER.error("Can't open the decoded tiles in '{}'. Fallback to decoding the tiles!", settings.directory(), e);
+                    rasterStores.put(rasterKey, null);
                 }
             }
+            return rasterStores.get(rasterKey);
         }
+    }
 
-        //
-        // If we have been successful in reading our cached map tile then mapTile
-        // will be non-null. If it is null, then we need to download the image
-        // tile from the server and then write it into our cache.
-        //
-        if (mapTile == null) {          // Map tile doesn't exist or we could not read it
-            mapTile = unCachedGetTile(url, userAgent);
+    private void deleteRasterStore(final String tileCacheDir) {
+        synchronized (rasterStores) {
+            closeRasterStores(tileCacheDir);
             try {
-                ImageIO.write(mapTile, CACHED_FILE_TYPE, cacheFile);
+                RasterTileStore.delete(Path.of(tileCacheDir));
             } catch (final IOException e) {
-                // Treat as non-fatal. This should revert the behavior to the same
-                // as running without a cache.
-                LOGGER.error("Error writing cached tile {} ({})", url, path, e);
+                LOGGER.error("Can't delete the decoded tiles in '{}'", tileCacheDir, e);
             }
         }
+    }
 
-        return mapTile;
+    private void closeRasterStores(final String tileCacheDir) {
+        final var iterator = rasterStores.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var rasterStore = iterator.next();
+            if (rasterStore.getKey().tileCacheDir().equals(tileCacheDir)) {
+                iterator.remove();
+                try {
+                    if (rasterStore.getValue() != null) {
+                        rasterStore.getValue().close();
+                    }
+                } catch (final IOException e) {
+                    LOGGER.error("Can't close the decoded tiles in '{}'", tileCacheDir, e);
+                }
+            }
+        }
     }
 
     //
@@ -216,26 +560,10 @@ public final class TileCache {
         return result;
     }
 
-    //
-    // Check age on a file and remove it if it is too old.
-    //
-    private static void ageCacheFile(final File cacheFile, final Long tileCacheTimeLimit) {
-        final var fileDate = new Date(cacheFile.lastModified());
-        var msBetweenDates = new Date().getTime() - fileDate.getTime();
-        if ((msBetweenDates) > tileCacheTimeLimit) {
-            try {
-                Files.deleteIfExists(cacheFile.toPath());
-            } catch (final IOException e) {
-                LOGGER.error(DELETE_ERROR, cacheFile, e);
-            }
-        }
-    }
-
     private static String hashName(final String url) throws UserException {
         try {
-            if (messageDigest == null) {
-                messageDigest = MessageDigest.getInstance("SHA-256");
-            }
+            // message digests are not thread safe, so every call uses its own
+            final var messageDigest = MessageDigest.getInstance("SHA-256");
             return bytesToHex(messageDigest.digest(url.getBytes(StandardCharsets.UTF_8)));
         } catch (final NoSuchAlgorithmException e) {
             throw new UserException("error creating hash name ".concat(url), e);
@@ -254,4 +582,10 @@ public final class TileCache {
         }
         return hexString.toString();
     }
+
+    private record MemoryTile(@NonNull BufferedImage image, long loadTime, long bytes) { }
+
+    private record StoreKey(@NonNull String tileCacheDir, boolean tileCacheArchive) { }
+
+    private record RasterKey(@NonNull String tileCacheDir, long rasterSize) { }
 }
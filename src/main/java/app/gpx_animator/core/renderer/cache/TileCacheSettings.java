@@ -0,0 +1,37 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.preferences.Preferences;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * The settings of the tile cache on disk.
+ *
+ * @param directory  the tile cache directory, the tiles are not cached on disk if it is empty
+ * @param archive    whether all tiles are stored in a single archive file instead of a file per tile
+ * @param timeLimit  the time in milliseconds a cached tile is used
+ * @param maxSize    the maximum size of the cached tiles in bytes, the least recently used tiles are removed to stay below it
+ * @param rasterSize the size of the decoded tiles kept in addition to the cached tiles in bytes, {@code 0} to always decode the
+ *                   cached tiles
+ */
+public record TileCacheSettings(@Nullable String directory, boolean archive, long timeLimit, long maxSize, long rasterSize) {
+
+    public static TileCacheSettings fromPreferences() {
+        return new TileCacheSettings(Preferences.getTileCacheDir(), Preferences.isTileCacheArchive(),
+                Preferences.getTileCacheTimeLimit(), Preferences.getTileCacheMaxSize(), Preferences.getTileCacheRasterSize());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * A map tile exactly as it was sent by the map server, the content is decoded only when the tile is used.
+ *
+ * @param data         the encoded image (PNG, JPEG, ...), must not be modified
+ * @param contentType  the content type sent by the map server, if any
+ * @param etag         the entity tag sent by the map server, if any, to ask the map server whether the tile was modified
+ * @param lastModified the modification time sent by the map server, if any, to ask the map server whether the tile was modified
+ */
+@SuppressFBWarnings(value = {"EI_EXPOSE_REP", "EI_EXPOSE_REP2"}, justification = "The data is not modified after the download")
+public record TileData(@NonNull byte[] data, @Nullable String contentType, @Nullable String etag, @Nullable String lastModified) {
+
+    private static final String SEPARATOR = "\t"; //NON-NLS
+
+    public TileData(@NonNull final byte[] data, @Nullable final String contentType) {
+        this(data, contentType, null, null);
+    }
+
+    /**
+     * @return whether the map server can tell if the tile was modified, so that it does not have to be downloaded again
+     */
+    public boolean isRevalidatable() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * @return the content type and the validators in a single line, which is stored in the tile cache in front of the data
+     */
+    @NonNull
+    String getHeader() {
+        final var header = contentType != null ? contentType : "";
+        if (!isRevalidatable()) {
+            // tiles without validators are stored like by older versions
+            return header;
+        }
+        return String.join(SEPARATOR, header, etag != null ? etag : "", lastModified != null ? lastModified : "");
+    }
+
+    /**
+     * @return the tile with the content type and validators of a header written by {@link #getHeader()}
+     */
+    @NonNull
+    static TileData fromHeader(@NonNull final byte[] data, @Nullable final String header) {
+        final var fields = (header != null ? header : "").split(SEPARATOR, -1);
+        return new TileData(data, emptyToNull(fields[0]),
+                fields.length > 1 ? emptyToNull(fields[1]) : null,
+                fields.length > 2 ? emptyToNull(fields[2]) : null);
+    }
+
+    @Nullable
+    private static String emptyToNull(@NonNull final String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.Constants;
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads map tiles concurrently. The number of connections to the same host is limited, the downloads of a map with
+ * {@code {switch:a,b,c}} in its URL are spread over all of its hosts. Concurrent downloads of the same URL are done only once.
+ * Cached tiles are revalidated with conditional requests, so that they are only downloaded again if they were modified. This
+ * class is thread safe.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class TileFetcher {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(TileFetcher.class);
+
+    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
+    // This regex is tested, and I don't want to rewrite it which may potentionally break it.
+    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final String ETAG = "ETag"; //NON-NLS
+    private static final String LAST_MODIFIED = "Last-Modified"; //NON-NLS
+
+    private final int maxConnectionsPerHost;
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final Map<DownloadKey, CompletableFuture<FetchedTile>> downloads = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> hostConnections = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSwitchOption = new AtomicInteger();
+
+    /**
+     * @param maxConnections        the maximum number of downloads at the same time
+     * @param maxConnectionsPerHost the maximum number of downloads from the same host at the same time
+     */
+    public TileFetcher(final int maxConnections, final int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        final var threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(maxConnections, runnable -> {
+            final var thread = new Thread(runnable, "tile-fetcher-" + threadCount.incrementAndGet()); //NON-NLS
+            thread.setDaemon(true);
+            return thread;
+        });
+        client = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * @return the URL of a map tile, the {@code {switch:a,b,c}} is kept, the tile fetcher chooses the host
+     */
+    public static String getTileUrl(@NonNull final String urlTemplate, @NonNull final String apiKey, final int zoom, final int x, final int y) {
+        return urlTemplate
+                .replace("{zoom}", Integer.toString(zoom)) //NON-NLS
+                .replace("{x}", Integer.toString(x)) //NON-NLS
+                .replace("{y}", Integer.toString(y)) //NON-NLS
+                .replace("{apikey}", apiKey) //NON-NLS
+                .replace("{access_token}", apiKey); //NON-NLS
+    }
+
+    /**
+     * Starts the download of a map tile, or joins the download of the same URL which is already running.
+     *
+     * @param url the URL of the tile, which may contain a {@code {switch:a,b,c}} to choose the host
+     * @return the tile as sent by the map server, completed exceptionally with a {@link UserException} if the download failed
+     */
+    public CompletableFuture<FetchedTile> fetch(@NonNull final String url, @NonNull final String userAgent) {
+        return fetch(url, userAgent, null);
+    }
+
+    /**
+     * Starts the download of a map tile, or joins the download of the same URL with the same validators which is already
+     * running. If a cached tile with an ETag or a modification time is given, the map server sends the tile only if it was
+     * modified since.
+     *
+     * @param cachedTile the cached tile to revalidate, or {@code null} to download the tile unconditionally
+     * @return the tile as sent by the map server, or the cached tile if the map server confirmed that it was not modified,
+     * completed exceptionally with a {@link UserException} if the download failed
+     */
+    public CompletableFuture<FetchedTile> fetch(@NonNull final String url, @NonNull final String userAgent,
+                                                @Nullable final TileData cachedTile) {
+        // a download is joined only with the same conditions, so that every caller gets an answer to its own request
+        final var key = cachedTile != null
+                ? new DownloadKey(url, cachedTile.etag(), cachedTile.lastModified())
+                : new DownloadKey(url, null, null);
+        final var download = new CompletableFuture<FetchedTile>();
+        final var running = downloads.putIfAbsent(key, download);
+        if (running != null) {
+            return running;
+        }
+
+        download.whenComplete((data, error) -> downloads.remove(key, download));
+        executor.execute(() -> {
+            try {
+                download.complete(download(url, userAgent, cachedTile));
+            } catch (final UserException e) {
+                download.completeExceptionally(e);
+            } catch (final RuntimeException e) {
+                download.completeExceptionally(new UserException(String.format("error getting tile %s: %s", url, e), e));
+            }
+        });
+        return download;
+    }
+
+    private FetchedTile download(@NonNull final String url, @NonNull final String userAgent, @Nullable final TileData cachedTile)
+            throws UserException {
+        final var uri = chooseHost(url);
+        final var connections = hostConnections.computeIfAbsent(String.valueOf(uri.getHost()),
+                host -> new Semaphore(maxConnectionsPerHost));
+        try {
+            connections.acquire();
+            try {
+                final var request = HttpRequest.newBuilder(uri)
+                        .timeout(TIMEOUT)
+                        .header("User-Agent", userAgent.isBlank() ? Constants.USER_AGENT : userAgent); //NON-NLS
+                if (cachedTile != null && cachedTile.etag() != null) {
+                    request.header("If-None-Match", cachedTile.etag()); //NON-NLS
+                }
+                if (cachedTile != null && cachedTile.lastModified() != null) {
+                    request.header("If-Modified-Since", cachedTile.lastModified()); //NON-NLS
+                }
+                final var response = client.send(request.GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() == HTTP_NOT_MODIFIED && cachedTile != null) {
+                    LOGGER.debug("Revalidated tile {}", uri);
+                    return new FetchedTile(revalidated(cachedTile, response.headers()), true);
+                }
+                if (response.statusCode() != HTTP_OK) {
+                    throw new UserException(String.format("error getting tile %s: HTTP status %d", uri, response.statusCode()));
+                }
+                LOGGER.debug("Downloaded tile {}", uri);
+                return new FetchedTile(new TileData(response.body(), response.headers().firstValue("Content-Type").orElse(null), //NON-NLS
+                        getValidator(response.headers(), ETAG), getValidator(response.headers(), LAST_MODIFIED)), false);
+            } finally {
+                connections.release();
+            }
+        } catch (final IOException e) {
+            throw new UserException(String.format("error getting tile %s: %s", uri, e), e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserException(String.format("error getting tile %s: %s", uri, e), e);
+        }
+    }
+
+    /**
+     * @return the cached tile, with the validators of the response if the map server sent new ones
+     */
+    private static TileData revalidated(@NonNull final TileData cachedTile, @NonNull final HttpHeaders headers) {
+        final var etag = getValidator(headers, ETAG);
+        final var lastModified = getValidator(headers, LAST_MODIFIED);
+        if ((etag == null || etag.equals(cachedTile.etag())) && (lastModified == null || lastModified.equals(cachedTile.lastModified()))) {
+            return cachedTile;
+        }
+        return new TileData(cachedTile.data(), cachedTile.contentType(),
+                etag != null ? etag : cachedTile.etag(), lastModified != null ? lastModified : cachedTile.lastModified());
+    }
+
+    //
+    // The validators are stored in a single line with the content type, so
+    // values which could break the line are ignored.
+    //
+    @Nullable
+    private static String getValidator(@NonNull final HttpHeaders headers, @NonNull final String name) {
+        return headers.firstValue(name).filter(value -> !value.isBlank() && value.chars().noneMatch(Character::isISOControl)).orElse(null);
+    }
+
+    /**
+     * Replaces the {@code {switch:a,b,c}} in the URL with the next option which has a free connection, or simply the next option
+     * if all hosts are busy (only one switch in the URL is supported).
+     */
+    private URI chooseHost(@NonNull final String url) {
+        final var matcher = SWITCH_PATTERN.matcher(url);
+        if (!matcher.find()) {
+            return URI.create(url);
+        }
+
+        final var options = matcher.group(1).split(",");
+        final var first = Math.floorMod(nextSwitchOption.getAndIncrement(), options.length);
+        for (var i = 0; i < options.length; i++) {
+            final var candidate = URI.create(matcher.replaceFirst(options[(first + i) % options.length]));
+            final var connections = hostConnections.get(String.valueOf(candidate.getHost()));
+            if (connections == null || connections.availablePermits() > 0) {
+                return candidate;
+            }
+        }
+        return URI.create(matcher.replaceFirst(options[first]));
+    }
+
+    /**
+     * A tile as answered by the map server.
+     *
+     * @param tileData    the downloaded tile, or the cached tile with the validators of the response if it was not modified
+     * @param notModified whether the map server confirmed that the cached tile was not modified
+     */
+    public record FetchedTile(@NonNull TileData tileData, boolean notModified) { }
+
+    private record DownloadKey(@NonNull String url, @Nullable String etag, @Nullable String lastModified) { }
+}
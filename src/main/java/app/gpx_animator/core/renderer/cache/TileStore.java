@@ -0,0 +1,90 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Keeps downloaded map tiles on disk. The tiles are identified by a key, the hex encoded SHA-256 hash of their URL.
+ * Implementations are thread safe.
+ */
+interface TileStore extends Closeable {
+
+    /**
+     * @return the stored tile, or {@code null} if the tile is not stored or was stored longer ago than the time limit (the aged
+     * tile is kept in the store, so that it can be revalidated)
+     */
+    @Nullable
+    TileData read(@NonNull String key, long timeLimit) throws IOException;
+
+    /**
+     * @return the size of the stored tile on disk in bytes
+     */
+    long write(@NonNull String key, @NonNull TileData tileData) throws IOException;
+
+    /**
+     * Marks the tile as stored now without writing it again, after the map server confirmed that it was not modified.
+     */
+    void refresh(@NonNull String key) throws IOException;
+
+    void remove(@NonNull String key) throws IOException;
+
+    /**
+     * Removes all tiles which were stored longer ago than the time limit, a negative time limit removes all tiles.
+     */
+    void age(long timeLimit) throws IOException;
+
+    /**
+     * Reclaims the disk space of removed tiles, if the store does not do this when the tiles are removed. The space is reclaimed
+     * when more than half of the store is unused or when the store is bigger than the maximum size.
+     *
+     * @param maxSize the maximum size of the store on disk in bytes
+     */
+    void compact(long maxSize) throws IOException;
+
+    /**
+     * @return the size and the time the tile was stored, without reading the tile, or {@code null} if the tile is not stored
+     */
+    @Nullable
+    StoredTile getStoredTile(@NonNull String key) throws IOException;
+
+    /**
+     * Lists all stored tiles, which may have to read the whole store.
+     */
+    List<StoredTile> list() throws IOException;
+
+    /**
+     * @return the size of the store on disk in bytes
+     */
+    long getSize();
+
+    /**
+     * @return the size on disk in bytes which is not used by the stored tiles, e.g. by removed tiles which were not reclaimed
+     * yet, which is known without reading the store
+     */
+    long getOverheadSize();
+
+    /**
+     * @param size     the size of the tile on disk in bytes
+     * @param storedAt the time the tile was stored in milliseconds since the epoch
+     */
+    record StoredTile(@NonNull String key, long size, long storedAt) { }
+}
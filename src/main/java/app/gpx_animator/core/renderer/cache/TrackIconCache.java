@@ -0,0 +1,117 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.data.TrackIcon;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import javax.imageio.ImageIO;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the decoded and (if needed) mirrored track icons, so every icon is read only once and not for every frame. The cache is
+ * shared by all renderings of the application. Icon files are read again when they were modified.
+ */
+public final class TrackIconCache {
+
+    private static final int MAX_ICONS = 64;
+
+    private static final CacheStatistics STATISTICS = new CacheStatistics("Track icon cache"); //NON-NLS
+
+    private static final Map<IconKey, BufferedImage> ICONS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<IconKey, BufferedImage> eldest) {
+            final var remove = size() > MAX_ICONS;
+            if (remove) {
+                STATISTICS.eviction();
+            }
+            return remove;
+        }
+    };
+
+    private TrackIconCache() throws InstantiationException {
+        throw new InstantiationException("TrackIconCache is a utility class which can't be instantiated!");
+    }
+
+    /**
+     * @return the image of a built-in track icon, in premultiplied ARGB format
+     */
+    public static BufferedImage getIcon(@NonNull final TrackIcon trackIcon, final boolean mirrored) throws IOException {
+        final var resource = requireNonNull(TrackIconCache.class.getResource(trackIcon.getFilename()));
+        return getIcon(new IconKey(trackIcon.getFilename(), 0, mirrored), resource);
+    }
+
+    /**
+     * @return the image of a track icon file, in premultiplied ARGB format
+     */
+    public static BufferedImage getIcon(@NonNull final File trackIconFile, final boolean mirrored) throws IOException {
+        final var key = new IconKey(trackIconFile.getAbsolutePath(), trackIconFile.lastModified(), mirrored);
+        return getIcon(key, trackIconFile.toURI().toURL());
+    }
+
+    public static CacheStatistics getStatistics() {
+        return STATISTICS;
+    }
+
+    private static BufferedImage getIcon(@NonNull final IconKey key, @NonNull final URL url) throws IOException {
+        synchronized (ICONS) {
+            final var icon = ICONS.get(key);
+            if (icon != null) {
+                STATISTICS.hit();
+                return icon;
+            }
+        }
+
+        STATISTICS.miss();
+        final var image = ImageIO.read(url);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + url); //NON-NLS
+        }
+        final var icon = prepare(image, key.mirrored());
+
+        synchronized (ICONS) {
+            ICONS.put(key, icon);
+        }
+        return icon;
+    }
+
+    private static BufferedImage prepare(@NonNull final BufferedImage image, final boolean mirrored) {
+        var source = image;
+        if (mirrored) {
+            final var tx = AffineTransform.getScaleInstance(-1, 1);
+            tx.translate(-image.getWidth(null), 0);
+            final var op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+            source = op.filter(image, null);
+        }
+
+        final var icon = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        final var graphics = icon.createGraphics();
+        graphics.drawImage(source, 0, 0, null);
+        graphics.dispose();
+        return icon;
+    }
+
+    private record IconKey(@NonNull String name, long lastModified, boolean mirrored) { }
+}
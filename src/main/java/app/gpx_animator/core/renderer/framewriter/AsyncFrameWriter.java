@@ -0,0 +1,226 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.jetbrains.annotations.NonNls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decouples the renderer from the encoder: frames are put into a bounded queue and written to the wrapped frame writer by a
+ * separate encoder thread. If the queue is full, {@link #addFrame(BufferedImage)} blocks until the encoder caught up.
+ * Frames must not be modified after they have been added. A failure of the encoder, including an {@link Error}, is thrown
+ * on the rendering thread by the next call of {@code addFrame} or by {@link #close()}.
+ */
+@SuppressWarnings("PMD.BeanMembersShouldSerialize") // This class is not serializable
+public final class AsyncFrameWriter implements FrameWriter {
+
+    @NonNls
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncFrameWriter.class);
+
+    private static final QueuedFrame END_OF_STREAM = new QueuedFrame(new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR), () -> { });
+    private static final Runnable NOTHING = () -> { };
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final FrameWriter frameWriter;
+    private final int queueSize;
+    private final BlockingQueue<QueuedFrame> queue;
+    private final Thread encoderThread;
+
+    private volatile Throwable failure;
+    private volatile long encoderIdleNanos;
+
+    private long frameCount;
+    private long queueOccupancySum;
+    private int maxQueueOccupancy;
+    private long rendererBlockedNanos;
+    private boolean failureReported;
+    private boolean closed;
+
+    public AsyncFrameWriter(@NonNull final FrameWriter frameWriter, final int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("The queue size must be at least 1: " + queueSize);
+        }
+        this.frameWriter = frameWriter;
+        this.queueSize = queueSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.encoderThread = new Thread(this::encode, "encoder"); //NON-NLS
+        this.encoderThread.setDaemon(true);
+        this.encoderThread.start();
+    }
+
+    @Override
+    public void addFrame(@NonNull final BufferedImage bi) throws UserException {
+        addFrame(bi, NOTHING);
+    }
+
+    @Override
+    public void addFrame(@NonNull final BufferedImage bi, @NonNull final Runnable afterWrite) throws UserException {
+        checkFailure();
+
+        final var queueOccupancy = queue.size();
+        frameCount++;
+        queueOccupancySum += queueOccupancy;
+        maxQueueOccupancy = Math.max(maxQueueOccupancy, queueOccupancy);
+
+        final var queuedFrame = new QueuedFrame(bi, afterWrite);
+        if (!queue.offer(queuedFrame)) {
+            final var start = System.nanoTime();
+            final boolean added;
+            try {
+                added = put(queuedFrame);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException(e.getMessage(), e);
+            }
+            rendererBlockedNanos += System.nanoTime() - start;
+            if (!added) {
+                checkFailure();
+                throw new UserException("The encoder stopped unexpectedly"); //NON-NLS
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (put(END_OF_STREAM)) {
+                encoderThread.join();
+            }
+        } catch (final InterruptedException e) {
+            encoderThread.interrupt();
+            Thread.currentThread().interrupt();
+        } finally {
+            frameWriter.close();
+        }
+
+        LOGGER.info("Encoder queue: {}", getStatistics());
+
+        final var exception = failure;
+        if (exception != null && !failureReported) {
+            if (exception instanceof Error error) {
+                throw error;
+            }
+            throw exception instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(exception);
+        }
+    }
+
+    /**
+     * Returns the queue statistics so far. A mostly full queue (the renderer had to wait) means the job is limited by encoding,
+     * a mostly empty queue (the encoder had to wait) means the job is limited by rendering.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(frameCount, queueSize,
+                frameCount == 0 ? 0.0 : (double) queueOccupancySum / frameCount, maxQueueOccupancy,
+                TimeUnit.NANOSECONDS.toMillis(rendererBlockedNanos), TimeUnit.NANOSECONDS.toMillis(encoderIdleNanos));
+    }
+
+    /**
+     * Waits until the frame was put into the queue, but not for an encoder thread which stopped.
+     *
+     * @return {@code false} if the encoder thread stopped before the frame was put into the queue
+     */
+    private boolean put(@NonNull final QueuedFrame queuedFrame) throws InterruptedException {
+        while (!queue.offer(queuedFrame, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!encoderThread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkFailure() throws UserException {
+        final var exception = failure;
+        if (exception != null) {
+            failureReported = true;
+        }
+        if (exception instanceof UserException userException) {
+            throw userException;
+        } else if (exception instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (exception instanceof Error error) {
+            throw error;
+        }
+    }
+
+    //
+    // After a failure the encoder keeps taking the frames from the queue
+    // without writing them, so that the renderer never waits for it.
+    //
+    @SuppressWarnings({"PMD.AvoidCatchingGenericException", "PMD.AvoidCatchingThrowable"}) // passed on to the renderer thread
+    private void encode() {
+        try {
+            var firstFrame = true;
+            while (true) {
+                final var start = System.nanoTime();
+                final var queuedFrame = queue.take();
+                if (!firstFrame) { // waiting for the first frame is part of the preparation, not of the rendering
+                    encoderIdleNanos += System.nanoTime() - start;
+                }
+                firstFrame = false;
+
+                if (queuedFrame == END_OF_STREAM) { // NOPMD -- identity comparison is intended
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        frameWriter.addFrame(queuedFrame.image());
+                    }
+                } catch (final Throwable e) {
+                    failure = e;
+                } finally {
+                    queuedFrame.afterWrite().run();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Throwable e) {
+            failure = e;
+        }
+    }
+
+    private record QueuedFrame(@NonNull BufferedImage image, @NonNull Runnable afterWrite) { }
+
+    public record Statistics(long frames, int queueSize, double averageQueueOccupancy, int maxQueueOccupancy,
+                             long rendererBlockedMillis, long encoderIdleMillis) {
+
+        /**
+         * @return {@code true} if the renderer had to wait for the encoder longer than the encoder had to wait for the renderer
+         */
+        public boolean isEncodingBound() {
+            return rendererBlockedMillis > encoderIdleMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "%d frames, average occupancy %.1f of %d (max %d), renderer blocked %d ms, encoder idle %d ms, limited by %s" //NON-NLS
+                    .formatted(frames, averageQueueOccupancy, queueSize, maxQueueOccupancy, rendererBlockedMillis, encoderIdleMillis,
+                            isEncodingBound() ? "encoding" : "rendering"); //NON-NLS
+        }
+    }
+}
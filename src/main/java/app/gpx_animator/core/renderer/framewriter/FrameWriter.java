@@ -23,6 +23,21 @@ public interface FrameWriter {
 
     void addFrame(BufferedImage bi) throws UserException;
 
+    /**
+     * Adds a frame and runs the callback as soon as the frame was written and the image is not used by the frame writer anymore.
+     * Frame writers which write asynchronously call it from the thread which is writing the frame.
+     *
+     * @param bi         the frame to add
+     * @param afterWrite called after the frame was written, even if writing failed
+     */
+    default void addFrame(BufferedImage bi, Runnable afterWrite) throws UserException {
+        try {
+            addFrame(bi);
+        } finally {
+            afterWrite.run();
+        }
+    }
+
     void close();
 
 }
@@ -19,6 +19,7 @@ import app.gpx_animator.core.configuration.Configuration;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import static app.gpx_animator.core.util.RenderUtil.getGraphics;
@@ -45,4 +46,10 @@ public final class BackgroundColorPlugin implements RendererPlugin {
         graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
     }
 
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle region,
+                                 final int mapWidth, final int mapHeight) {
+        renderBackground(image);
+    }
+
 }
@@ -21,6 +21,7 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
@@ -32,6 +33,10 @@ public final class BackgroundImagePlugin implements RendererPlugin {
 
     private final BufferedImage backgroundImage;
 
+    private BufferedImage scaledImage;
+    private int scaledWidth;
+    private int scaledHeight;
+
     public BackgroundImagePlugin(@NonNull final Configuration configuration) throws UserException {
         final var file = configuration.getBackgroundImage();
         if (file != null && file.exists()) {
@@ -57,14 +62,39 @@ public final class BackgroundImagePlugin implements RendererPlugin {
             return;
         }
 
-        final var scaledImage = backgroundImage.getWidth() <= image.getWidth() && backgroundImage.getHeight() <= image.getHeight()
-                ? backgroundImage
-                : Scalr.resize(Scalr.resize(backgroundImage,
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, image.getWidth()),
-                Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, image.getHeight());
+        final var scaled = getScaledImage(image.getWidth(), image.getHeight());
+        final var graphics = getGraphics(image);
+        graphics.drawImage(scaled, 0, 0, scaled.getWidth(), scaled.getHeight(), null);
+    }
 
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle region,
+                                 final int mapWidth, final int mapHeight) {
+        if (backgroundImage == null) {
+            // no image defined
+            return;
+        }
+
+        final var scaled = getScaledImage(mapWidth, mapHeight);
         final var graphics = getGraphics(image);
-        graphics.drawImage(scaledImage, 0, 0, scaledImage.getWidth(), scaledImage.getHeight(), null);
+        graphics.drawImage(scaled, -region.x, -region.y, scaled.getWidth(), scaled.getHeight(), null);
+    }
+
+    /**
+     * @return the background image, scaled down if it is bigger than the map (the scaled image is kept for the next call)
+     */
+    private BufferedImage getScaledImage(final int width, final int height) {
+        if (backgroundImage.getWidth() <= width && backgroundImage.getHeight() <= height) {
+            return backgroundImage;
+        }
+        if (scaledImage == null || scaledWidth != width || scaledHeight != height) {
+            scaledImage = Scalr.resize(Scalr.resize(backgroundImage,
+                    Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_WIDTH, width),
+                    Scalr.Method.ULTRA_QUALITY, Scalr.Mode.FIT_TO_HEIGHT, height);
+            scaledWidth = width;
+            scaledHeight = height;
+        }
+        return scaledImage;
     }
 
 }
@@ -18,27 +18,29 @@ package app.gpx_animator.core.renderer.plugins;
 import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.cache.TileCache;
+import app.gpx_animator.core.renderer.cache.TileCacheSettings;
+import app.gpx_animator.core.renderer.cache.TileFetcher;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 
-import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.RescaleOp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 // Plugins are loaded using reflection
 @SuppressWarnings("unused")
 public final class BackgroundMapPlugin implements RendererPlugin {
 
-    @SuppressWarnings({"RegExpAnonymousGroup", "RegExpRedundantEscape"})
-    // This regex is tested, and I don't want to rewrite it which may potentionally break it.
-    private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
-
     private final ResourceBundle resourceBundle = Preferences.getResourceBundle();
 
     private final String tmsUrlTemplate;
@@ -53,6 +55,7 @@ public final class BackgroundMapPlugin implements RendererPlugin {
     private double maxY;
 
     private RenderingContext context;
+    private FrameBufferPool frameBufferPool = new FrameBufferPool(0);
 
     public BackgroundMapPlugin(@NonNull final Configuration configuration) {
         tmsUrlTemplate = configuration.getTmsUrlTemplate();
@@ -76,6 +79,12 @@ public final class BackgroundMapPlugin implements RendererPlugin {
         this.context = renderingContext;
     }
 
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The pool is shared on purpose")
+    public void setFrameBufferPool(@NonNull final FrameBufferPool frameBufferPool) {
+        this.frameBufferPool = frameBufferPool;
+    }
+
     @Override
     public int getOrder() {
         return -1_000;
@@ -83,13 +92,25 @@ public final class BackgroundMapPlugin implements RendererPlugin {
 
     @Override
     public void renderBackground(@NonNull final BufferedImage image) throws UserException {
+        renderTiles(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()), image.getHeight(), true);
+    }
+
+    @Override
+    public void renderBackground(@NonNull final BufferedImage image, @NonNull final Rectangle region,
+                                 final int mapWidth, final int mapHeight) throws UserException {
+        renderTiles(image, region, mapHeight, false);
+    }
+
+    /**
+     * Draws the map tiles which are visible in the region of the background.
+     */
+    private void renderTiles(@NonNull final BufferedImage image, @NonNull final Rectangle region, final int mapHeight,
+                             final boolean showProgress) throws UserException {
         if (tmsUrlTemplate == null || tmsUrlTemplate.isBlank() || backgroundMapVisibility <= 0.0 || zoom == null) {
             // no map defined or map should not be visible
             return;
         }
 
-        final var ga = (Graphics2D) image.getGraphics();
-
         final var tileDblX = xToTileX(zoom, minX);
         final var tileX = (int) Math.floor(tileDblX);
         final var offsetX = (int) Math.floor(256.0 * (tileX - tileDblX));
@@ -101,58 +122,86 @@ public final class BackgroundMapPlugin implements RendererPlugin {
         final var maxXtile = (int) Math.floor(xToTileX(zoom, maxX));
         final var maxYtile = (int) Math.floor(yToTileY(zoom, maxY));
 
-        final var total = (maxXtile - tileX + 1) * (tileY - maxYtile + 1);
+        // only the tiles which are visible in the region
+        final var firstX = Math.max(tileX, tileX + Math.floorDiv(region.x - offsetX, 256));
+        final var lastX = Math.min(maxXtile, tileX + Math.floorDiv(region.x + region.width - 1 - offsetX, 256));
+        final var firstY = Math.min(tileY, tileY - Math.floorDiv(mapHeight - offsetY - (region.y + region.height - 1) + 255, 256));
+        final var lastY = Math.max(maxYtile, tileY - Math.floorDiv(mapHeight - offsetY - region.y + 255, 256));
+
+        final var total = Math.max(0, lastX - firstX + 1) * Math.max(0, firstY - lastY + 1);
         var i = 0;
 
-        final var m = SWITCH_PATTERN.matcher(tmsUrlTemplate); // note that only one switch in pattern is supported
-        final var options = m.find() ? m.group(1).split(",") : null;
+        final var tileCache = TileCache.getInstance();
+        final var tileCacheSettings = TileCacheSettings.fromPreferences();
 
-        final var tileCacheDir = Preferences.getTileCacheDir();
-        final var tileCacheTimeLimit = Preferences.getTileCacheTimeLimit();
+        final var compositor = new MapTileCompositor(backgroundMapVisibility);
 
-        for (var x = tileX; x <= maxXtile; x++) {
-            for (var y = tileY; y >= maxYtile; y--) {
-                if (context.isCancelled1()) {
-                    return;
-                }
+        // all tiles are requested first, so that they are downloaded concurrently
+        final var tiles = new ArrayList<CompletableFuture<BufferedImage>>(total);
+        for (var y = firstY; y >= lastY; y--) {
+            for (var x = firstX; x <= lastX; x++) {
+                final var url = TileFetcher.getTileUrl(tmsUrlTemplate, tmsApiKey, zoom, x, y);
+                tiles.add(tileCache.getTile(url, tmsUserAgent, tileCacheSettings));
+            }
+        }
 
-                i++;
+        // a row of tiles is composited while the tiles of the next row are awaited
+        final var bands = new ArrayList<ForkJoinTask<?>>();
+        try {
+            for (var y = firstY; y >= lastY; y--) {
+                final var band = new ArrayList<PlacedTile>(lastX - firstX + 1);
+                for (var x = firstX; x <= lastX; x++) {
+                    if (context.isCancelled1()) {
+                        return;
+                    }
 
-                var url = tmsUrlTemplate
-                        .replace("{zoom}", Integer.toString(zoom)) //NON-NLS
-                        .replace("{x}", Integer.toString(x)) //NON-NLS
-                        .replace("{y}", Integer.toString(y)) //NON-NLS
-                        .replace("{apikey}", tmsApiKey) //NON-NLS
-                        .replace("{access_token}", tmsApiKey); //NON-NLS
+                    i++;
 
-                if (options != null) {
-                    final var sb = new StringBuilder();
-                    final var matcher = SWITCH_PATTERN.matcher(url);
-                    if (matcher.find()) {
-                        matcher.appendReplacement(sb, options[i % options.length]);
+                    if (showProgress) {
+                        context.setProgress1((int) (100.0 * i / total), String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
                     }
-                    matcher.appendTail(sb);
-                    url = sb.toString();
-                }
 
-                context.setProgress1((int) (100.0 * i / total), String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+                    band.add(new PlacedTile(TileCache.await(tiles.get(i - 1)),
+                            256 * (x - tileX) + offsetX - region.x,
+                            mapHeight - (256 * (tileY - y) + offsetY) - region.y));
+                }
+                bands.add(ForkJoinPool.commonPool().submit(() -> compositeBand(image, compositor, band)));
+            }
+        } finally {
+            bands.forEach(ForkJoinTask::join);
+        }
 
-                final var tile = TileCache.getTile(url, tmsUserAgent, tileCacheDir, tileCacheTimeLimit);
+        if (showProgress) {
+            context.setProgress1(100, String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
+        }
+    }
 
+    /**
+     * Writes a row of tiles into the background, each tile is limited to its 256 x 256 pixels.
+     */
+    private void compositeBand(@NonNull final BufferedImage image, @NonNull final MapTileCompositor compositor,
+                               @NonNull final List<PlacedTile> band) {
+        for (final var placedTile : band) {
+            var tile = placedTile.tile();
+            if (tile.getWidth() > 256 || tile.getHeight() > 256) {
+                tile = tile.getSubimage(0, 0, Math.min(256, tile.getWidth()), Math.min(256, tile.getHeight()));
+            }
+            if (MapTileCompositor.isSupported(tile)) {
+                compositor.composite(image, tile, placedTile.x(), placedTile.y());
+            } else {
                 // convert to RGB format
-                final var tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
-                tile1.getGraphics().drawImage(tile, 0, 0, null);
-
-                ga.drawImage(tile1,
-                        new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null),
-                        256 * (x - tileX) + offsetX,
-                        image.getHeight() - (256 * (tileY - y) + offsetY));
+                final var rgbTile = frameBufferPool.acquireCleared(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
+                final var graphics = rgbTile.createGraphics();
+                graphics.drawImage(tile, 0, 0, null);
+                graphics.dispose();
+                compositor.composite(image, rgbTile, placedTile.x(), placedTile.y());
+                frameBufferPool.release(rgbTile);
             }
         }
-
-        context.setProgress1(100, String.format(resourceBundle.getString("map.loadingtiles.progress"), i, total));
     }
 
+    private record PlacedTile(@NonNull BufferedImage tile, int x, int y) { }
+
     private static double yToTileY(final int zoom, final double minY) {
         return latToTileY(zoom, yToLat(minY));
     }
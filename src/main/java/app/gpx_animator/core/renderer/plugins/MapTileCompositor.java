@@ -0,0 +1,164 @@
+/*
+ *  Copyright Contributors to the GPX Animator project.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package app.gpx_animator.core.renderer.plugins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Writes map tiles directly into the pixels of the background map, blended with white according to the visibility of the map.
+ * The tiles are read, blended and written in a single pass row by row, without an intermediate image. A tile with transparent
+ * pixels looks as if it was drawn on a black background first. This class is thread safe, tiles which don't overlap may be
+ * composited at the same time.
+ */
+final class MapTileCompositor {
+
+    private static final int MAX_VALUE = 255;
+
+    private final int[] visibilityTable = new int[MAX_VALUE + 1];
+
+    MapTileCompositor(final float visibility) {
+        for (var value = 0; value <= MAX_VALUE; value++) {
+            // rounded like the RescaleOp which was used before, so that the map looks the same
+            visibilityTable[value] = Math.min(MAX_VALUE, Math.max(0, (int) (value * visibility + (1f - visibility) * MAX_VALUE)));
+        }
+    }
+
+    /**
+     * @return whether the pixels of the tile can be read by the compositor, other tiles have to be converted to
+     * {@link BufferedImage#TYPE_INT_RGB} first
+     */
+    static boolean isSupported(@NonNull final BufferedImage tile) {
+        return tile.getType() == BufferedImage.TYPE_INT_RGB || tile.getColorModel() instanceof IndexColorModel || isRgb(tile);
+    }
+
+    /**
+     * Writes the part of the tile which is inside the target image, the top left corner of the tile is at the given position.
+     */
+    void composite(@NonNull final BufferedImage target, @NonNull final BufferedImage tile, final int x, final int y) {
+        final var fromX = Math.max(0, x);
+        final var fromY = Math.max(0, y);
+        final var width = Math.min(target.getWidth(), x + tile.getWidth()) - fromX;
+        final var height = Math.min(target.getHeight(), y + tile.getHeight()) - fromY;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        final var palette = tile.getColorModel() instanceof IndexColorModel indexColorModel ? getPalette(indexColorModel) : null;
+        final var rgb = new int[width];
+        final var samples = new int[width * tile.getRaster().getNumBands()];
+        final var targetSamples = new int[width * 3];
+        for (var row = fromY; row < fromY + height; row++) {
+            readRow(tile, palette, fromX - x, row - y, rgb, samples);
+            for (var i = 0; i < width; i++) {
+                final var pixel = rgb[i];
+                rgb[i] = 0xFF000000 // NOPMD -- Ignore magic number literal
+                        | visibilityTable[pixel >> 16 & MAX_VALUE] << 16
+                        | visibilityTable[pixel >> 8 & MAX_VALUE] << 8
+                        | visibilityTable[pixel & MAX_VALUE];
+            }
+            writeRow(target, fromX, row, rgb, targetSamples);
+        }
+    }
+
+    private static void readRow(@NonNull final BufferedImage tile, final int[] palette, final int x, final int y,
+                                @NonNull final int[] rgb, @NonNull final int[] samples) {
+        final var raster = tile.getRaster();
+        final var width = rgb.length;
+        if (tile.getType() == BufferedImage.TYPE_INT_RGB) {
+            raster.getDataElements(x, y, width, 1, rgb);
+        } else if (palette != null) {
+            raster.getSamples(x, y, width, 1, 0, samples);
+            for (var i = 0; i < width; i++) {
+                rgb[i] = palette[samples[i]];
+            }
+        } else if (isRgb(tile)) {
+            raster.getPixels(x, y, width, 1, samples);
+            final var bands = raster.getNumBands();
+            for (var i = 0; i < width; i++) {
+                final var offset = i * bands;
+                final var alpha = bands == 4 ? samples[offset + 3] : MAX_VALUE; // NOPMD -- Ignore magic number literal
+                rgb[i] = onBlack(samples[offset], alpha) << 16 | onBlack(samples[offset + 1], alpha) << 8 | onBlack(samples[offset + 2], alpha);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported tile type: " + tile.getType());
+        }
+    }
+
+    private static void writeRow(@NonNull final BufferedImage target, final int x, final int y,
+                                 @NonNull final int[] rgb, @NonNull final int[] samples) {
+        final var raster = target.getRaster();
+        final var width = rgb.length;
+        if (target.getType() == BufferedImage.TYPE_INT_RGB) {
+            raster.setDataElements(x, y, width, 1, rgb);
+        } else if (isRgb(target) && raster.getNumBands() == 3) { // NOPMD -- Ignore magic number literal
+            for (var i = 0; i < width; i++) {
+                samples[i * 3] = rgb[i] >> 16 & MAX_VALUE;
+                samples[i * 3 + 1] = rgb[i] >> 8 & MAX_VALUE;
+                samples[i * 3 + 2] = rgb[i] & MAX_VALUE;
+            }
+            raster.setPixels(x, y, width, 1, samples);
+        } else {
+            target.setRGB(x, y, width, 1, rgb, 0, width);
+        }
+    }
+
+    /**
+     * @return the colors of the palette as they look on a black background
+     */
+    private static int[] getPalette(@NonNull final IndexColorModel indexColorModel) {
+        final var palette = new int[1 << indexColorModel.getPixelSize()];
+        final var colors = new int[indexColorModel.getMapSize()];
+        indexColorModel.getRGBs(colors);
+        for (var i = 0; i < colors.length; i++) {
+            final var alpha = colors[i] >>> 24;
+            palette[i] = onBlack(colors[i] >> 16 & MAX_VALUE, alpha) << 16
+                    | onBlack(colors[i] >> 8 & MAX_VALUE, alpha) << 8
+                    | onBlack(colors[i] & MAX_VALUE, alpha);
+        }
+        return palette;
+    }
+
+    /**
+     * @return whether the image has 8 bit red, green, blue and optionally alpha samples which are not premultiplied
+     */
+    private static boolean isRgb(@NonNull final BufferedImage image) {
+        final var colorModel = image.getColorModel();
+        if (!(colorModel instanceof ComponentColorModel) || !colorModel.getColorSpace().isCS_sRGB() || colorModel.isAlphaPremultiplied()) {
+            return false;
+        }
+        final var bands = image.getRaster().getNumBands();
+        if (bands != 3 && bands != 4) { // NOPMD -- Ignore magic number literal
+            return false;
+        }
+        for (final var size : colorModel.getComponentSize()) {
+            if (size != 8) { // NOPMD -- Ignore magic number literal
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the color value as it is drawn with the alpha value on black, rounded like the Java 2D loops
+     */
+    private static int onBlack(final int value, final int alpha) {
+        return (value * alpha + MAX_VALUE / 2) / MAX_VALUE;
+    }
+}
@@ -19,6 +19,7 @@ import app.gpx_animator.core.UserException;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.data.Photo;
 import app.gpx_animator.core.preferences.Preferences;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
@@ -41,6 +42,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -83,6 +85,7 @@ public final class PhotoPlugin implements RendererPlugin {
     private Metadata metadata;
     private FrameWriter frameWriter;
     private RenderingContext context;
+    private FrameBufferPool frameBufferPool = new FrameBufferPool(0);
 
     public PhotoPlugin(@NonNull final Configuration configuration) {
         this.fps = configuration.getFps();
@@ -109,6 +112,12 @@ public final class PhotoPlugin implements RendererPlugin {
         this.context = renderingContext;
     }
 
+    @Override
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The pool is shared on purpose")
+    public void setFrameBufferPool(@NonNull final FrameBufferPool frameBufferPool) {
+        this.frameBufferPool = frameBufferPool;
+    }
+
     private Map<Long, List<Photo>> loadPhotos(@Nullable final File directory) {
         if (directory == null) {
             return new HashMap<>();
@@ -216,7 +225,7 @@ public final class PhotoPlugin implements RendererPlugin {
 
         final var photoImage = readPhoto(photo, frameImage.getWidth() - 20, frameImage.getHeight() - 20);
         if (photoImage != null) {
-            final var bi2 = Utils.deepCopy(frameImage);
+            final var bi2 = copyFrame(frameImage);
             final var g2d = bi2.createGraphics();
             final var posX = (frameImage.getWidth() - photoImage.getWidth()) / 2;
             final var posY = (frameImage.getHeight() - photoImage.getHeight()) / 2;
@@ -229,13 +238,18 @@ public final class PhotoPlugin implements RendererPlugin {
             final var inOutFrames = (int) Math.round(photoAnimationDuration * fps / 1_000);
             final var allFrames = frames + (2 * inOutFrames) + (2 * freezeFrames);
 
+            final var release = frameBufferPool.releaseAfter(bi2, frames);
+            if (frames <= 0) {
+                frameBufferPool.release(bi2);
+            }
+
             try {
                 renderFreezeFramesBefore(frameImage, freezeFrames, allFrames, filename);
                 renderAnimationIn(frameImage, photoImage, inOutFrames, freezeFrames, allFrames, filename, marker);
                 for (long frame = 0; frame < frames; frame++) {
                     final var pct = (int) (100.0 * (freezeFrames + inOutFrames + frame) / allFrames);
                     context.setProgress1(pct, String.format(resourceBundle.getString(PHOTOS_PROGRESS_RENDERING), filename));
-                    frameWriter.addFrame(bi2);
+                    frameWriter.addFrame(bi2, release);
                 }
                 renderAnimationOut(frameImage, photoImage, inOutFrames, freezeFrames + inOutFrames + frames, allFrames, filename, marker);
                 renderFreezeFramesAfter(frameImage, freezeFrames, freezeFrames + inOutFrames * 2 + frames, allFrames, filename);
@@ -313,13 +327,19 @@ public final class PhotoPlugin implements RendererPlugin {
         final var upperLeftX = upperLeftImageX - distanceUpperLeftToMarkerX;
         final var upperLeftY = upperLeftImageY - distanceUpperLeftToMarkerY;
 
-        final var bi2 = Utils.deepCopy(frameImage);
+        final var bi2 = copyFrame(frameImage);
         final var g2d = bi2.createGraphics();
 
         g2d.drawImage(scaledImage, upperLeftX, upperLeftY, null);
         g2d.dispose();
 
-        frameWriter.addFrame(bi2);
+        frameWriter.addFrame(bi2, () -> frameBufferPool.release(bi2));
+    }
+
+    private BufferedImage copyFrame(@NonNull final BufferedImage frameImage) {
+        final var width = frameImage.getWidth();
+        final var height = frameImage.getHeight();
+        return Utils.copyRegion(frameImage, new Rectangle(width, height), frameBufferPool.acquire(width, height, frameImage.getType()));
     }
 
     private static BufferedImage addBorder(@NonNull final BufferedImage photoImage) {
@@ -18,6 +18,7 @@ package app.gpx_animator.core.renderer.plugins;
 import app.gpx_animator.core.configuration.Configuration;
 import app.gpx_animator.core.preferences.Preferences;
 import app.gpx_animator.core.util.RenderUtil;
+import app.gpx_animator.core.util.Utils;
 import app.gpx_animator.ui.UIMode;
 import app.gpx_animator.ui.swing.PreviewDialog;
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -72,7 +73,8 @@ public final class PreviewPlugin implements RendererPlugin {
         }
 
         final var sameSize = image.getWidth() == width && image.getHeight() == height;
-        final var previewImage = sameSize ? image : RenderUtil.scaleImage(image, width, height);
+        // the frame is reused for later frames, so the preview needs its own copy
+        final var previewImage = sameSize ? Utils.deepCopy(image) : RenderUtil.scaleImage(image, width, height);
 
         if (preview == null) {
             preview = new PreviewDialog(this, previewImage);
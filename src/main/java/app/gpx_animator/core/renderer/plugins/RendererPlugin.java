@@ -16,12 +16,14 @@
 package app.gpx_animator.core.renderer.plugins;
 
 import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.FrameBufferPool;
 import app.gpx_animator.core.renderer.Metadata;
 import app.gpx_animator.core.renderer.RenderingContext;
 import app.gpx_animator.core.renderer.framewriter.FrameWriter;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
@@ -92,6 +94,16 @@ public interface RendererPlugin {
      */
     default void setRenderingContext(@NonNull RenderingContext renderingContext) { }
 
+    /**
+     * Overwrite this method, if you want to reuse images instead of
+     * allocating new ones for every frame. Borrowed images must be released
+     * when they are not used anymore, frames handed over to the frame writer
+     * should be released after they were written.
+     *
+     * @param frameBufferPool the pool of reusable images
+     */
+    default void setFrameBufferPool(@NonNull FrameBufferPool frameBufferPool) { }
+
     /**
      * This render method is called to render the background image of the
      * video. If the video does not use the moving map feature, the background
@@ -104,6 +116,26 @@ public interface RendererPlugin {
      */
     default void renderBackground(@NonNull BufferedImage image) throws UserException { }
 
+    /**
+     * This render method is called instead of {@link #renderBackground(BufferedImage)}
+     * if the map of a moving map video is too big to be kept in memory. The
+     * map is split into tiles and this method is called for every tile when
+     * it is shown for the first time. The image has the size of the region,
+     * the region is the part of the whole background (with the size of the
+     * map) which is shown by the image.
+     *
+     * Background plugins should overwrite this method to support big maps.
+     *
+     * @param image     the part of the background to be modified
+     * @param region    the part of the background shown by the image
+     * @param mapWidth  the width of the whole background
+     * @param mapHeight the height of the whole background
+     * @throws UserException error to be shown to the user
+     */
+    @SuppressWarnings("RedundantThrows") // implementations throw this exception
+    default void renderBackground(@NonNull BufferedImage image, @NonNull Rectangle region, int mapWidth, int mapHeight)
+            throws UserException { }
+
     /**
      * This render method is called to render one frame of the video. The size
      * of this frame is equal to the resolution of the resulting video.
@@ -17,8 +17,12 @@ package app.gpx_animator.core.util;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.text.Collator;
 
 public final class Utils {
@@ -38,6 +42,49 @@ public final class Utils {
         return b;
     }
 
+    /**
+     * Copies a region of an image into a new image of the same type. Images with interleaved bytes (like the frames of the renderer)
+     * are copied row by row without going through the graphics pipeline.
+     */
+    public static BufferedImage copyRegion(final BufferedImage bi, final Rectangle region) {
+        return copyRegion(bi, region, new BufferedImage(region.width, region.height, bi.getType()));
+    }
+
+    /**
+     * Copies a region of an image into an existing image of the same type and the size of the region, for example an image
+     * borrowed from a pool or a part of a bigger image. All pixels of the target image are overwritten.
+     */
+    public static BufferedImage copyRegion(final BufferedImage bi, final Rectangle region, final BufferedImage copy) {
+        final var source = bi.getRaster();
+        final var target = copy.getRaster();
+
+        if (source.getSampleModel() instanceof PixelInterleavedSampleModel sourceModel
+                && target.getSampleModel() instanceof PixelInterleavedSampleModel targetModel
+                && source.getDataBuffer() instanceof DataBufferByte sourceBuffer
+                && target.getDataBuffer() instanceof DataBufferByte targetBuffer
+                && sourceBuffer.getNumBanks() == 1 && sourceModel.getPixelStride() == targetModel.getPixelStride()) {
+            final var pixelStride = sourceModel.getPixelStride();
+            final var sourceData = sourceBuffer.getData();
+            final var targetData = targetBuffer.getData();
+            final var rowLength = region.width * pixelStride;
+            final var x = region.x - source.getSampleModelTranslateX();
+            final var y = region.y - source.getSampleModelTranslateY();
+            final var targetX = -target.getSampleModelTranslateX();
+            final var targetY = -target.getSampleModelTranslateY();
+            for (var row = 0; row < region.height; row++) {
+                final var sourceOffset = sourceBuffer.getOffset() + (y + row) * sourceModel.getScanlineStride() + x * pixelStride;
+                final var targetOffset = targetBuffer.getOffset() + (targetY + row) * targetModel.getScanlineStride() + targetX * pixelStride;
+                System.arraycopy(sourceData, sourceOffset, targetData, targetOffset, rowLength);
+            }
+        } else {
+            final var g = (Graphics2D) copy.getGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(bi, -region.x, -region.y, null);
+            g.dispose();
+        }
+        return copy;
+    }
+
     @SuppressWarnings({"PMD.CompareObjectsWithEquals", "PMD.UseEqualsToCompareStrings", "StringEquality"})
     @SuppressFBWarnings("ES_COMPARING_PARAMETER_STRING_WITH_EQ") //NON-NLS
     public static boolean isEqual(final String source, final String target) {
@@ -68,6 +68,11 @@ public final class CommandLineConfigurationFactory {
 
     private final boolean gui;
 
+    private Integer seedMinZoom;
+    private Integer seedMaxZoom;
+    private File tileCacheExport;
+    private File tileCacheImport;
+
 
     private final Configuration configuration;
 
@@ -126,6 +131,14 @@ public final class CommandLineConfigurationFactory {
                             forcedPointIntervalList.add(s1.isEmpty() ? null : Long.valueOf(s1)); // NOPMD -- null = not set
                         }
                         case FPS -> cfg.fps(Double.parseDouble(args[++i]));
+                        case ENCODER_QUEUE_SIZE -> cfg.encoderQueueSize(Integer.parseInt(args[++i]));
+                        case SEED_TILE_CACHE -> {
+                            final var zoomRange = args[++i].split("-", 2);
+                            seedMinZoom = Integer.valueOf(zoomRange[0].trim());
+                            seedMaxZoom = zoomRange.length > 1 ? Integer.valueOf(zoomRange[1].trim()) : seedMinZoom;
+                        }
+                        case EXPORT_TILE_CACHE -> tileCacheExport = new File(args[++i]);
+                        case IMPORT_TILE_CACHE -> tileCacheImport = new File(args[++i]);
                         case GPS_TIMEOUT -> cfg.gpsTimeout(Long.parseLong(args[++i]));
                         case GUI -> {
                             if (GraphicsEnvironment.isHeadless()) {
@@ -175,6 +188,7 @@ public final class CommandLineConfigurationFactory {
                         case PHOTO_TIME -> cfg.photoTime(Long.parseLong(args[++i]));
                         case PHOTO_ANIMATION_DURATION -> cfg.photoAnimationDuration(Long.parseLong(args[++i]));
                         case PREVIEW_LENGTH -> cfg.previewLength(Long.parseLong(args[++i]));
+                        case RENDER_THREADS -> cfg.renderThreads(Integer.parseInt(args[++i]));
                         case SKIP_IDLE -> cfg.skipIdle(Boolean.parseBoolean(args[++i]));
                         case PRE_DRAW_TRACK -> cfg.preDrawTrack(true);
                         case PRE_DRAW_TRACK_COLOR -> preDrawTrackColorList.add((Color.decode(args[++i])));
@@ -421,4 +435,27 @@ public final class CommandLineConfigurationFactory {
         return gui;
     }
 
+    /**
+     * @return whether the tile cache is seeded, exported or imported instead of rendering
+     */
+    public boolean isTileCacheTask() {
+        return seedMinZoom != null || tileCacheExport != null || tileCacheImport != null;
+    }
+
+    public Integer getSeedMinZoom() {
+        return seedMinZoom;
+    }
+
+    public Integer getSeedMaxZoom() {
+        return seedMaxZoom;
+    }
+
+    public File getTileCacheExport() {
+        return tileCacheExport;
+    }
+
+    public File getTileCacheImport() {
+        return tileCacheImport;
+    }
+
 }
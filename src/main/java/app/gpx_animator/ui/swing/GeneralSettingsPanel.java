@@ -141,13 +141,15 @@ abstract class GeneralSettingsPanel extends JPanel {
     private final JSpinner maxLonSpinner;
     private final JSpinner minLatSpinner;
     private final JSpinner gpsTimeoutSpinner;
+    private final JSpinner renderThreadsSpinner;
+    private final JSpinner encoderQueueSizeSpinner;
 
     private transient List<MapTemplate> mapTemplateList;
 
     @SuppressWarnings("checkstyle:MethodLength") // TODO Refactor when doing the redesign task https://github.com/gpx-animator/gpx-animator/issues/60
     GeneralSettingsPanel() {
         var rowCounter = 0;
-        final var maxRows = 47;
+        final var maxRows = 49;
 
         setBorder(new EmptyBorder(5, 5, 5, 5));
         final var gridBagLayout = new GridBagLayout();
@@ -1406,6 +1408,46 @@ abstract class GeneralSettingsPanel extends JPanel {
         add(gpsTimeoutSpinner, gbcGpsTimeoutSpinner);
         gpsTimeoutSpinner.addChangeListener(changeListener);
 
+        final var lblRenderThreads = new JLabel(resourceBundle.getString("ui.panel.generalsettings.renderthreads.label"));
+        final var gbcLabelRenderThreads = new GridBagConstraints();
+        gbcLabelRenderThreads.anchor = GridBagConstraints.LINE_END;
+        gbcLabelRenderThreads.insets = new Insets(0, 0, 5, 5);
+        gbcLabelRenderThreads.gridx = 0;
+        gbcLabelRenderThreads.gridy = ++rowCounter;
+        add(lblRenderThreads, gbcLabelRenderThreads);
+
+        renderThreadsSpinner = new JSpinner();
+        renderThreadsSpinner.setToolTipText(Option.RENDER_THREADS.getHelp());
+        renderThreadsSpinner.setModel(new EmptyNullSpinnerModel(0, 0, 64, 1, true, -1));
+        renderThreadsSpinner.setEditor(new EmptyZeroNumberEditor(renderThreadsSpinner, Integer.class));
+        final var gbcRenderThreadsSpinner = new GridBagConstraints();
+        gbcRenderThreadsSpinner.fill = GridBagConstraints.HORIZONTAL;
+        gbcRenderThreadsSpinner.insets = new Insets(0, 0, 5, 0);
+        gbcRenderThreadsSpinner.gridx = 1;
+        gbcRenderThreadsSpinner.gridy = rowCounter;
+        add(renderThreadsSpinner, gbcRenderThreadsSpinner);
+        renderThreadsSpinner.addChangeListener(changeListener);
+
+        final var lblEncoderQueueSize = new JLabel(resourceBundle.getString("ui.panel.generalsettings.encoderqueuesize.label"));
+        final var gbcLabelEncoderQueueSize = new GridBagConstraints();
+        gbcLabelEncoderQueueSize.anchor = GridBagConstraints.LINE_END;
+        gbcLabelEncoderQueueSize.insets = new Insets(0, 0, 5, 5);
+        gbcLabelEncoderQueueSize.gridx = 0;
+        gbcLabelEncoderQueueSize.gridy = ++rowCounter;
+        add(lblEncoderQueueSize, gbcLabelEncoderQueueSize);
+
+        encoderQueueSizeSpinner = new JSpinner();
+        encoderQueueSizeSpinner.setToolTipText(Option.ENCODER_QUEUE_SIZE.getHelp());
+        encoderQueueSizeSpinner.setModel(new EmptyNullSpinnerModel(0, 0, 64, 1, false, -1));
+        encoderQueueSizeSpinner.setEditor(new EmptyZeroNumberEditor(encoderQueueSizeSpinner, Integer.class));
+        final var gbcEncoderQueueSizeSpinner = new GridBagConstraints();
+        gbcEncoderQueueSizeSpinner.fill = GridBagConstraints.HORIZONTAL;
+        gbcEncoderQueueSizeSpinner.insets = new Insets(0, 0, 5, 0);
+        gbcEncoderQueueSizeSpinner.gridx = 1;
+        gbcEncoderQueueSizeSpinner.gridy = rowCounter;
+        add(encoderQueueSizeSpinner, gbcEncoderQueueSizeSpinner);
+        encoderQueueSizeSpinner.addChangeListener(changeListener);
+
         rowCounter++; // increment rowCounter before check, because it started at index 0
         if (rowCounter != maxRows) {
             throw new IllegalStateException(
@@ -1553,11 +1595,15 @@ abstract class GeneralSettingsPanel extends JPanel {
         commentLocationComboBox.setSelectedItem(c.getCommentPosition() != null ? c.getCommentPosition() : Position.BOTTOM_CENTER);
         speedUnitComboBox.setSelectedItem(c.getSpeedUnit() != null ? c.getSpeedUnit() : SpeedUnit.KMH);
         gpsTimeoutSpinner.setValue(c.getGpsTimeout());
+        renderThreadsSpinner.setValue(c.getRenderThreads());
+        encoderQueueSizeSpinner.setValue(c.getEncoderQueueSize());
     }
 
 
     public void buildConfiguration(final Configuration.Builder builder, final boolean replacePlaceholders) {
         final var tailDuration = (Long) tailDurationSpinner.getValue();
+        final var renderThreads = (Integer) renderThreadsSpinner.getValue();
+        final var encoderQueueSize = (Integer) encoderQueueSizeSpinner.getValue();
         final var tmsItem = tmsUrlTemplateComboBox.getSelectedItem();
         final var tmsUrlTemplate = tmsItem instanceof MapTemplate mapTemplate ? mapTemplate.url() : (String) tmsItem;
         final var attribution = generateAttributionText(replacePlaceholders, tmsItem);
@@ -1614,7 +1660,9 @@ abstract class GeneralSettingsPanel extends JPanel {
                 .attribution(attribution)
                 .attributionPosition((Position) attributionLocationComboBox.getSelectedItem())
                 .speedUnit(speedUnit)
-                .gpsTimeout((Long) gpsTimeoutSpinner.getValue());
+                .gpsTimeout((Long) gpsTimeoutSpinner.getValue())
+                .renderThreads(renderThreads == null ? Configuration.DEFAULT_RENDER_THREADS : renderThreads)
+                .encoderQueueSize(encoderQueueSize == null ? 0 : encoderQueueSize);
     }
 
     private String generateAttributionText(final boolean replacePlaceholders, final Object tmsItem) {
@@ -28,6 +28,7 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import javax.swing.border.EmptyBorder;
@@ -41,6 +42,8 @@ public class PreferencesDialog extends EscapeDialog {
     @Serial
     private static final long serialVersionUID = -8767146323054030406L;
 
+    private static final long MEGABYTE = 1024L * 1024;
+
     public PreferencesDialog(final JFrame owner) {
         super(owner);
 
@@ -64,14 +67,25 @@ public class PreferencesDialog extends EscapeDialog {
         tileCacheTimeLimitSpinner.setModel(new DurationSpinnerModel());
         tileCacheTimeLimitSpinner.setEditor(new DurationEditor(tileCacheTimeLimitSpinner));
 
-        final var tileCacheSize = TileCache.getSize();
+        final var tileCacheMaxSizeSpinner = new JSpinner();
+        tileCacheMaxSizeSpinner.setToolTipText(resourceBundle.getString("ui.dialog.preferences.cachemaxsize.tooltip"));
+        tileCacheMaxSizeSpinner.setModel(new SpinnerNumberModel(Long.valueOf(1024), Long.valueOf(1), null, Long.valueOf(256)));
+
+        final var tileCacheRasterSizeSpinner = new JSpinner();
+        tileCacheRasterSizeSpinner.setToolTipText(resourceBundle.getString("ui.dialog.preferences.cacherastersize.tooltip"));
+        tileCacheRasterSizeSpinner.setModel(new SpinnerNumberModel(Long.valueOf(0), Long.valueOf(0), null, Long.valueOf(256)));
+
+        final var tileCacheArchive = new JCheckBox();
+        tileCacheArchive.setToolTipText(resourceBundle.getString("ui.dialog.preferences.cachearchive.tooltip"));
+
+        final var tileCacheSize = TileCache.getInstance().getSize();
         final var tileCacheSizeLabel = new JLabel(FormatUtil.readableFileSize(tileCacheSize));
         final var tileCacheDeleteButton = new JButton(resourceBundle.getString("ui.dialog.preferences.cachesize.delete"));
         tileCacheDeleteButton.setEnabled(tileCacheSize > 0);
         tileCacheDeleteButton.addActionListener(event -> {
             tileCacheDeleteButton.setEnabled(false);
             new Thread(() -> {
-                TileCache.clear();
+                TileCache.getInstance().clear();
                 SwingUtilities.invokeLater(() -> tileCacheSizeLabel.setText("0"));
             }).start();
         });
@@ -105,6 +119,9 @@ public class PreferencesDialog extends EscapeDialog {
         saveButton.addActionListener(e -> SwingUtilities.invokeLater(() -> {
             Preferences.setTileCacheDir(tileCachePathSelector.getFilename());
             Preferences.setTileCacheTimeLimit((Long) tileCacheTimeLimitSpinner.getValue());
+            Preferences.setTileCacheMaxSize(((Number) tileCacheMaxSizeSpinner.getValue()).longValue() * MEGABYTE);
+            Preferences.setTileCacheRasterSize(((Number) tileCacheRasterSizeSpinner.getValue()).longValue() * MEGABYTE);
+            Preferences.setTileCacheArchive(tileCacheArchive.isSelected());
             Preferences.setTrackColorRandom(trackColorRandom.isSelected());
             Preferences.setTrackColorDefault(trackColorSelector.getColor());
             Preferences.setPreviewEnabled(enablePreview.isSelected());
@@ -115,30 +132,39 @@ public class PreferencesDialog extends EscapeDialog {
         setContentPane(FormBuilder.create()
                 .padding(new EmptyBorder(20, 20, 20, 20))
                 .columns("right:p, 5dlu, fill:[200dlu, pref]") //NON-NLS
-                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
+                .rows("p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 5dlu, p, 10dlu, p") //NON-NLS
 
                 .addSeparator(resourceBundle.getString("ui.dialog.preferences.cache.separator")).xyw(1, 1, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachepath.label")).xy(1, 3)
                 .add(tileCachePathSelector).xy(3, 3)
                 .add(resourceBundle.getString("ui.dialog.preferences.cachetimelimit.label")).xy(1, 5)
                 .add(tileCacheTimeLimitSpinner).xy(3, 5)
-                .add(resourceBundle.getString("ui.dialog.preferences.cachesize.label")).xy(1, 7)
-                .add(tileCacheSizePanel).xy(3, 7)
-
-                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 9, 3)
-                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 11)
-                .add(trackColorPanel).xy(3, 11)
-
-                .addSeparator(resourceBundle.getString("ui.dialog.preferences.rendering")).xyw(1, 13, 3)
-                .add(resourceBundle.getString("ui.dialog.preferences.rendering.enablepreview")).xy(1, 15)
-                .add(enablePreview).xy(3, 15)
-
-                .addSeparator("").xyw(1, 17, 3)
-                .addBar(cancelButton, saveButton).xyw(1, 19, 3, CellConstraints.RIGHT, CellConstraints.FILL)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachemaxsize.label")).xy(1, 7)
+                .add(tileCacheMaxSizeSpinner).xy(3, 7)
+                .add(resourceBundle.getString("ui.dialog.preferences.cacherastersize.label")).xy(1, 9)
+                .add(tileCacheRasterSizeSpinner).xy(3, 9)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachearchive.label")).xy(1, 11)
+                .add(tileCacheArchive).xy(3, 11)
+                .add(resourceBundle.getString("ui.dialog.preferences.cachesize.label")).xy(1, 13)
+                .add(tileCacheSizePanel).xy(3, 13)
+
+                .addSeparator(resourceBundle.getString("ui.dialog.preferences.track")).xyw(1, 15, 3)
+                .add(resourceBundle.getString("ui.dialog.preferences.track.color")).xy(1, 17)
+                .add(trackColorPanel).xy(3, 17)
+
+                .addSeparator(resourceBundle.getString("ui.dialog.preferences.rendering")).xyw(1, 19, 3)
+                .add(resourceBundle.getString("ui.dialog.preferences.rendering.enablepreview")).xy(1, 21)
+                .add(enablePreview).xy(3, 21)
+
+                .addSeparator("").xyw(1, 23, 3)
+                .addBar(cancelButton, saveButton).xyw(1, 25, 3, CellConstraints.RIGHT, CellConstraints.FILL)
                 .build());
 
         tileCachePathSelector.setFilename(Preferences.getTileCacheDir());
         tileCacheTimeLimitSpinner.setValue(Preferences.getTileCacheTimeLimit());
+        tileCacheMaxSizeSpinner.setValue(Preferences.getTileCacheMaxSize() / MEGABYTE);
+        tileCacheRasterSizeSpinner.setValue(Preferences.getTileCacheRasterSize() / MEGABYTE);
+        tileCacheArchive.setSelected(Preferences.isTileCacheArchive());
 
         pack();
         setLocationRelativeTo(owner);
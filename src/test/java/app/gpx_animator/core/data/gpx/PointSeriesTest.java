@@ -0,0 +1,117 @@
+package app.gpx_animator.core.data.gpx;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PointSeriesTest {
+
+    private static PointSeries createSeries(final long... times) {
+        final var builder = PointSeries.builder();
+        for (final var time : times) {
+            builder.add(time, time, -time, 0.0, 0.0, null, "p" + time);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void floorAndCeilingIndex() {
+        // given a series with three points
+        final var series = createSeries(10, 20, 30);
+
+        // then the lookups find the nearest points
+        assertEquals(-1, series.floorIndex(9));
+        assertEquals(0, series.floorIndex(10));
+        assertEquals(1, series.floorIndex(29));
+        assertEquals(2, series.floorIndex(100));
+        assertEquals(0, series.ceilingIndex(0));
+        assertEquals(1, series.ceilingIndex(11));
+        assertEquals(2, series.ceilingIndex(30));
+        assertEquals(-1, series.ceilingIndex(31));
+    }
+
+    @Test
+    void pointsWithSameTimeAreMovedForward() {
+        // when adding points with the same time
+        final var series = createSeries(10, 10, 10, 11);
+
+        // then no point is lost and every time is unique
+        assertEquals(4, series.size());
+        assertEquals(10, series.getTime(0));
+        assertEquals(11, series.getTime(1));
+        assertEquals(12, series.getTime(2));
+        assertEquals(13, series.getTime(3));
+        assertEquals("p11", series.getLabel(3));
+    }
+
+    @Test
+    void unsortedPointsAreSortedByTime() {
+        // when adding points out of order
+        final var series = createSeries(30, 10, 20);
+
+        // then the points are sorted together with their values
+        assertEquals(10, series.getFirstTime());
+        assertEquals(30, series.getLastTime());
+        assertEquals(20.0, series.getX(1));
+        assertEquals(-20.0, series.getY(1));
+        assertEquals("p20", series.getLabel(1));
+    }
+
+    @Test
+    void slice() {
+        // given a series with four points
+        final var series = createSeries(10, 20, 30, 40);
+
+        // when slicing
+        final var slice = series.slice(1, 3);
+
+        // then only the points in the range are kept
+        assertEquals(2, slice.size());
+        assertEquals(20, slice.getFirstTime());
+        assertEquals(30, slice.getLastTime());
+        assertSame(series, series.slice(0, 4));
+        assertTrue(series.slice(2, 2).isEmpty());
+    }
+
+    @Test
+    void translate() {
+        // given a series with one point
+        final var series = createSeries(10);
+
+        // when translating into image space
+        final var translated = series.translate(5.0, 0.0, 2.0);
+
+        // then the coordinates are moved and scaled, the time is unchanged
+        assertEquals(10.0, translated.getX(0));
+        assertEquals(20.0, translated.getY(0));
+        assertEquals(10, translated.getTime(0));
+        assertEquals(10.0, series.getX(0));
+    }
+
+    @Test
+    void missingSpeedIsNull() {
+        // given a series without speeds
+        final var series = createSeries(10);
+
+        // then the speed is not available
+        assertNull(series.getSpeed(0));
+        assertNull(series.toGpxPoint(0).getSpeed());
+    }
+
+    @Test
+    void toPath() {
+        // given a series with four points
+        final var series = createSeries(10, 20, 30, 40);
+
+        // when creating a line through the middle points
+        final var path = series.toPath(1, 2);
+
+        // then the line starts and ends at these points
+        assertEquals(20.0, path.getBounds2D().getMinX());
+        assertEquals(30.0, path.getBounds2D().getMaxX());
+        assertEquals(30.0, path.getCurrentPoint().getX());
+    }
+}
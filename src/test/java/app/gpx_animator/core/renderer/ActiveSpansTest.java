@@ -0,0 +1,61 @@
+package app.gpx_animator.core.renderer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActiveSpansTest {
+
+    @Test
+    void overlappingSpansAreMerged() {
+        // when adding unsorted spans which partly overlap
+        final var spans = ActiveSpans.builder()
+                .add(50, 60)
+                .add(10, 20)
+                .add(15, 30)
+                .add(12, 14)
+                .add(30, 40)
+                .build();
+
+        // then the overlapping spans are merged
+        assertEquals(2, spans.size());
+        assertTrue(spans.isActive(10));
+        assertTrue(spans.isActive(40));
+        assertFalse(spans.isActive(41));
+        assertTrue(spans.isActive(50));
+        assertTrue(spans.isActive(60));
+        assertFalse(spans.isActive(61));
+        assertFalse(spans.isActive(9));
+    }
+
+    @Test
+    void nextStart() {
+        // given two spans
+        final var spans = ActiveSpans.builder().add(10, 20).add(50, 60).build();
+
+        // then the start of the next span is found
+        assertEquals(10, spans.getNextStart(0));
+        assertEquals(50, spans.getNextStart(10));
+        assertEquals(50, spans.getNextStart(21));
+        assertEquals(Long.MAX_VALUE, spans.getNextStart(50));
+        assertEquals(Long.MAX_VALUE, spans.getNextStart(100));
+    }
+
+    @Test
+    void manySpans() {
+        // when adding many spans in reverse order
+        final var builder = ActiveSpans.builder();
+        for (var i = 100_000; i > 0; i--) {
+            builder.add(i * 10L, i * 10L + 5);
+        }
+        final var spans = builder.build();
+
+        // then all of them are kept
+        assertEquals(100_000, spans.size());
+        assertTrue(spans.isActive(500_005));
+        assertFalse(spans.isActive(500_006));
+        assertEquals(500_010, spans.getNextStart(500_006));
+    }
+}
@@ -0,0 +1,78 @@
+package app.gpx_animator.core.renderer;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FrameBufferPoolTest {
+
+    @Test
+    void releasedImagesAreReused() {
+        // given a pool with a released image
+        final var pool = new FrameBufferPool(2);
+        final var image = pool.acquire(10, 20, BufferedImage.TYPE_3BYTE_BGR);
+        pool.release(image);
+
+        // when acquiring images of the same and of a different size
+        final var sameSize = pool.acquire(10, 20, BufferedImage.TYPE_3BYTE_BGR);
+        final var otherSize = pool.acquire(20, 10, BufferedImage.TYPE_3BYTE_BGR);
+
+        // then only the image of the same size is reused
+        assertSame(image, sameSize);
+        assertNotSame(image, otherSize);
+        assertEquals(1, pool.getStatistics().getHits());
+        assertEquals(2, pool.getStatistics().getMisses());
+    }
+
+    @Test
+    void idleImagesAreLimited() {
+        // given a pool which keeps one idle image
+        final var pool = new FrameBufferPool(1);
+        final var first = pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+        final var second = pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+
+        // when releasing two images
+        pool.release(first);
+        pool.release(second);
+
+        // then the second image is dropped
+        assertEquals(1, pool.getStatistics().getEvictions());
+        assertSame(first, pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+    }
+
+    @Test
+    void releaseAfterAllOwners() {
+        // given an image with two owners
+        final var pool = new FrameBufferPool(1);
+        final var image = pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR);
+        final var release = pool.releaseAfter(image, 2);
+
+        // when the first owner releases the image, it is still in use
+        release.run();
+        assertNotSame(image, pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+
+        // then the image is back in the pool after the second owner released it
+        release.run();
+        assertSame(image, pool.acquire(10, 10, BufferedImage.TYPE_3BYTE_BGR));
+    }
+
+    @Test
+    void acquireCleared() {
+        // given a released image with some content
+        final var pool = new FrameBufferPool(1);
+        final var image = pool.acquire(10, 10, BufferedImage.TYPE_4BYTE_ABGR);
+        image.setRGB(5, 5, 0xFFFFFFFF);
+        pool.release(image);
+
+        // when acquiring a cleared image
+        final var cleared = pool.acquireCleared(10, 10, BufferedImage.TYPE_4BYTE_ABGR);
+
+        // then all pixels are transparent again
+        assertSame(image, cleared);
+        assertEquals(0, cleared.getRGB(5, 5));
+    }
+}
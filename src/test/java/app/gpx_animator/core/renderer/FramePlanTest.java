@@ -0,0 +1,91 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.gpx.PointSeries;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FramePlanTest {
+
+    private static PointSeries createSeries(final long... times) {
+        final var builder = PointSeries.builder();
+        for (final var time : times) {
+            builder.add(time, 0.0, 0.0, 0.0, 0.0, null, null);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void lookupsMatchSearchingTheSeries() {
+        // given two segments with random point times and some waypoints
+        final var random = new Random(42);
+        final var first = new long[500];
+        final var second = new long[300];
+        var time = 0L;
+        for (var i = 0; i < first.length; i++) {
+            time += random.nextInt(5_000);
+            first[i] = time;
+        }
+        time += 60_000;
+        for (var i = 0; i < second.length; i++) {
+            time += random.nextInt(5_000);
+            second[i] = time;
+        }
+        final var segments = List.of(createSeries(first), createSeries(second));
+        final var waypoints = createSeries(first[10], first[200], second[5], second[299]);
+
+        // when planning the frames
+        final var frames = 400;
+        final var speedup = (double) time / frames;
+        final var tailDuration = 30_000L;
+        final var plan = new FramePlan(List.of(segments), waypoints, frames, 0, 1.0, speedup / 1_000, tailDuration);
+
+        // then every lookup gives the same result as a search in the series
+        for (var frame = 0; frame <= frames; frame++) {
+            final var frameTime = plan.getTime(frame);
+            for (var segment = 0; segment < segments.size(); segment++) {
+                final var points = segments.get(segment);
+                final var pointIndex = points.floorIndex(frameTime);
+                assertEquals(pointIndex, plan.getPointIndex(0, segment, frame));
+                assertEquals(pointIndex == -1 ? -1 : points.ceilingIndex(points.getTime(pointIndex) - tailDuration),
+                        plan.getTailStartIndex(0, segment, frame));
+                if (frame > 0) {
+                    final var prevIndex = points.floorIndex(plan.getTime(frame - 1));
+                    assertEquals(prevIndex == -1 ? points.ceilingIndex(plan.getTime(frame - 1)) : prevIndex,
+                            plan.getNewPartStartIndex(0, segment, frame));
+                }
+            }
+            final var ceilingIndex = waypoints.ceilingIndex(frameTime);
+            assertEquals(ceilingIndex == -1 ? waypoints.size() : ceilingIndex, plan.getWaypointCount(frame));
+        }
+    }
+
+    @Test
+    void emptySegment() {
+        // given an empty segment
+        final var plan = new FramePlan(List.of(List.of(PointSeries.empty())), PointSeries.empty(), 10, 0, 1.0, 1.0, 1_000);
+
+        // then no point is ever reached
+        for (var frame = 0; frame <= 10; frame++) {
+            assertEquals(-1, plan.getPointIndex(0, 0, frame));
+            assertEquals(-1, plan.getTailStartIndex(0, 0, frame));
+            assertEquals(0, plan.getWaypointCount(frame));
+        }
+        assertEquals(10, plan.getFrames());
+    }
+
+    @Test
+    void firstFrameAtOrAfter() {
+        // given a plan with one frame per second
+        final var plan = new FramePlan(List.of(), PointSeries.empty(), 10, 0, 1.0, 1.0, 0);
+
+        // then the frames are found by their time
+        assertEquals(0, plan.getFirstFrameAtOrAfter(-5));
+        assertEquals(3, plan.getFirstFrameAtOrAfter(3_000));
+        assertEquals(4, plan.getFirstFrameAtOrAfter(3_001));
+        assertEquals(11, plan.getFirstFrameAtOrAfter(10_001));
+    }
+}
@@ -0,0 +1,167 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import app.gpx_animator.core.renderer.cache.TrackIconCache;
+import app.gpx_animator.core.renderer.framewriter.FrameWriter;
+import app.gpx_animator.ui.UIMode;
+import app.gpx_animator.ui.cli.CommandLineConfigurationFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RendererTest {
+
+    private static final long START = Instant.parse("2024-05-01T08:00:00Z").toEpochMilli();
+    private static final long MINUTE = 60_000;
+
+    @BeforeAll
+    static void disablePreview() {
+        UIMode.setMode(UIMode.CLI);
+    }
+
+    /**
+     * Writes a track of two segments with a break of half an hour between them.
+     */
+    private static Path writeGpx(final Path directory) throws IOException {
+        final var gpx = new StringBuilder("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <gpx version="1.1" creator="test" xmlns="http://www.topografix.com/GPX/1/1">
+                <trk>
+                """);
+        for (var segment = 0; segment < 2; segment++) {
+            gpx.append("<trkseg>\n");
+            for (var point = 0; point <= 20; point++) {
+                final var time = START + segment * 40 * MINUTE + point * MINUTE / 2;
+                gpx.append(String.format(Locale.ROOT, "<trkpt lat=\"%.5f\" lon=\"%.5f\"><time>%s</time></trkpt>%n",
+                        47.0 + segment * 0.01 + point * 0.0005, 8.0 + point * 0.001 * (segment == 0 ? 1 : -1), Instant.ofEpochMilli(time)));
+            }
+            gpx.append("</trkseg>\n");
+        }
+        gpx.append("</trk>\n</gpx>\n");
+        return Files.writeString(directory.resolve("track.gpx"), gpx);
+    }
+
+    private static List<byte[]> render(final Path gpx, final Path directory, final int renderThreads, final String... options)
+            throws UserException {
+        final var args = Stream.concat(Stream.of(
+                        "--input", gpx.toString(),
+                        "--output", directory.resolve("frame%05d.png").toString(),
+                        "--width", "160",
+                        "--fps", "5",
+                        "--speedup", "120",
+                        "--tail-duration", "60000",
+                        "--keep-first-frame", "1000",
+                        "--keep-last-frame", "1000",
+                        "--encoder-queue-size", "0",
+                        "--render-threads", Integer.toString(renderThreads)),
+                Arrays.stream(options)).toArray(String[]::new);
+        final var frameWriter = new CapturingFrameWriter();
+        new Renderer(new CommandLineConfigurationFactory(args).getConfiguration(), frameWriter).render(new RenderingContext() {
+            @Override
+            public void setProgress1(final int pct, final String message) {
+                // no progress is shown
+            }
+
+            @Override
+            public boolean isCancelled1() {
+                return false;
+            }
+        });
+        return frameWriter.frames;
+    }
+
+    @Test
+    void parallelRenderingWritesTheSameFramesAsSequentialRendering(@TempDir final Path tempDir) throws Exception {
+        // given a track with a break, which is skipped
+        final var gpx = writeGpx(tempDir);
+        final var allFrames = render(gpx, tempDir, 1, "--keep-idle");
+
+        // when rendering the track on one, on four and on an automatic number of threads
+        final var sequentialFrames = render(gpx, tempDir, 1);
+        final var parallelFrames = render(gpx, tempDir, 4);
+        final var autoFrames = render(gpx, tempDir, 0);
+
+        // then the idle frames were skipped
+        assertTrue(sequentialFrames.size() < allFrames.size());
+
+        // and the same frames were written in the same order, including the kept first and last frames
+        assertEquals(sequentialFrames.size(), parallelFrames.size());
+        assertEquals(sequentialFrames.size(), autoFrames.size());
+        for (var frame = 0; frame < sequentialFrames.size(); frame++) {
+            assertArrayEquals(sequentialFrames.get(frame), parallelFrames.get(frame), "frame " + frame);
+            assertArrayEquals(sequentialFrames.get(frame), autoFrames.get(frame), "frame " + frame);
+        }
+        assertArrayEquals(sequentialFrames.get(1), sequentialFrames.get(5));
+        assertArrayEquals(sequentialFrames.get(sequentialFrames.size() - 5), sequentialFrames.get(sequentialFrames.size() - 1));
+    }
+
+    @Test
+    void framesWithoutMarkerHaveTheSizeOfTheViewport(@TempDir final Path tempDir) throws Exception {
+        // given a moving map without a marker and a break in the track
+        final var gpx = writeGpx(tempDir);
+
+        // when rendering the track
+        final var frames = render(gpx, tempDir, 1, "--viewport-width", "64", "--viewport-height", "48", "--marker-size", "0", "--keep-idle");
+
+        // then every frame has the size of the viewport, not of the whole map
+        assertTrue(frames.size() > 100);
+        for (final var frame : frames) {
+            assertEquals(64 * 48 * 3, frame.length);
+        }
+    }
+
+    @Test
+    void trackIconIsLoadedOnceForAllFrames(@TempDir final Path tempDir) throws Exception {
+        // given a track with an icon file
+        final var gpx = writeGpx(tempDir);
+        final var icon = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        icon.setRGB(4, 4, 0xFFFF0000);
+        final var iconFile = tempDir.resolve("icon.png");
+        ImageIO.write(icon, "png", iconFile.toFile());
+        final var statistics = TrackIconCache.getStatistics();
+        final var loadedIcons = statistics.getHits() + statistics.getMisses();
+
+        // when rendering the track
+        final var frames = render(gpx, tempDir, 1, "--track-icon-file", iconFile.toString());
+
+        // then the icon was loaded only once and not for every frame
+        assertTrue(frames.size() > 10);
+        assertEquals(loadedIcons + 1, statistics.getHits() + statistics.getMisses());
+    }
+
+    /**
+     * Keeps a copy of the pixels of every frame, because the frame images are reused after they were written.
+     */
+    private static final class CapturingFrameWriter implements FrameWriter {
+
+        private final List<byte[]> frames = new ArrayList<>();
+
+        @Override
+        public void addFrame(final BufferedImage bi) {
+            assertEquals(BufferedImage.TYPE_3BYTE_BGR, bi.getType());
+            frames.add(((DataBufferByte) bi.getRaster().getDataBuffer()).getData().clone());
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
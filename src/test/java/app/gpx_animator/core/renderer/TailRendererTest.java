@@ -0,0 +1,70 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.configuration.TrackConfiguration;
+import app.gpx_animator.core.data.gpx.PointSeries;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TailRendererTest {
+
+    private static final long TAIL_DURATION = 100_000;
+
+    private static TailRenderer createTailRenderer(final FramePlan framePlan, final List<List<PointSeries>> tracks) {
+        final var trackConfiguration = TrackConfiguration.createBuilder().color(Color.red).lineWidth(4f).build();
+        return new TailRenderer(tracks, List.of(trackConfiguration), framePlan, Color.blue, TAIL_DURATION, true, Long.MAX_VALUE);
+    }
+
+    private static List<List<PointSeries>> createHorizontalTrack() {
+        // one point per second and per pixel
+        final var builder = PointSeries.builder();
+        for (var i = 0; i <= 300; i++) {
+            builder.add(i * 1_000L, i, 10.0, 0.0, 0.0, null, null);
+        }
+        return List.of(List.of(builder.build()));
+    }
+
+    @Test
+    void tailFadesFromTailColorToTrackColor() {
+        // given a horizontal track and the frame at its 200th point
+        final var tracks = createHorizontalTrack();
+        final var framePlan = new FramePlan(tracks, PointSeries.empty(), 300, 0, 1.0, 1.0, TAIL_DURATION);
+        final var tailRenderer = createTailRenderer(framePlan, tracks);
+        final var image = new BufferedImage(320, 20, BufferedImage.TYPE_INT_RGB);
+
+        // when drawing the tail
+        tailRenderer.draw(image.createGraphics(), 200);
+
+        // then the tail is drawn for the tail duration with the tail color at the current position
+        final var head = new Color(image.getRGB(198, 10));
+        final var end = new Color(image.getRGB(102, 10));
+        assertTrue(head.getBlue() > 200 && head.getRed() < 50, head.toString());
+        assertTrue(end.getRed() > 200 && end.getBlue() < 50, end.toString());
+        assertEquals(0, image.getRGB(90, 10) & 0xFFFFFF);
+        assertEquals(0, image.getRGB(210, 10) & 0xFFFFFF);
+    }
+
+    @Test
+    void unchangedPartsOfTheTailAreReused() {
+        // given a horizontal track
+        final var tracks = createHorizontalTrack();
+        final var framePlan = new FramePlan(tracks, PointSeries.empty(), 300, 0, 1.0, 1.0, TAIL_DURATION);
+        final var tailRenderer = createTailRenderer(framePlan, tracks);
+        final var image = new BufferedImage(320, 20, BufferedImage.TYPE_INT_RGB);
+
+        // when drawing the tail for two consecutive frames
+        tailRenderer.draw(image.createGraphics(), 200);
+        final var misses = tailRenderer.getStatistics().getMisses();
+        tailRenderer.draw(image.createGraphics(), 201);
+
+        // then the number of drawn parts is limited and only the parts at both ends are stroked again
+        assertTrue(misses <= TailRenderer.COLOR_STEPS + 1, "misses: " + misses);
+        assertTrue(tailRenderer.getStatistics().getMisses() - misses <= 2);
+        assertTrue(tailRenderer.getStatistics().getHits() >= misses - 2);
+    }
+}
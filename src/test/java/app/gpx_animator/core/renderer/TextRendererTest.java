@@ -0,0 +1,48 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.Position;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TextRendererTest {
+
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    @Test
+    void unchangedTextIsRenderedOnlyOnce() {
+        // given a text renderer
+        final var textRenderer = new TextRenderer(FONT) { };
+        final var first = new BufferedImage(200, 100, BufferedImage.TYPE_3BYTE_BGR);
+        final var second = new BufferedImage(200, 100, BufferedImage.TYPE_3BYTE_BGR);
+
+        // when rendering the same text twice
+        textRenderer.renderText("some\ntext", Position.BOTTOM_RIGHT, 10, first);
+        textRenderer.renderText("some\ntext ", Position.BOTTOM_RIGHT, 10, second);
+
+        // then the second text is drawn from the cache and looks the same
+        assertEquals(1, textRenderer.getTextCacheStatistics().getMisses());
+        assertEquals(1, textRenderer.getTextCacheStatistics().getHits());
+        assertArrayEquals(first.getRGB(0, 0, 200, 100, null, 0, 200), second.getRGB(0, 0, 200, 100, null, 0, 200));
+    }
+
+    @Test
+    void textIsRenderedAgainForOtherAlignment() {
+        // given a text renderer
+        final var textRenderer = new TextRenderer(FONT) { };
+        final var image = new BufferedImage(200, 100, BufferedImage.TYPE_3BYTE_BGR);
+
+        // when rendering the same text with different alignments and margins
+        textRenderer.renderText("text", Position.TOP_LEFT, 10, image);
+        textRenderer.renderText("text", Position.BOTTOM_LEFT, 20, image);
+        textRenderer.renderText("text", Position.TOP_RIGHT, 10, image);
+
+        // then the text is only rendered again if the alignment changes
+        assertEquals(2, textRenderer.getTextCacheStatistics().getMisses());
+        assertEquals(1, textRenderer.getTextCacheStatistics().getHits());
+    }
+}
@@ -0,0 +1,33 @@
+package app.gpx_animator.core.renderer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TileSeederTest {
+
+    @Test
+    void tileRangeCoversTheBounds() {
+        // given bounds around Zurich
+        final var bounds = new TileSeeder.Bounds(47.35, 47.40, 8.50, 8.55);
+
+        // when getting the tiles of zoom 12
+        final var range = TileSeeder.getTileRange(bounds, 12, 0);
+
+        // then the tiles are the ones an online map shows for this area
+        assertEquals(new TileSeeder.TileRange(2144, 2145, 1433, 1434), range);
+        assertEquals(4, range.count());
+    }
+
+    @Test
+    void tileRangeIncludesTheMarginAndStaysOnTheMap() {
+        // given bounds of the whole world
+        final var bounds = new TileSeeder.Bounds(-90, 90, -180, 180);
+
+        // when getting the tiles of zoom 2 with a margin
+        final var range = TileSeeder.getTileRange(bounds, 2, 512);
+
+        // then all tiles of the zoom level are included once
+        assertEquals(new TileSeeder.TileRange(0, 3, 0, 3), range);
+    }
+}
@@ -0,0 +1,133 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TiledCanvasTest {
+
+    private static final int TILE_SIZE = 16;
+
+    /**
+     * Creates a background with a different color in every pixel of the map.
+     */
+    private static TiledCanvas.BackgroundRenderer createBackground(final List<Rectangle> renderedRegions) {
+        return (image, region) -> {
+            renderedRegions.add(region);
+            for (var x = 0; x < region.width; x++) {
+                for (var y = 0; y < region.height; y++) {
+                    image.setRGB(x, y, getBackgroundColor(region.x + x, region.y + y));
+                }
+            }
+        };
+    }
+
+    private static int getBackgroundColor(final int x, final int y) {
+        return 0xFF000000 | x << 16 | y << 8 | 0x80;
+    }
+
+    @Test
+    void backgroundIsOnlyCreatedForUsedTiles() throws UserException {
+        // given a map of 10 x 10 tiles
+        final var renderedRegions = new ArrayList<Rectangle>();
+        try (var canvas = new TiledCanvas(160, 160, TILE_SIZE, 100, createBackground(renderedRegions))) {
+
+            // when copying a region which covers parts of four tiles
+            final var region = new Rectangle(10, 20, 20, 16);
+            final var image = canvas.copyRegion(region, new BufferedImage(20, 16, BufferedImage.TYPE_3BYTE_BGR));
+
+            // then only the background of these tiles was created and the copy shows the region
+            assertEquals(List.of(new Rectangle(0, 16, 16, 16), new Rectangle(16, 16, 16, 16),
+                    new Rectangle(0, 32, 16, 16), new Rectangle(16, 32, 16, 16)), renderedRegions);
+            for (var x = 0; x < region.width; x++) {
+                for (var y = 0; y < region.height; y++) {
+                    assertEquals(getBackgroundColor(region.x + x, region.y + y), image.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void evictedTilesKeepTheirDrawings() throws UserException {
+        // given a map which keeps only two tiles in memory
+        final var renderedRegions = new ArrayList<Rectangle>();
+        try (var canvas = new TiledCanvas(100, 40, TILE_SIZE, 2, createBackground(renderedRegions))) {
+
+            // when drawing a line across all tiles of the first row and showing the whole map afterwards
+            canvas.draw(new Line2D.Double(0, 8, 100, 8), new BasicStroke(2f), Color.red);
+            final var image = canvas.copyRegion(new Rectangle(0, 0, 100, 40), new BufferedImage(100, 40, BufferedImage.TYPE_3BYTE_BGR));
+
+            // then the line is still there and the background of every tile was created only once
+            assertTrue(canvas.getStatistics().getEvictions() > 0);
+            assertEquals(21, renderedRegions.size());
+            for (var x = 0; x < 100; x += 5) {
+                assertEquals(Color.red.getRGB(), image.getRGB(x, 8));
+                assertEquals(getBackgroundColor(x, 20), image.getRGB(x, 20));
+            }
+        }
+    }
+
+    @Test
+    void drawingsAreKeptUntilTheTileIsShown() throws UserException {
+        // given a map of 10 x 10 tiles
+        final var renderedRegions = new ArrayList<Rectangle>();
+        try (var canvas = new TiledCanvas(160, 160, TILE_SIZE, 100, createBackground(renderedRegions))) {
+
+            // when drawing a line across the first row of tiles and showing only the second tile
+            canvas.draw(new Line2D.Double(0, 8, 160, 8), new BasicStroke(2f), Color.red);
+            final var image = canvas.copyRegion(new Rectangle(16, 0, 16, 16), new BufferedImage(16, 16, BufferedImage.TYPE_3BYTE_BGR));
+
+            // then only the background of the shown tile was created and the line was drawn on it
+            assertEquals(List.of(new Rectangle(16, 0, 16, 16)), renderedRegions);
+            assertEquals(Color.red.getRGB(), image.getRGB(5, 8));
+            assertEquals(getBackgroundColor(21, 0), image.getRGB(5, 0));
+        }
+    }
+
+    @Test
+    void prefetchedTilesAreCreatedInAdvance() throws UserException {
+        // given a map which keeps only two tiles in memory
+        final var renderedRegions = Collections.synchronizedList(new ArrayList<Rectangle>());
+        try (var canvas = new TiledCanvas(160, 160, TILE_SIZE, 2, createBackground(renderedRegions))) {
+
+            // when prefetching more tiles than are kept in memory
+            final var firstRegion = canvas.prefetch(new Rectangle(0, 0, 32, 16));
+            final var secondRegion = canvas.prefetch(new Rectangle(32, 0, 16, 16));
+            final var image = canvas.copyRegion(new Rectangle(0, 0, 32, 16), new BufferedImage(32, 16, BufferedImage.TYPE_3BYTE_BGR));
+
+            // then the prefetch stops until the prefetched tiles are shown
+            assertTrue(firstRegion);
+            assertFalse(secondRegion);
+            assertEquals(2, renderedRegions.size());
+            assertEquals(getBackgroundColor(20, 10), image.getRGB(20, 10));
+            assertTrue(canvas.prefetch(new Rectangle(32, 0, 16, 16)));
+        }
+    }
+
+    @Test
+    void smallMapIsNotTiled() throws UserException {
+        // given a map in a single image
+        final var map = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+        try (var canvas = TiledCanvas.of(map)) {
+
+            // when drawing on the map
+            canvas.draw(new Rectangle(5, 5, 10, 10), g2 -> g2.fillRect(5, 5, 10, 10));
+
+            // then the image is drawn on directly
+            assertFalse(canvas.isTiled());
+            assertEquals(Color.white.getRGB(), map.getRGB(10, 10));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package app.gpx_animator.core.renderer;
+
+import app.gpx_animator.core.data.gpx.PointSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static app.gpx_animator.core.util.RenderUtil.getGraphics;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares drawing a dense track line by line with drawing it as one path.
+ * Run it with {@code ./gradlew test -Pbenchmark --tests TrackDrawingBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TrackDrawingBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackDrawingBenchmarkTest.class);
+
+    private static final int POINTS = 50_000;
+    private static final int SIZE = 1_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void pathIsFasterThanLines() {
+        // given a dense track
+        final var random = new Random(42);
+        final var builder = PointSeries.builder();
+        var x = SIZE / 2.0;
+        var y = SIZE / 2.0;
+        for (var i = 0; i < POINTS; i++) {
+            x = Math.max(0, Math.min(SIZE, x + random.nextGaussian() * 0.5));
+            y = Math.max(0, Math.min(SIZE, y + random.nextGaussian() * 0.5));
+            builder.add(i * 1_000L, x, y, 0.0, 0.0, null, null);
+        }
+        final var points = builder.build();
+        final var image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_3BYTE_BGR);
+
+        // when drawing the track line by line and as a path
+        for (var round = 0; round < WARMUP_ROUNDS; round++) {
+            drawLines(getTrackGraphics(image), points);
+            drawPath(getTrackGraphics(image), points);
+        }
+        var linesNanos = 0L;
+        var pathNanos = 0L;
+        for (var round = 0; round < ROUNDS; round++) {
+            var start = System.nanoTime();
+            drawLines(getTrackGraphics(image), points);
+            linesNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            drawPath(getTrackGraphics(image), points);
+            pathNanos += System.nanoTime() - start;
+        }
+
+        // then drawing the path is faster
+        LOGGER.info("{} points: lines {} ms, path {} ms, speedup {}", POINTS, linesNanos / ROUNDS / 1_000_000,
+                pathNanos / ROUNDS / 1_000_000, "%.1fx".formatted((double) linesNanos / pathNanos));
+        assertTrue(pathNanos < linesNanos);
+    }
+
+    private static Graphics2D getTrackGraphics(final BufferedImage image) {
+        final var g2 = getGraphics(image);
+        g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.setPaint(Color.red);
+        return g2;
+    }
+
+    private static void drawLines(final Graphics2D g2, final PointSeries points) {
+        final var line = new Line2D.Double();
+        for (var i = 1; i < points.size(); i++) {
+            line.setLine(points.getX(i - 1), points.getY(i - 1), points.getX(i), points.getY(i));
+            g2.draw(line);
+        }
+        g2.dispose();
+    }
+
+    private static void drawPath(final Graphics2D g2, final PointSeries points) {
+        g2.draw(points.toPath(0, points.size() - 1));
+        g2.dispose();
+    }
+}
@@ -0,0 +1,203 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveTileStoreTest {
+
+    private static final long TIME_LIMIT = 60_000;
+
+    private static String key(final int number) {
+        return "%064x".formatted(number);
+    }
+
+    private static TileData tile(final int size, final int value) {
+        final var data = new byte[size];
+        data[0] = (byte) value;
+        data[size - 1] = (byte) value;
+        return new TileData(data, "image/png");
+    }
+
+    @Test
+    void tilesAreReadFromTheArchive(@TempDir final Path tempDir) throws IOException {
+        // given an archive with a tile which was already read
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), tile(100, 1));
+            assertArrayEquals(tile(100, 1).data(), store.read(key(1), TIME_LIMIT).data());
+
+            // when writing more tiles after the data file was mapped
+            store.write(key(2), tile(200, 2));
+            store.write(key(3), new TileData(tile(300, 3).data(), null));
+
+            // then the new tiles are read too
+            assertArrayEquals(tile(200, 2).data(), store.read(key(2), TIME_LIMIT).data());
+            assertNull(store.read(key(3), TIME_LIMIT).contentType());
+            assertNull(store.read(key(4), TIME_LIMIT));
+        }
+
+        // and the tiles are read again after the archive was opened again
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            final var tileData = store.read(key(1), TIME_LIMIT);
+            assertArrayEquals(tile(100, 1).data(), tileData.data());
+            assertEquals("image/png", tileData.contentType());
+            assertArrayEquals(tile(300, 3).data(), store.read(key(3), TIME_LIMIT).data());
+        }
+        try (var files = Files.list(tempDir)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    void validatorsAreKeptAndTilesAreRefreshed(@TempDir final Path tempDir) throws Exception {
+        // given an archive with a tile which has validators
+        final long refreshedAt;
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), new TileData(tile(100, 1).data(), "image/png", "\"v1\"", "Sat, 17 Oct 2026 10:00:00 GMT"));
+            Thread.sleep(10);
+
+            // when the tile is refreshed
+            refreshedAt = System.currentTimeMillis();
+            store.refresh(key(1));
+        }
+
+        // then it is stored at the time of the refresh and read again with its validators
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            assertTrue(store.list().get(0).storedAt() >= refreshedAt);
+            final var tileData = store.read(key(1), TIME_LIMIT);
+            assertArrayEquals(tile(100, 1).data(), tileData.data());
+            assertEquals("image/png", tileData.contentType());
+            assertEquals("\"v1\"", tileData.etag());
+            assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", tileData.lastModified());
+        }
+    }
+
+    @Test
+    void replacedAndRemovedTiles(@TempDir final Path tempDir) throws IOException {
+        // given an archive with two tiles
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), tile(100, 1));
+            store.write(key(2), tile(100, 2));
+
+            // when replacing the first and removing the second tile
+            store.write(key(1), tile(150, 5));
+            store.remove(key(2));
+        }
+
+        // then the archive contains only the new first tile
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            assertArrayEquals(tile(150, 5).data(), store.read(key(1), TIME_LIMIT).data());
+            assertNull(store.read(key(2), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void agedTilesAreRemovedByCompaction(@TempDir final Path tempDir) throws Exception {
+        // given an archive with two old tiles and a new tile
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), tile(1000, 1));
+            store.write(key(2), tile(1000, 2));
+            Thread.sleep(200);
+            store.write(key(3), tile(100, 3));
+            final var size = store.getSize();
+
+            // when removing the old tiles
+            store.age(100);
+
+            // then the archive was compacted and the new tile is still there
+            assertTrue(store.getSize() < size / 2);
+            assertNull(store.read(key(1), TIME_LIMIT));
+            assertArrayEquals(tile(100, 3).data(), store.read(key(3), TIME_LIMIT).data());
+
+            // and the tiles are still read after writing into the compacted archive
+            store.write(key(4), tile(100, 4));
+            assertArrayEquals(tile(100, 4).data(), store.read(key(4), TIME_LIMIT).data());
+        }
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            assertArrayEquals(tile(100, 3).data(), store.read(key(3), TIME_LIMIT).data());
+            assertArrayEquals(tile(100, 4).data(), store.read(key(4), TIME_LIMIT).data());
+
+            // and removing all tiles empties the archive
+            store.age(-1);
+            assertEquals(0, store.getSize());
+            assertNull(store.read(key(3), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void archiveBiggerThanTheMaximumSizeIsCompacted(@TempDir final Path tempDir) throws IOException {
+        // given an archive with two tiles, of which the first was refreshed many times
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), tile(1000, 1));
+            store.write(key(2), tile(1000, 2));
+            for (var i = 0; i < 100; i++) {
+                store.refresh(key(1));
+            }
+            final var tileSize = store.list().stream().mapToLong(TileStore.StoredTile::size).sum();
+            final var size = store.getSize();
+            assertEquals(size - tileSize, store.getOverheadSize());
+
+            // when compacting it without and with a maximum size it is bigger than
+            store.compact(Long.MAX_VALUE);
+            assertEquals(size, store.getSize());
+            store.compact(tileSize + 1000);
+
+            // then the archive was compacted to the size of its tiles
+            assertEquals(tileSize, store.getSize());
+            assertEquals(0, store.getOverheadSize());
+            assertArrayEquals(tile(1000, 1).data(), store.read(key(1), TIME_LIMIT).data());
+        }
+    }
+
+    @Test
+    void interruptedCompactionIsFinishedWhenOpened(@TempDir final Path tempDir) throws IOException {
+        // given a compacted archive with a single tile
+        final var compactedDir = Files.createDirectory(tempDir.resolve("compacted"));
+        try (var store = ArchiveTileStore.open(compactedDir)) {
+            store.write(key(3), tile(100, 3));
+        }
+
+        // and an archive with more tiles, of which the compaction was interrupted before the data file was overwritten
+        final var archiveDir = Files.createDirectory(tempDir.resolve("archive"));
+        try (var store = ArchiveTileStore.open(archiveDir)) {
+            store.write(key(1), tile(1000, 1));
+            store.write(key(2), tile(1000, 2));
+            store.write(key(3), tile(100, 3));
+        }
+        Files.copy(compactedDir.resolve("tiles.gpxac"), archiveDir.resolve("tiles.gpxac.compact"));
+        Files.copy(compactedDir.resolve("tiles.gpxac.index"), archiveDir.resolve("tiles.gpxac.index.compacted"));
+
+        // when opening the archive
+        try (var store = ArchiveTileStore.open(archiveDir)) {
+
+            // then the compaction was finished
+            assertNull(store.read(key(1), TIME_LIMIT));
+            assertArrayEquals(tile(100, 3).data(), store.read(key(3), TIME_LIMIT).data());
+            assertEquals(Files.size(compactedDir.resolve("tiles.gpxac")), Files.size(archiveDir.resolve("tiles.gpxac")));
+        }
+        try (var files = Files.list(archiveDir)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    void archiveCanBeOpenedOnlyOnce(@TempDir final Path tempDir) throws IOException {
+        // given an open archive
+        try (var store = ArchiveTileStore.open(tempDir)) {
+            store.write(key(1), tile(100, 1));
+
+            // when opening it a second time
+            // then it can't be used
+            assertThrows(IOException.class, () -> ArchiveTileStore.open(tempDir));
+        }
+    }
+}
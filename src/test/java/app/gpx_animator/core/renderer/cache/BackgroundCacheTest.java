@@ -0,0 +1,51 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundCacheTest {
+
+    private static BackgroundCache.BackgroundKey key(final String tmsUrlTemplate, final float visibility) {
+        return new BackgroundCache.BackgroundKey(64, 32, tmsUrlTemplate, null, 12,
+                0.1, 0.2, 0.3, 0.4, visibility, 0xFF000000, null, 0);
+    }
+
+    @Test
+    void storedBackgroundIsRestored() {
+        // given a stored background which was drawn on afterwards
+        final var background = new BufferedImage(64, 32, BufferedImage.TYPE_3BYTE_BGR);
+        background.setRGB(3, 4, 0x102030);
+        BackgroundCache.store(key("https://a.test/{zoom}/{x}/{y}.png", 0.5f), background);
+        background.setRGB(5, 6, 0xFFFFFF);
+
+        // when restoring the background into another image
+        final var image = new BufferedImage(64, 32, BufferedImage.TYPE_3BYTE_BGR);
+        final var restored = BackgroundCache.restore(key("https://a.test/{zoom}/{x}/{y}.png", 0.5f), image);
+
+        // then the image has the pixels of the background when it was stored
+        assertTrue(restored);
+        assertEquals(0xFF102030, image.getRGB(3, 4));
+        assertEquals(0xFF000000, image.getRGB(5, 6));
+    }
+
+    @Test
+    void backgroundWithOtherSettingsIsNotRestored() {
+        // given a stored background
+        final var background = new BufferedImage(64, 32, BufferedImage.TYPE_3BYTE_BGR);
+        background.setRGB(3, 4, 0x102030);
+        BackgroundCache.store(key("https://b.test/{zoom}/{x}/{y}.png", 0.5f), background);
+
+        // when restoring the background with another visibility of the map
+        final var image = new BufferedImage(64, 32, BufferedImage.TYPE_3BYTE_BGR);
+        final var restored = BackgroundCache.restore(key("https://b.test/{zoom}/{x}/{y}.png", 0.6f), image);
+
+        // then the image is not modified
+        assertFalse(restored);
+        assertEquals(0xFF000000, image.getRGB(3, 4));
+    }
+}
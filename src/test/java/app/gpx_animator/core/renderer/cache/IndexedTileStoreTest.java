@@ -0,0 +1,184 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexedTileStoreTest {
+
+    private static final long TIME_LIMIT = 60_000;
+    private static final TileData TILE = new TileData(new byte[9_999], null);
+    private static final long TILE_SIZE = 10_000;
+
+    private static String key(final int number) {
+        return "%064x".formatted(number);
+    }
+
+    /**
+     * @return a maximum size which holds the tiles with their index
+     */
+    private static long maxSize(final int tiles) {
+        return tiles * TILE_SIZE + TILE_SIZE / 2;
+    }
+
+    private static long getTileSize(final TileStore store) throws IOException {
+        return store.list().stream().mapToLong(TileStore.StoredTile::size).sum();
+    }
+
+    private static IndexedTileStore open(final Path directory) throws IOException {
+        return IndexedTileStore.open(new DirectoryTileStore(directory), directory, "tiles");
+    }
+
+    @Test
+    void leastRecentlyUsedTilesAreRemoved(@TempDir final Path tempDir) throws IOException {
+        // given a store with three tiles, of which the first was used after the second
+        try (var store = open(tempDir)) {
+            store.write(key(1), TILE);
+            store.write(key(2), TILE);
+            store.read(key(1), TIME_LIMIT);
+            store.write(key(3), TILE);
+            assertEquals(3 * TILE_SIZE, getTileSize(store));
+
+            // when trimming the store to the size of two tiles with their index
+            store.trim(maxSize(2));
+
+            // then the second tile was removed
+            assertEquals(2 * TILE_SIZE, getTileSize(store));
+            assertNotNull(store.read(key(1), TIME_LIMIT));
+            assertNull(store.read(key(2), TIME_LIMIT));
+            assertNotNull(store.read(key(3), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void touchedTilesAreNotRemoved(@TempDir final Path tempDir) throws IOException {
+        // given a store with three tiles, of which the first was touched after the second was written
+        try (var store = open(tempDir)) {
+            store.write(key(1), TILE);
+            store.write(key(2), TILE);
+            store.touch(key(1));
+            store.touch(key(4));
+            store.write(key(3), TILE);
+
+            // when trimming the store to the size of two tiles with their index
+            store.trim(maxSize(2));
+
+            // then the second tile was removed and the unknown tile was not added
+            assertEquals(2 * TILE_SIZE, getTileSize(store));
+            assertNotNull(store.read(key(1), TIME_LIMIT));
+            assertNull(store.read(key(2), TIME_LIMIT));
+            assertNotNull(store.read(key(3), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void sizeIncludesTheIndexAndIsTrimmed(@TempDir final Path tempDir) throws IOException {
+        // given a store with three tiles which were read many times
+        try (var store = open(tempDir)) {
+            for (var i = 1; i <= 3; i++) {
+                store.write(key(i), TILE);
+            }
+            for (var i = 0; i < 300; i++) {
+                store.read(key(i % 3 + 1), TIME_LIMIT);
+            }
+
+            // then the size of the store includes the size of its index
+            assertEquals(3 * TILE_SIZE + Files.size(tempDir.resolve("tiles.access")), store.getSize());
+
+            // and trimming the store keeps it below the maximum size on disk
+            store.trim(3 * TILE_SIZE);
+            assertEquals(2, store.list().size());
+            assertEquals(2 * TILE_SIZE + Files.size(tempDir.resolve("tiles.access")), store.getSize());
+            assertTrue(store.getSize() <= 3 * TILE_SIZE);
+        }
+    }
+
+    @Test
+    void indexIsKeptBetweenRuns(@TempDir final Path tempDir) throws IOException {
+        // given a store of which the first tile was used last
+        try (var store = open(tempDir)) {
+            store.write(key(1), TILE);
+            store.write(key(2), TILE);
+            store.write(key(3), TILE);
+            store.read(key(1), TIME_LIMIT);
+            store.remove(key(3));
+        }
+
+        // when opening the store again and trimming it to the size of one tile
+        try (var store = open(tempDir)) {
+            assertEquals(2 * TILE_SIZE, getTileSize(store));
+            store.trim(maxSize(1));
+
+            // then the order of use was read from the index
+            assertNotNull(store.read(key(1), TIME_LIMIT));
+            assertNull(store.read(key(2), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void indexIsCreatedFromTheStore(@TempDir final Path tempDir) throws IOException {
+        // given a directory with tiles cached by an older version without an index
+        try (var store = new DirectoryTileStore(tempDir)) {
+            store.write(key(1), TILE);
+            store.write(key(2), TILE);
+        }
+
+        // when opening the store with an index
+        try (var store = open(tempDir)) {
+
+            // then the tiles are in the index
+            assertEquals(2, store.list().size());
+            assertEquals(2 * TILE_SIZE, getTileSize(store));
+        }
+    }
+
+    @Test
+    void tileWhichIsNotIndexedKeepsItsStoredTime(@TempDir final Path tempDir) throws IOException {
+        // given an indexed store and a tile which was written into the directory by another process long ago
+        try (var store = open(tempDir)) {
+            new DirectoryTileStore(tempDir).write(key(1), TILE);
+            final var storedAt = System.currentTimeMillis() - 2 * TIME_LIMIT;
+            assertTrue(tempDir.resolve(key(1) + ".gpxac.tile").toFile().setLastModified(storedAt));
+
+            // when reading the tile
+            final var tileData = store.read(key(1), TIME_LIMIT);
+
+            // then it was added to the index with the time it was stored and is too old
+            assertNull(tileData);
+            assertEquals(1, store.list().size());
+            assertTrue(Math.abs(store.list().get(0).storedAt() - storedAt) < 1_000);
+            assertEquals(TILE_SIZE, store.list().get(0).size());
+        }
+    }
+
+    @Test
+    void journalIsRewritten(@TempDir final Path tempDir) throws IOException {
+        // given a store with a tile which was used many times
+        try (var store = open(tempDir)) {
+            store.write(key(1), TILE);
+            store.write(key(2), TILE);
+            for (var i = 0; i < 3_000; i++) {
+                store.read(key(i % 2 + 1), TIME_LIMIT);
+            }
+        }
+
+        // when opening the store again
+        try (var store = open(tempDir)) {
+
+            // then the index is still complete
+            assertEquals(2, store.list().size());
+            assertEquals(2 * TILE_SIZE, getTileSize(store));
+            store.trim(maxSize(1));
+            assertNull(store.read(key(1), TIME_LIMIT));
+            assertNotNull(store.read(key(2), TIME_LIMIT));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LabelSpriteCacheTest {
+
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    @Test
+    void labelIsRenderedOnlyOnce() {
+        // given an empty cache
+        final var cache = new LabelSpriteCache(1024 * 1024);
+        final var image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB);
+        final var g2 = image.createGraphics();
+
+        // when drawing the same label twice at different positions with the same sub pixel offset
+        cache.drawLabel(g2, "label", 10.25f, 20f, FONT, Color.white, Color.black);
+        cache.drawLabel(g2, "label", 30.25f, 40f, FONT, Color.white, Color.black);
+        g2.dispose();
+
+        // then the second label is drawn from the cache
+        assertEquals(1, cache.getStatistics().getMisses());
+        assertEquals(1, cache.getStatistics().getHits());
+    }
+
+    @Test
+    void labelIsDrawnAtPosition() {
+        // given an empty cache
+        final var cache = new LabelSpriteCache(1024 * 1024);
+        final var image = new BufferedImage(120, 60, BufferedImage.TYPE_INT_ARGB);
+        final var g2 = image.createGraphics();
+
+        // when drawing a label
+        cache.drawLabel(g2, "MMM", 50f, 40f, new Font(Font.MONOSPACED, Font.BOLD, 24), Color.white, Color.black);
+        g2.dispose();
+
+        // then the label is drawn right of the position and above the baseline, with a halo around the glyphs
+        assertEquals(0, countPixels(image, 0, 0, 45, 60));
+        assertTrue(countPixels(image, 50, 20, 120, 40) > 0);
+        assertEquals(0, countPixels(image, 0, 45, 120, 60));
+        assertTrue(hasColor(image, Color.white));
+        assertTrue(hasColor(image, Color.black));
+    }
+
+    @Test
+    void leastRecentlyUsedLabelIsEvicted() {
+        // given a cache which has only room for one label
+        final var cache = new LabelSpriteCache(1);
+        final var image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB);
+        final var g2 = image.createGraphics();
+
+        // when drawing different labels
+        cache.drawLabel(g2, "first", 10f, 20f, FONT, Color.white, Color.black);
+        cache.drawLabel(g2, "second", 10f, 20f, FONT, Color.white, Color.black);
+        cache.drawLabel(g2, "first", 10f, 20f, FONT, Color.white, Color.black);
+        g2.dispose();
+
+        // then every label has to be rendered again
+        assertEquals(3, cache.getStatistics().getMisses());
+        assertEquals(3, cache.getStatistics().getEvictions());
+    }
+
+    private static int countPixels(final BufferedImage image, final int x1, final int y1, final int x2, final int y2) {
+        var count = 0;
+        for (var y = y1; y < y2; y++) {
+            for (var x = x1; x < x2; x++) {
+                if (image.getRGB(x, y) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasColor(final BufferedImage image, final Color color) {
+        for (var y = 0; y < image.getHeight(); y++) {
+            for (var x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) == color.getRGB()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
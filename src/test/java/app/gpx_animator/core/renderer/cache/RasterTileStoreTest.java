@@ -0,0 +1,96 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RasterTileStoreTest {
+
+    private static final long TIME_LIMIT = 60_000;
+    private static final long SLOT_SIZE = 64 + 256 * 256 * 4;
+
+    private static String key(final int number) {
+        return "%064x".formatted(number);
+    }
+
+    private static BufferedImage tile(final int color) {
+        final var tile = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+        for (var x = 0; x < 256; x++) {
+            tile.setRGB(x, x, color + x);
+        }
+        return tile;
+    }
+
+    @Test
+    void tilesAreReadAgainWithoutDecoding(@TempDir final Path tempDir) throws IOException {
+        // given a store with a tile
+        try (var store = RasterTileStore.open(tempDir, 4 * SLOT_SIZE)) {
+            store.write(key(1), tile(0x102030));
+        }
+
+        // when opening the store again and reading the tile
+        try (var store = RasterTileStore.open(tempDir, 4 * SLOT_SIZE)) {
+            final var image = store.read(key(1), TIME_LIMIT);
+
+            // then it has the same pixels as the stored tile
+            assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+            for (var x = 0; x < 256; x++) {
+                assertEquals(0xFF102030 + x, image.getRGB(x, x));
+                assertEquals(0xFF000000, image.getRGB(x, (x + 1) % 256));
+            }
+            assertNull(store.read(key(2), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedTileIsReplaced(@TempDir final Path tempDir) throws IOException {
+        // given a store with space for two tiles of which the first was used last
+        try (var store = RasterTileStore.open(tempDir, 2 * SLOT_SIZE)) {
+            store.write(key(1), tile(0x010000));
+            store.write(key(2), tile(0x020000));
+            store.read(key(1), TIME_LIMIT);
+
+            // when storing a third tile
+            store.write(key(3), tile(0x030000));
+
+            // then the second tile was replaced
+            assertNotNull(store.read(key(1), TIME_LIMIT));
+            assertNull(store.read(key(2), TIME_LIMIT));
+            assertEquals(0xFF030000, store.read(key(3), TIME_LIMIT).getRGB(0, 0));
+        }
+    }
+
+    @Test
+    void onlyTilesOfTheDefaultSizeAreStored(@TempDir final Path tempDir) throws IOException {
+        // given a store
+        try (var store = RasterTileStore.open(tempDir, 2 * SLOT_SIZE)) {
+
+            // when storing a tile of 512 x 512 pixels
+            store.write(key(1), new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB));
+
+            // then the tile is not stored
+            assertNull(store.read(key(1), TIME_LIMIT));
+        }
+    }
+
+    @Test
+    void agedTilesAreNotRead(@TempDir final Path tempDir) throws IOException {
+        // given a store with a tile
+        try (var store = RasterTileStore.open(tempDir, 2 * SLOT_SIZE)) {
+            store.write(key(1), tile(0x010000));
+
+            // when removing all tiles
+            store.age(-1);
+
+            // then the tile is not read any more
+            assertNull(store.read(key(1), TIME_LIMIT));
+        }
+    }
+}
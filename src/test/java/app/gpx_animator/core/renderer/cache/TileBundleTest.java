@@ -0,0 +1,109 @@
+package app.gpx_animator.core.renderer.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TileBundleTest {
+
+    private static final long TIME_LIMIT = 60_000;
+
+    private static String key(final int number) {
+        return "%064x".formatted(number);
+    }
+
+    @Test
+    void tilesAreCopiedWithTheirContentType(@TempDir final Path tempDir) throws IOException {
+        // given a store with two tiles
+        final var bundle = tempDir.resolve("tiles.zip");
+        try (var store = new DirectoryTileStore(Files.createDirectory(tempDir.resolve("from")))) {
+            store.write(key(1), new TileData(new byte[] {1, 2, 3}, "image/png"));
+            store.write(key(2), new TileData(new byte[] {4, 5}, null));
+
+            // when writing the tiles to a bundle and reading the bundle into another store
+            assertEquals(2, TileBundle.write(bundle, List.of(store), TIME_LIMIT));
+        }
+        try (var store = new DirectoryTileStore(Files.createDirectory(tempDir.resolve("to")))) {
+            assertEquals(2, TileBundle.read(bundle, store));
+
+            // then the other store contains the same tiles
+            assertArrayEquals(new byte[] {1, 2, 3}, store.read(key(1), TIME_LIMIT).data());
+            assertEquals("image/png", store.read(key(1), TIME_LIMIT).contentType());
+            assertArrayEquals(new byte[] {4, 5}, store.read(key(2), TIME_LIMIT).data());
+            assertNull(store.read(key(2), TIME_LIMIT).contentType());
+        }
+    }
+
+    @Test
+    void tileInTwoStoresIsWrittenOnce(@TempDir final Path tempDir) throws Exception {
+        // given a tile directory and a tile archive which both contain the same tile, the archive the newer one
+        final var bundle = tempDir.resolve("tiles.zip");
+        final var directory = Files.createDirectory(tempDir.resolve("from"));
+        try (var directoryStore = new DirectoryTileStore(directory); var archiveStore = ArchiveTileStore.open(directory)) {
+            directoryStore.write(key(1), new TileData(new byte[] {1, 2, 3}, "image/png"));
+            directoryStore.write(key(2), new TileData(new byte[] {4, 5}, "image/png"));
+            Thread.sleep(10);
+            archiveStore.write(key(1), new TileData(new byte[] {6, 7}, "image/png"));
+
+            // when writing the tiles of both stores to a bundle
+            final var count = TileBundle.write(bundle, List.of(directoryStore, archiveStore), TIME_LIMIT);
+
+            // then every tile was written once
+            assertEquals(2, count);
+        }
+
+        // and the newer tile is read from the bundle
+        try (var store = new DirectoryTileStore(Files.createDirectory(tempDir.resolve("to")))) {
+            assertEquals(2, TileBundle.read(bundle, store));
+            assertArrayEquals(new byte[] {6, 7}, store.read(key(1), TIME_LIMIT).data());
+            assertArrayEquals(new byte[] {4, 5}, store.read(key(2), TIME_LIMIT).data());
+        }
+    }
+
+    @Test
+    void agedTilesAreNotExportedButKept(@TempDir final Path tempDir) throws Exception {
+        // given an indexed store with a tile which is older than the time limit
+        final var directory = Files.createDirectory(tempDir.resolve("from"));
+        try (var store = IndexedTileStore.open(new DirectoryTileStore(directory), directory, "tiles")) {
+            store.write(key(1), new TileData(new byte[] {1, 2, 3}, "image/png", "\"v1\"", null));
+            Thread.sleep(10);
+
+            // when writing the tiles stored within a shorter time limit to a bundle
+            final var count = TileBundle.write(tempDir.resolve("tiles.zip"), List.of(store), 5);
+
+            // then the aged tile is not in the bundle, but still in the store
+            assertEquals(0, count);
+            assertEquals(1, store.list().size());
+            assertArrayEquals(new byte[] {1, 2, 3}, store.read(key(1), TIME_LIMIT).data());
+        }
+    }
+
+    @Test
+    void unknownEntriesAreIgnored(@TempDir final Path tempDir) throws IOException {
+        // given a bundle with an entry which is not a tile
+        final var bundle = tempDir.resolve("tiles.zip");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(bundle))) {
+            zip.putNextEntry(new ZipEntry("tiles/../../evil"));
+            zip.write(new byte[] {1});
+            zip.closeEntry();
+        }
+
+        // when reading the bundle
+        try (var store = new DirectoryTileStore(Files.createDirectory(tempDir.resolve("to")))) {
+
+            // then nothing is written
+            assertEquals(0, TileBundle.read(bundle, store));
+            assertEquals(List.of(), store.list());
+        }
+    }
+}
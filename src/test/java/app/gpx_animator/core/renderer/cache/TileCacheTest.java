@@ -0,0 +1,313 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheTest {
+
+    private static final long TILE_BYTES = 256L * 256 * Integer.BYTES;
+    private static final long TIME_LIMIT = 60_000;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile boolean failing;
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // a stand-in tile server which answers with a tile colored by the number in the path
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (failing) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            if (lastModified != null) {
+                exchange.getResponseHeaders().add("Last-Modified", lastModified);
+            }
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        final var path = exchange.getRequestURI().getPath();
+        final var format = path.substring(path.lastIndexOf('.') + 1);
+        final var tile = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        tile.setRGB(0, 0, Integer.parseInt(path.replaceAll("\\D", "")));
+        final var body = new ByteArrayOutputStream();
+        ImageIO.write(tile, format, body);
+        responses.put(path, body.toByteArray());
+        exchange.getResponseHeaders().add("Content-Type", "image/" + format);
+        if (etag != null) {
+            exchange.getResponseHeaders().add("ETag", etag);
+        }
+        exchange.sendResponseHeaders(200, body.size());
+        exchange.getResponseBody().write(body.toByteArray());
+        exchange.close();
+    }
+
+    private static TileCacheSettings settings(final String tileCacheDir) {
+        return new TileCacheSettings(tileCacheDir, false, TIME_LIMIT, Long.MAX_VALUE, 0);
+    }
+
+    private String url(final int number) {
+        return url(number, "png");
+    }
+
+    private String url(final int number, final String format) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/tile/" + number + "." + format;
+    }
+
+    @Test
+    void tileIsKeptInMemory() throws UserException {
+        // given a tile cache without a cache directory
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+
+        // when getting the same tile twice
+        final var first = TileCache.await(tileCache.getTile(url(1), "", settings("")));
+        final var second = TileCache.await(tileCache.getTile(url(1), "", settings("")));
+
+        // then the tile was downloaded and decoded only once
+        assertSame(first, second);
+        assertEquals(1, first.getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(1, requests.get());
+        assertEquals(1, tileCache.getStatistics().getHits());
+        assertEquals(1, tileCache.getStatistics().getMisses());
+    }
+
+    @Test
+    void leastRecentlyUsedTileIsRemovedFromMemory(@TempDir final Path tempDir) throws UserException {
+        // given a tile cache with memory for two tiles
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 2 * TILE_BYTES);
+        final var first = TileCache.await(tileCache.getTile(url(1), "", settings(tempDir.toString())));
+        TileCache.await(tileCache.getTile(url(2), "", settings(tempDir.toString())));
+
+        // when getting a third tile and the first tile again
+        TileCache.await(tileCache.getTile(url(3), "", settings(tempDir.toString())));
+        final var firstAgain = TileCache.await(tileCache.getTile(url(1), "", settings(tempDir.toString())));
+
+        // then the first tile was read again from the cache directory
+        assertNotSame(first, firstAgain);
+        assertEquals(1, firstAgain.getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(3, requests.get());
+        assertEquals(2, tileCache.getStatistics().getEvictions());
+    }
+
+    @Test
+    void tileIsStoredAsDownloaded(@TempDir final Path tempDir) throws Exception {
+        // given a tile cache and a map server sending JPEG tiles
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+
+        // when getting a tile
+        final var tile = TileCache.await(tileCache.getTile(url(5, "jpeg"), "", settings(tempDir.toString())));
+
+        // then the cache file contains the content type and the unchanged JPEG image
+        final var cacheFiles = Files.list(tempDir).filter(file -> file.toString().endsWith(".gpxac.tile")).toList();
+        assertEquals(1, cacheFiles.size());
+        final var header = "image/jpeg\n".getBytes(StandardCharsets.UTF_8);
+        final var content = Files.readAllBytes(cacheFiles.get(0));
+        assertArrayEquals(header, Arrays.copyOf(content, header.length));
+        assertArrayEquals(responses.get("/tile/5.jpeg"), Arrays.copyOfRange(content, header.length, content.length));
+        assertEquals(256, tile.getWidth());
+
+        // and the tile can be read from the cache file again
+        final var otherTileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        final var cachedTile = TileCache.await(otherTileCache.getTile(url(5, "jpeg"), "", settings(tempDir.toString())));
+        assertEquals(tile.getRGB(0, 0), cachedTile.getRGB(0, 0));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void decodedTileIsReadInsteadOfTheCachedTile(@TempDir final Path tempDir) throws Exception {
+        // given a tile cache which keeps the decoded tiles
+        final var settings = new TileCacheSettings(tempDir.toString(), false, TIME_LIMIT, Long.MAX_VALUE, 4 * (64 + TILE_BYTES));
+        final var tile = TileCache.await(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).getTile(url(7), "", settings));
+
+        // when the cached tile is deleted and the tile is loaded by another tile cache
+        try (var cacheFiles = Files.list(tempDir)) {
+            for (final var cacheFile : cacheFiles.filter(file -> file.toString().endsWith(".gpxac.tile")).toList()) {
+                Files.delete(cacheFile);
+            }
+        }
+        final var otherTileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        final var decodedTile = TileCache.await(otherTileCache.getTile(url(7), "", settings));
+
+        // then the decoded tile was read
+        assertEquals(BufferedImage.TYPE_INT_RGB, decodedTile.getType());
+        assertEquals(tile.getRGB(0, 0), decodedTile.getRGB(0, 0));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void agedTileIsRevalidated(@TempDir final Path tempDir) throws Exception {
+        // given a cached tile with an entity tag, which is older than the time limit
+        etag = "\"v1\"";
+        final var settings = new TileCacheSettings(tempDir.toString(), false, -1, Long.MAX_VALUE, 0);
+        TileCache.await(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).getTile(url(9), "", settings));
+
+        // when the tile is loaded by another tile cache
+        final var otherTileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        final var tile = TileCache.await(otherTileCache.getTile(url(9), "", settings));
+
+        // then the map server was asked whether the tile was modified and the cached tile was used
+        assertEquals(9, tile.getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(2, requests.get());
+        assertEquals(1, notModifiedResponses.get());
+
+        // and the tile is downloaded again after it was modified
+        etag = "\"v2\"";
+        assertTrue(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).seedTile(url(9), "", settings).join());
+        assertFalse(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).seedTile(url(9), "", settings).join());
+        assertEquals(4, requests.get());
+        assertEquals(2, notModifiedResponses.get());
+    }
+
+    @Test
+    void newValidatorsOfANotModifiedTileAreStored(@TempDir final Path tempDir) throws Exception {
+        // given a seeded tile with an entity tag, which is older than the time limit
+        etag = "\"v1\"";
+        final var settings = new TileCacheSettings(tempDir.toString(), false, -1, Long.MAX_VALUE, 0);
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        assertTrue(tileCache.seedTile(url(9), "", settings).join());
+
+        // when the map server confirms that the tile was not modified and sends a modification time
+        lastModified = "Sat, 17 Oct 2026 10:00:00 GMT";
+        final var downloaded = tileCache.seedTile(url(9), "", settings).join();
+
+        // then the tile was not downloaded again, but the modification time was stored
+        assertFalse(downloaded);
+        assertEquals(1, notModifiedResponses.get());
+        try (var cacheFiles = Files.list(tempDir)) {
+            final var cacheFile = cacheFiles.filter(file -> file.toString().endsWith(".gpxac.tile")).findFirst().orElseThrow();
+            assertTrue(new String(Files.readAllBytes(cacheFile), StandardCharsets.ISO_8859_1).contains(lastModified));
+        }
+    }
+
+    @Test
+    void agedTileIsUsedIfTheMapServerFails(@TempDir final Path tempDir) throws Exception {
+        // given a cached tile which is older than the time limit
+        etag = "\"v1\"";
+        final var settings = new TileCacheSettings(tempDir.toString(), false, -1, Long.MAX_VALUE, 0);
+        assertTrue(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).seedTile(url(9), "", settings).join());
+
+        // when the map server fails while the tile is revalidated
+        failing = true;
+        final var tile = TileCache.await(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).getTile(url(9), "", settings));
+        final var downloaded = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).seedTile(url(9), "", settings).join();
+
+        // then the cached tile is used
+        assertEquals(9, tile.getRGB(0, 0) & 0xFFFFFF);
+        assertFalse(downloaded);
+        assertEquals(3, requests.get());
+
+        // and it is revalidated again when the map server works again
+        failing = false;
+        assertFalse(new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).seedTile(url(9), "", settings).join());
+        assertEquals(1, notModifiedResponses.get());
+    }
+
+    @Test
+    void failedDownloadWithoutCachedTileFails(@TempDir final Path tempDir) throws UserException {
+        // given a map server which fails
+        failing = true;
+
+        // when getting a tile which is not cached
+        final var tile = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES).getTile(url(9), "", settings(tempDir.toString()));
+
+        // then the error of the map server is thrown
+        final var exception = assertThrows(UserException.class, () -> TileCache.await(tile));
+        assertTrue(exception.getMessage().contains("500"));
+    }
+
+    @Test
+    void seededTilesAreImportedIntoAnotherCache(@TempDir final Path tempDir) throws Exception {
+        // given a tile cache seeded with two tiles, of which the first was seeded twice
+        final var seedDir = Files.createDirectory(tempDir.resolve("seed"));
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        assertTrue(tileCache.seedTile(url(1), "", settings(seedDir.toString())).join());
+        assertTrue(tileCache.seedTile(url(2), "", settings(seedDir.toString())).join());
+        assertFalse(tileCache.seedTile(url(1), "", settings(seedDir.toString())).join());
+
+        // when exporting the tiles and importing them into another tile cache directory
+        final var bundle = tempDir.resolve("tiles.zip");
+        assertEquals(2, tileCache.exportTiles(bundle, settings(seedDir.toString())));
+        final var renderDir = Files.createDirectory(tempDir.resolve("render"));
+        final var otherTileCache = new TileCache(new TileFetcher(4, 2), 4 * TILE_BYTES);
+        assertEquals(2, otherTileCache.importTiles(bundle, settings(renderDir.toString())));
+
+        // then the tiles are read from the other tile cache directory without downloading them again
+        assertEquals(2, TileCache.await(otherTileCache.getTile(url(2), "", settings(renderDir.toString()))).getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void concurrentUse(@TempDir final Path tempDir) throws Exception {
+        // given a tile cache which is used by many threads
+        final var tileCache = new TileCache(new TileFetcher(4, 2), 8 * TILE_BYTES);
+        final var executor = Executors.newFixedThreadPool(8);
+        try {
+            final var tasks = new ArrayList<Callable<Integer>>();
+            for (var i = 0; i < 200; i++) {
+                final var number = i % 16;
+                tasks.add(() -> TileCache.await(tileCache.getTile(url(number), "", settings(tempDir.toString()))).getRGB(0, 0));
+            }
+
+            // when getting the same tiles on all threads at the same time
+            final var results = executor.invokeAll(tasks);
+
+            // then every thread got the right tile
+            for (var i = 0; i < results.size(); i++) {
+                assertEquals(i % 16, results.get(i).get() & 0xFFFFFF);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
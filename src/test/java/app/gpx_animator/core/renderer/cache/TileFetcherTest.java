@@ -0,0 +1,175 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.UserException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileFetcherTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger runningRequests = new AtomicInteger();
+    private final AtomicInteger maxRunningRequests = new AtomicInteger();
+    private final Set<String> hosts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private HttpServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        // a stand-in tile server which answers with the path of the tile after the test released it
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        maxRunningRequests.accumulateAndGet(runningRequests.incrementAndGet(), Math::max);
+        hosts.add(exchange.getRequestHeaders().getFirst("Host").replaceFirst(":.*", ""));
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        runningRequests.decrementAndGet();
+
+        final var path = exchange.getRequestURI().getPath();
+        final var body = path.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(path.contains("missing") ? 404 : 200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private String url(final String host, final String path) {
+        return "http://" + host + ":" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    void sameUrlIsDownloadedOnlyOnce() throws Exception {
+        // given a tile fetcher
+        final var fetcher = new TileFetcher(4, 2);
+
+        // when the same tile is requested twice while it is downloaded
+        final var first = fetcher.fetch(url("127.0.0.1", "/1/2/3.png"), "");
+        final var second = fetcher.fetch(url("127.0.0.1", "/1/2/3.png"), "");
+        release.countDown();
+
+        // then both requests share the same download
+        assertSame(first, second);
+        assertArrayEquals("/1/2/3.png".getBytes(StandardCharsets.UTF_8), first.get(10, TimeUnit.SECONDS).tileData().data());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void conditionalRequestIsNotJoinedWithAnUnconditionalRequest() throws Exception {
+        // given a tile fetcher
+        final var fetcher = new TileFetcher(4, 2);
+
+        // when the same tile is requested without and with a cached tile to revalidate while it is downloaded
+        final var first = fetcher.fetch(url("127.0.0.1", "/1/2/3.png"), "");
+        final var second = fetcher.fetch(url("127.0.0.1", "/1/2/3.png"), "", new TileData(new byte[0], null, "\"v1\"", null));
+        release.countDown();
+
+        // then each request is sent to the map server
+        assertNotSame(first, second);
+        assertFalse(first.get(10, TimeUnit.SECONDS).notModified());
+        assertFalse(second.get(10, TimeUnit.SECONDS).notModified());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void connectionsPerHostAreLimited() throws Exception {
+        // given a tile fetcher with two connections per host
+        final var fetcher = new TileFetcher(8, 2);
+
+        // when requesting more tiles than connections are allowed
+        final var tiles = new ArrayList<CompletableFuture<TileFetcher.FetchedTile>>();
+        for (var i = 0; i < 6; i++) {
+            tiles.add(fetcher.fetch(url("127.0.0.1", "/tile/" + i), ""));
+        }
+        waitForRequests(2);
+        Thread.sleep(200);
+        final var runningBeforeRelease = runningRequests.get();
+        release.countDown();
+        for (final var tile : tiles) {
+            tile.get(10, TimeUnit.SECONDS);
+        }
+
+        // then no more than two tiles were downloaded at the same time
+        assertEquals(2, runningBeforeRelease);
+        assertEquals(2, maxRunningRequests.get());
+        assertEquals(6, requests.get());
+    }
+
+    @Test
+    void downloadsAreSpreadOverTheSwitchHosts() throws Exception {
+        // given a tile fetcher with one connection per host
+        final var fetcher = new TileFetcher(4, 1);
+
+        // when requesting two tiles of a map with two hosts
+        final var first = fetcher.fetch(url("{switch:127.0.0.1,localhost}", "/tile/1"), "");
+        final var second = fetcher.fetch(url("{switch:127.0.0.1,localhost}", "/tile/2"), "");
+        waitForRequests(2);
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        // then both hosts were used at the same time
+        assertEquals(Set.of("127.0.0.1", "localhost"), hosts);
+        assertEquals(2, maxRunningRequests.get());
+    }
+
+    @Test
+    void failedDownload() {
+        // given a tile fetcher
+        final var fetcher = new TileFetcher(4, 2);
+        release.countDown();
+
+        // when requesting a tile which does not exist
+        final var tile = fetcher.fetch(url("127.0.0.1", "/missing.png"), "");
+
+        // then the download fails with an error for the user
+        final var exception = assertThrows(ExecutionException.class, () -> tile.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(UserException.class, exception.getCause());
+        assertTrue(exception.getCause().getMessage().contains("404"));
+    }
+
+    private void waitForRequests(final int count) throws InterruptedException {
+        final var timeout = System.currentTimeMillis() + 10_000;
+        while (requests.get() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+    }
+}
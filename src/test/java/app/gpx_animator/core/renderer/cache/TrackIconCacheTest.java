@@ -0,0 +1,67 @@
+package app.gpx_animator.core.renderer.cache;
+
+import app.gpx_animator.core.data.TrackIcon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TrackIconCacheTest {
+
+    @Test
+    void iconIsReadOnlyOnce() throws IOException {
+        // given a built-in track icon
+        final var trackIcon = new TrackIcon("bicycle", "Bicycle");
+
+        // when getting the icon twice
+        final var first = TrackIconCache.getIcon(trackIcon, false);
+        final var second = TrackIconCache.getIcon(trackIcon, false);
+
+        // then the same prepared image is returned
+        assertSame(first, second);
+        assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, first.getType());
+    }
+
+    @Test
+    void mirroredIcon(@TempDir final Path tempDir) throws IOException {
+        // given an icon file with a red pixel on the left
+        final var file = tempDir.resolve("icon.png").toFile();
+        final var image = new BufferedImage(4, 1, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFFFF0000);
+        ImageIO.write(image, "png", file);
+
+        // when getting the icon mirrored and not mirrored
+        final var icon = TrackIconCache.getIcon(file, false);
+        final var mirrored = TrackIconCache.getIcon(file, true);
+
+        // then the red pixel is on the left or on the right
+        assertNotSame(icon, mirrored);
+        assertEquals(0xFFFF0000, icon.getRGB(0, 0));
+        assertEquals(0xFFFF0000, mirrored.getRGB(3, 0));
+        assertEquals(0, mirrored.getRGB(0, 0));
+    }
+
+    @Test
+    void modifiedIconFileIsReadAgain(@TempDir final Path tempDir) throws IOException {
+        // given a cached icon file
+        final var file = tempDir.resolve("icon.png").toFile();
+        ImageIO.write(new BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB), "png", file);
+        final var icon = TrackIconCache.getIcon(file, false);
+
+        // when the file is replaced
+        ImageIO.write(new BufferedImage(3, 3, BufferedImage.TYPE_INT_ARGB), "png", file);
+        file.setLastModified(file.lastModified() + 2_000);
+
+        // then the new icon is read
+        final var newIcon = TrackIconCache.getIcon(file, false);
+        assertNotSame(icon, newIcon);
+        assertEquals(3, newIcon.getWidth());
+    }
+}
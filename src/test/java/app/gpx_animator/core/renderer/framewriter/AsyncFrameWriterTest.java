@@ -0,0 +1,180 @@
+package app.gpx_animator.core.renderer.framewriter;
+
+import app.gpx_animator.core.UserException;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncFrameWriterTest {
+
+    @Test
+    void framesAreWrittenInOrder() throws UserException {
+        // given an asynchronous frame writer
+        final var writer = new RecordingFrameWriter();
+        final var asyncFrameWriter = new AsyncFrameWriter(writer, 2);
+
+        // when adding some frames and closing the writer
+        final var frames = new ArrayList<BufferedImage>();
+        for (var i = 0; i < 20; i++) {
+            final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+            frames.add(frame);
+            asyncFrameWriter.addFrame(frame);
+        }
+        asyncFrameWriter.close();
+
+        // then all frames were written in the same order and the wrapped writer was closed
+        assertEquals(frames, writer.frames);
+        assertTrue(writer.closed);
+        assertEquals(20, asyncFrameWriter.getStatistics().frames());
+    }
+
+    @Test
+    void callbackRunsAfterFrameWasWritten() throws UserException, InterruptedException {
+        // given an asynchronous frame writer
+        final var writer = new RecordingFrameWriter();
+        final var asyncFrameWriter = new AsyncFrameWriter(writer, 2);
+
+        // when adding a frame with a callback
+        final var written = new CountDownLatch(1);
+        final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+        final var framesWhenCalled = new ArrayList<BufferedImage>();
+        asyncFrameWriter.addFrame(frame, () -> {
+            framesWhenCalled.addAll(writer.frames);
+            written.countDown();
+        });
+        written.await();
+        asyncFrameWriter.close();
+
+        // then the callback was called after the frame was written
+        assertEquals(List.of(frame), framesWhenCalled);
+    }
+
+    @Test
+    void addFrameBlocksIfQueueIsFull() throws UserException, InterruptedException {
+        // given an asynchronous frame writer with an encoder which is blocked
+        final var encoderBlocked = new CountDownLatch(1);
+        final var writer = new RecordingFrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) {
+                try {
+                    encoderBlocked.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.addFrame(bi);
+            }
+        };
+        final var asyncFrameWriter = new AsyncFrameWriter(writer, 1);
+
+        // when adding more frames than the encoder and the queue can hold
+        final var producer = new Thread(() -> {
+            try {
+                for (var i = 0; i < 3; i++) {
+                    asyncFrameWriter.addFrame(new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR));
+                }
+            } catch (final UserException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        producer.start();
+        producer.join(500);
+
+        // then the producer waits until the encoder caught up
+        assertTrue(producer.isAlive());
+        encoderBlocked.countDown();
+        producer.join();
+        asyncFrameWriter.close();
+        assertEquals(3, writer.frames.size());
+        assertTrue(asyncFrameWriter.getStatistics().rendererBlockedMillis() > 0);
+    }
+
+    @Test
+    void encoderErrorIsReportedToRenderer() throws InterruptedException {
+        // given an asynchronous frame writer with an encoder which fails
+        final var asyncFrameWriter = new AsyncFrameWriter(new NullFrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) {
+                throw new IllegalStateException("encoder failed");
+            }
+        }, 1);
+
+        // when adding frames after the encoder failed
+        final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+        final var exception = assertThrows(IllegalStateException.class, () -> {
+            for (var i = 0; i < 100; i++) {
+                asyncFrameWriter.addFrame(frame);
+                Thread.sleep(10);
+            }
+        });
+
+        // then the error of the encoder is thrown on the rendering thread
+        assertEquals("encoder failed", exception.getMessage());
+        asyncFrameWriter.close();
+    }
+
+    @Test
+    void encoderErrorDoesNotBlockTheRenderer() {
+        // given an asynchronous frame writer with an encoder which fails with an error
+        final var asyncFrameWriter = new AsyncFrameWriter(new NullFrameWriter() {
+            @Override
+            public void addFrame(final BufferedImage bi) {
+                throw new NoClassDefFoundError("encoder natives");
+            }
+        }, 1);
+
+        // when adding more frames than the queue can hold
+        final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+        final var error = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(NoClassDefFoundError.class, () -> {
+            for (var i = 0; i < 100; i++) {
+                asyncFrameWriter.addFrame(frame);
+                Thread.sleep(10);
+            }
+        }));
+
+        // then the error of the encoder is thrown on the rendering thread and the writer can be closed
+        assertEquals("encoder natives", error.getMessage());
+        assertTimeoutPreemptively(Duration.ofSeconds(10), asyncFrameWriter::close);
+    }
+
+    @Test
+    void encoderErrorIsThrownWhenClosing() throws UserException {
+        // given an asynchronous frame writer with an encoder thread which is stopped by an error
+        final var asyncFrameWriter = new AsyncFrameWriter(new RecordingFrameWriter(), 1);
+        final var frame = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
+        asyncFrameWriter.addFrame(frame, () -> {
+            throw new OutOfMemoryError("no memory");
+        });
+
+        // when closing the writer
+        final var error = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(OutOfMemoryError.class, asyncFrameWriter::close));
+
+        // then the error of the encoder is thrown
+        assertEquals("no memory", error.getMessage());
+    }
+
+    private static class RecordingFrameWriter implements FrameWriter {
+
+        final List<BufferedImage> frames = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean closed;
+
+        @Override
+        public void addFrame(final BufferedImage bi) {
+            frames.add(bi);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
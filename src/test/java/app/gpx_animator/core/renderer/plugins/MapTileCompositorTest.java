@@ -0,0 +1,127 @@
+package app.gpx_animator.core.renderer.plugins;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RescaleOp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MapTileCompositorTest {
+
+    private static final float VISIBILITY = 0.7f;
+
+    private static BufferedImage target() {
+        final var target = new BufferedImage(300, 200, BufferedImage.TYPE_3BYTE_BGR);
+        for (var x = 0; x < target.getWidth(); x++) {
+            for (var y = 0; y < target.getHeight(); y++) {
+                target.setRGB(x, y, x * 0x010203 + y * 0x030201);
+            }
+        }
+        return target;
+    }
+
+    private static BufferedImage fill(final BufferedImage tile) {
+        for (var x = 0; x < tile.getWidth(); x++) {
+            for (var y = 0; y < tile.getHeight(); y++) {
+                tile.setRGB(x, y, (x * y) << 24 | x << 16 | y << 8 | (x + y) & 0xFF);
+            }
+        }
+        return tile;
+    }
+
+    private static BufferedImage indexedTile() {
+        final var reds = new byte[256];
+        final var greens = new byte[256];
+        final var blues = new byte[256];
+        final var alphas = new byte[256];
+        for (var i = 0; i < 256; i++) {
+            reds[i] = (byte) i;
+            greens[i] = (byte) (255 - i);
+            blues[i] = (byte) (i * 7);
+            alphas[i] = (byte) (i * 13);
+        }
+        final var tile = new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 256, reds, greens, blues, alphas));
+        for (var x = 0; x < 256; x++) {
+            for (var y = 0; y < 256; y++) {
+                tile.getRaster().setSample(x, y, 0, (x + y * 3) & 0xFF);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * The way the tiles were drawn before, as reference for the compositor.
+     */
+    private static BufferedImage drawn(final BufferedImage tile, final int x, final int y) {
+        final var target = target();
+        final var rgbTile = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
+        rgbTile.getGraphics().drawImage(tile, 0, 0, null);
+        target.createGraphics().drawImage(rgbTile, new RescaleOp(VISIBILITY, (1f - VISIBILITY) * 255f, null), x, y);
+        return target;
+    }
+
+    private static BufferedImage composited(final BufferedImage tile, final int x, final int y) {
+        final var target = target();
+        new MapTileCompositor(VISIBILITY).composite(target, tile, x, y);
+        return target;
+    }
+
+    private static void assertSamePixels(final BufferedImage expected, final BufferedImage actual) {
+        for (var x = 0; x < expected.getWidth(); x++) {
+            for (var y = 0; y < expected.getHeight(); y++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "pixel " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void rgbTileIsCompositedLikeItWasDrawn() {
+        // given a tile in RGB format
+        final var tile = fill(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB));
+
+        // when compositing it into the background
+        final var actual = composited(tile, 20, -30);
+
+        // then the pixels are the same as if the tile was drawn with the visibility
+        assertSamePixels(drawn(tile, 20, -30), actual);
+    }
+
+    @Test
+    void transparentTileIsCompositedLikeItWasDrawn() {
+        // given a tile with transparent pixels
+        final var tile = fill(new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR));
+
+        // when compositing it into the background
+        final var actual = composited(tile, 100, 10);
+
+        // then the pixels are the same as if the tile was drawn with the visibility
+        assertSamePixels(drawn(tile, 100, 10), actual);
+    }
+
+    @Test
+    void indexedTileIsCompositedLikeItWasDrawn() {
+        // given a tile with a palette
+        final var tile = indexedTile();
+
+        // when compositing it into the background
+        final var actual = composited(tile, -50, 0);
+
+        // then the pixels are the same as if the tile was drawn with the visibility
+        assertSamePixels(drawn(tile, -50, 0), actual);
+    }
+
+    @Test
+    void tileOutsideOfTheBackgroundIsIgnored() {
+        // given a tile
+        final var tile = fill(new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB));
+
+        // when compositing it next to the background
+        final var actual = composited(tile, 300, 0);
+
+        // then the background is unchanged
+        assertSamePixels(target(), actual);
+    }
+}
@@ -2,6 +2,10 @@ package app.gpx_animator.core.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -28,4 +32,54 @@ class UtilsTest {
         assertFalse(Utils.isEqual("Александр", "Alexander"));
         assertFalse(Utils.isEqual("凤", "Feng"));
     }
+
+    @Test
+    void copyRegion() {
+        for (final var type : new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB}) {
+            // given an image with a different color in every pixel
+            final var image = new BufferedImage(20, 10, type);
+            for (var x = 0; x < 20; x++) {
+                for (var y = 0; y < 10; y++) {
+                    image.setRGB(x, y, 0xFF000000 | x << 16 | y << 8 | x + y);
+                }
+            }
+
+            // when copying a region of a region
+            final var copy = Utils.copyRegion(image.getSubimage(2, 1, 15, 8), new Rectangle(3, 2, 5, 4));
+
+            // then the pixels of the region were copied
+            assertEquals(5, copy.getWidth());
+            assertEquals(4, copy.getHeight());
+            for (var x = 0; x < 5; x++) {
+                for (var y = 0; y < 4; y++) {
+                    assertEquals(image.getRGB(x + 5, y + 3), copy.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void copyRegionIntoPartOfImage() {
+        for (final var type : new int[] {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB}) {
+            // given an image with a different color in every pixel
+            final var image = new BufferedImage(20, 10, type);
+            for (var x = 0; x < 20; x++) {
+                for (var y = 0; y < 10; y++) {
+                    image.setRGB(x, y, 0xFF000000 | x << 16 | y << 8 | x + y);
+                }
+            }
+
+            // when copying a region into a part of a bigger image
+            final var target = new BufferedImage(12, 12, type);
+            Utils.copyRegion(image, new Rectangle(3, 2, 5, 4), target.getSubimage(4, 6, 5, 4));
+
+            // then only the pixels of the part were overwritten
+            for (var x = 0; x < 12; x++) {
+                for (var y = 0; y < 12; y++) {
+                    final var inside = x >= 4 && x < 9 && y >= 6 && y < 10;
+                    assertEquals(inside ? image.getRGB(x - 1, y - 4) : 0xFF000000, target.getRGB(x, y) | 0xFF000000);
+                }
+            }
+        }
+    }
 }
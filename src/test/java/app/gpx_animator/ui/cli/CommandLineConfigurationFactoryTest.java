@@ -79,4 +79,18 @@ class CommandLineConfigurationFactoryTest {
         assertEquals("input2.gpx", factory.getConfiguration().getTrackConfigurationList().get(1).getInputGpx().getName());
         assertEquals("input3.gpx", factory.getConfiguration().getTrackConfigurationList().get(2).getInputGpx().getName());
     }
+
+    @Test
+    void testSeedTileCacheWithSingleZoom() throws UserException {
+        // given --seed-tile-cache with a single zoom level
+        final var args = new String[]{"--seed-tile-cache", "12", "--min-lat", "47.0", "--max-lat", "47.1"};
+
+        // when creating the configuration
+        var factory = new CommandLineConfigurationFactory(args);
+
+        // then the tiles of that zoom level are seeded
+        assertTrue(factory.isTileCacheTask());
+        assertEquals(12, factory.getSeedMinZoom());
+        assertEquals(12, factory.getSeedMaxZoom());
+    }
 }
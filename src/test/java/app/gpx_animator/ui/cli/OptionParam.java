@@ -71,6 +71,14 @@ public enum OptionParam {
                      false,
                      () -> Optional.of("BOTTOM_CENTER"),
                      (factory) -> factory.getConfiguration().getCommentPosition().equals(Position.BOTTOM_CENTER)),
+    ENCODER_QUEUE_SIZE(Option.ENCODER_QUEUE_SIZE,
+                       false,
+                       () -> Optional.of("7"),
+                       (factory) -> factory.getConfiguration().getEncoderQueueSize() == 7),
+    EXPORT_TILE_CACHE(Option.EXPORT_TILE_CACHE,
+                      false,
+                      () -> Optional.of("tiles.zip"),
+                      (factory) -> factory.isTileCacheTask() && factory.getTileCacheExport().getName().equals("tiles.zip")),
     FLASHBACK_COLOR(Option.FLASHBACK_COLOR,
                     false,
                     () -> Optional.of("#FF0090"),
@@ -108,6 +116,10 @@ public enum OptionParam {
          false,
          Optional::empty,
          (factory) -> true),
+    IMPORT_TILE_CACHE(Option.IMPORT_TILE_CACHE,
+                      false,
+                      () -> Optional.of("tiles.zip"),
+                      (factory) -> factory.isTileCacheTask() && factory.getTileCacheImport().getName().equals("tiles.zip")),
     INFORMATION(Option.INFORMATION,
                 false,
                 () -> Optional.of("information"),
@@ -221,6 +233,14 @@ public enum OptionParam {
                          () -> Optional.of(TEST_COLOR_FF_0096),
                          (factory) -> getFirstTrackConfiguration(factory).getPreDrawTrackColor()
                                  .equals(Color.decode(TEST_COLOR_FF_0096))),
+    RENDER_THREADS(Option.RENDER_THREADS,
+                   false,
+                   () -> Optional.of("3"),
+                   (factory) -> factory.getConfiguration().getRenderThreads() == 3),
+    SEED_TILE_CACHE(Option.SEED_TILE_CACHE,
+                    false,
+                    () -> Optional.of("10-14"),
+                    (factory) -> factory.isTileCacheTask() && factory.getSeedMinZoom() == 10 && factory.getSeedMaxZoom() == 14),
     SKIP_IDLE(Option.SKIP_IDLE,
               false,
               () -> Optional.of("true"),